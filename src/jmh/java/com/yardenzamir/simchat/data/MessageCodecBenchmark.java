@@ -0,0 +1,126 @@
+package com.yardenzamir.simchat.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.FriendlyByteBuf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Encodes and decodes a page of messages the way SyncMessagesPacket does, with the binary codec
+ * and a per-page string table, against the NBT path it replaced.
+ * Setup checks that both paths round-trip every message and prints the encoded sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageCodecBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    private List<ChatMessage> page;
+    private ByteBuf buffer;
+    private FriendlyByteBuf nbtPage;
+    private FriendlyByteBuf binaryPage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        page = SampleMessages.conversation(PAGE_SIZE);
+        buffer = Unpooled.buffer(1 << 16);
+        nbtPage = new FriendlyByteBuf(Unpooled.buffer());
+        writeNbt(page, nbtPage);
+        binaryPage = new FriendlyByteBuf(Unpooled.buffer());
+        writeBinary(page, binaryPage);
+
+        checkRoundTrip("NBT", readNbt(new FriendlyByteBuf(nbtPage.duplicate())));
+        checkRoundTrip("Binary", readBinary(new FriendlyByteBuf(binaryPage.duplicate())));
+        System.out.printf("Page of %d messages: NBT %d bytes, binary %d bytes (%.0f%%)%n", PAGE_SIZE,
+                nbtPage.readableBytes(), binaryPage.readableBytes(),
+                100.0 * binaryPage.readableBytes() / nbtPage.readableBytes());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        buffer.release();
+        nbtPage.release();
+        binaryPage.release();
+    }
+
+    private void checkRoundTrip(String codec, List<ChatMessage> decoded) {
+        for (int i = 0; i < page.size(); i++) {
+            if (!page.get(i).toNbt().equals(decoded.get(i).toNbt())) {
+                throw new IllegalStateException(codec + " codec changed message " + i + " on round trip");
+            }
+        }
+    }
+
+    @Benchmark
+    public int encodeNbt() {
+        FriendlyByteBuf buf = new FriendlyByteBuf(buffer.clear());
+        writeNbt(page, buf);
+        return buf.writerIndex();
+    }
+
+    @Benchmark
+    public int encodeBinary() {
+        FriendlyByteBuf buf = new FriendlyByteBuf(buffer.clear());
+        writeBinary(page, buf);
+        return buf.writerIndex();
+    }
+
+    @Benchmark
+    public List<ChatMessage> decodeNbt() {
+        return readNbt(new FriendlyByteBuf(nbtPage.duplicate()));
+    }
+
+    @Benchmark
+    public List<ChatMessage> decodeBinary() {
+        return readBinary(new FriendlyByteBuf(binaryPage.duplicate()));
+    }
+
+    private static void writeNbt(List<ChatMessage> messages, FriendlyByteBuf buf) {
+        buf.writeVarInt(messages.size());
+        for (ChatMessage message : messages) {
+            buf.writeNbt(message.toNbt());
+        }
+    }
+
+    private static List<ChatMessage> readNbt(FriendlyByteBuf buf) {
+        int count = buf.readVarInt();
+        List<ChatMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(ChatMessage.fromNbt(buf.readNbt()));
+        }
+        return messages;
+    }
+
+    private static void writeBinary(List<ChatMessage> messages, FriendlyByteBuf buf) {
+        StringTable strings = StringTable.create();
+        buf.writeVarInt(messages.size());
+        for (ChatMessage message : messages) {
+            message.writeBinary(buf, strings);
+        }
+    }
+
+    private static List<ChatMessage> readBinary(FriendlyByteBuf buf) {
+        StringTable strings = StringTable.create();
+        int count = buf.readVarInt();
+        List<ChatMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(ChatMessage.readBinary(buf, strings));
+        }
+        return messages;
+    }
+}
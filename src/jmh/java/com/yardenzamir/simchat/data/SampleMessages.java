@@ -0,0 +1,58 @@
+package com.yardenzamir.simchat.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A representative conversation for benchmarks: entity messages with templates and actions,
+ * player replies, plain system messages and item transactions, in roughly the mix a quest line produces.
+ */
+public final class SampleMessages {
+
+    public static final String ENTITY_ID = "mypack:merchant";
+    private static final UUID PLAYER_UUID = UUID.fromString("8667ba71-b85a-4004-af54-457a9734eed7");
+
+    private SampleMessages() {}
+
+    public static List<ChatMessage> conversation(int count) {
+        List<ChatMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(message(i));
+        }
+        return messages;
+    }
+
+    public static ChatMessage message(int i) {
+        long worldDay = 100 + i / 20;
+        return switch (i % 5) {
+            case 0, 2 -> ChatMessage.fromEntity(ENTITY_ID, "Mira the Merchant", "Traveling Trader",
+                    "mypack:textures/entity/merchant.png",
+                    "Welcome back! I have " + (i % 7 + 3) + " new wares from the eastern markets today.",
+                    "{kjs:merchantName}", "{team:title} trader", i % 2 == 0 ? "Welcome back, {player:name}!" : null,
+                    worldDay, i % 10 == 0 ? actions() : List.of());
+            case 1 -> ChatMessage.fromPlayer(ENTITY_ID, PLAYER_UUID, "Steve", null,
+                    "Show me what you have.", null, worldDay);
+            case 3 -> ChatMessage.systemMessage(ENTITY_ID, "Mira opened her shop.", worldDay);
+            default -> ChatMessage.transactionMessage(ENTITY_ID, worldDay,
+                    List.of(new ChatAction.ActionItem("minecraft:emerald", 5)),
+                    List.of(new ChatAction.ActionItem("minecraft:diamond_sword", 1),
+                            new ChatAction.ActionItem("minecraft:bread", 16)));
+        };
+    }
+
+    private static List<ChatAction> actions() {
+        return List.of(
+                new ChatAction("Buy a sword", null, List.of("give @s minecraft:diamond_sword"), "I'll take the sword.",
+                        List.of(new ChatAction.ActionItem("minecraft:diamond_sword", 1)),
+                        List.of(new ChatAction.ActionItem("minecraft:emerald", 5)),
+                        List.of(new ChatAction.ActionItem("minecraft:diamond_sword", 1)),
+                        "mypack:merchant/bought_sword", null, null),
+                new ChatAction("Buy bread", "Buy bread ({data:bread_price} emeralds)", List.of(), null,
+                        List.of(), List.of(new ChatAction.ActionItem("minecraft:emerald", 1)),
+                        List.of(new ChatAction.ActionItem("minecraft:bread", 16)),
+                        null, "!flag:bread_sold_out", null),
+                new ChatAction("Leave", null, List.of(), "Maybe later.", List.of(), List.of(), List.of(),
+                        "mypack:merchant/goodbye", null, null));
+    }
+}
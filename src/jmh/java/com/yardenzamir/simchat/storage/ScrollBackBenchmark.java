@@ -0,0 +1,122 @@
+package com.yardenzamir.simchat.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.yardenzamir.simchat.data.ChatMessage;
+import com.yardenzamir.simchat.data.SampleMessages;
+
+/**
+ * Server-thread time spent on a scripted scroll-back storm: every player scrolls a conversation
+ * back to its start, one older-messages request per page.
+ * The sync handler reads the count and page on the calling thread, as packet handlers did
+ * before the read pool. The async handler takes the in-memory count and hands the page to the
+ * pool, so only the submit is timed; the reads are awaited outside the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ScrollBackBenchmark {
+
+    private static final String TEAM_ID = "bench";
+    private static final int PLAYERS = 8;
+    private static final int HISTORY_SIZE = 1000;
+    private static final int PAGE_SIZE = 50;
+    private static final int READ_THREADS = 2;
+
+    private Path directory;
+    private SimChatDatabase database;
+    private SimChatReadPool readPool;
+    private final Map<String, Integer> messageCounts = new HashMap<>();
+    private final List<CompletableFuture<List<ChatMessage>>> inFlight = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        directory = Files.createTempDirectory("simchat-bench");
+        Path databasePath = directory.resolve("simchat.db");
+        database = new SimChatDatabase(databasePath, true);
+        database.open();
+
+        List<ChatMessage> history = SampleMessages.conversation(HISTORY_SIZE);
+        database.runInTransaction(db -> {
+            for (int player = 0; player < PLAYERS; player++) {
+                // Each player scrolls their own team's conversation
+                String teamId = TEAM_ID + player;
+                for (int i = 0; i < history.size(); i++) {
+                    db.insertMessage(teamId, i, history.get(i));
+                }
+            }
+        });
+        for (int player = 0; player < PLAYERS; player++) {
+            messageCounts.put(TEAM_ID + player, HISTORY_SIZE);
+        }
+        readPool = new SimChatReadPool(() -> new SimChatDatabase(databasePath, true), READ_THREADS);
+    }
+
+    @TearDown(Level.Invocation)
+    public void awaitReads() {
+        for (CompletableFuture<List<ChatMessage>> read : inFlight) {
+            read.join();
+        }
+        inFlight.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        readPool.shutdown();
+        database.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public int syncHandler() {
+        int loaded = 0;
+        for (int beforeIndex = HISTORY_SIZE; beforeIndex > 0; beforeIndex -= PAGE_SIZE) {
+            for (int player = 0; player < PLAYERS; player++) {
+                String teamId = TEAM_ID + player;
+                int total = database.getMessageCount(teamId, SampleMessages.ENTITY_ID);
+                int start = Math.max(0, Math.min(beforeIndex, total) - PAGE_SIZE);
+                loaded += database.loadMessages(teamId, SampleMessages.ENTITY_ID, start, PAGE_SIZE).size();
+            }
+        }
+        return loaded;
+    }
+
+    @Benchmark
+    public int asyncHandler() {
+        for (int beforeIndex = HISTORY_SIZE; beforeIndex > 0; beforeIndex -= PAGE_SIZE) {
+            for (int player = 0; player < PLAYERS; player++) {
+                String teamId = TEAM_ID + player;
+                int total = messageCounts.get(teamId);
+                int start = Math.max(0, Math.min(beforeIndex, total) - PAGE_SIZE);
+                inFlight.add(readPool.submit("load messages for team " + teamId,
+                        db -> db.loadMessages(teamId, SampleMessages.ENTITY_ID, start, PAGE_SIZE)));
+            }
+        }
+        return inFlight.size();
+    }
+}
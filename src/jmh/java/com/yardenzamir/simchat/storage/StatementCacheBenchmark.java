@@ -0,0 +1,87 @@
+package com.yardenzamir.simchat.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.yardenzamir.simchat.data.ChatMessage;
+import com.yardenzamir.simchat.data.SampleMessages;
+
+/**
+ * insertMessage and loadMessages with the prepared-statement cache on and off.
+ * Off prepares every statement on each use, as SimChatDatabase did before the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StatementCacheBenchmark {
+
+    private static final String TEAM_ID = "bench";
+    // Inserts go to their own team so they never collide with the seeded history
+    private static final String INSERT_TEAM_ID = "bench-insert";
+    private static final String HISTORY_ENTITY = SampleMessages.ENTITY_ID;
+    private static final int HISTORY_SIZE = 2000;
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"true", "false"})
+    public boolean cacheStatements;
+
+    private Path directory;
+    private SimChatDatabase database;
+    private ChatMessage insertMessage;
+    private int nextInsertIndex;
+    private int nextPageStart;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        directory = Files.createTempDirectory("simchat-bench");
+        database = new SimChatDatabase(directory.resolve("simchat.db"), cacheStatements);
+        database.open();
+
+        List<ChatMessage> history = SampleMessages.conversation(HISTORY_SIZE);
+        database.runInTransaction(db -> {
+            for (int i = 0; i < history.size(); i++) {
+                db.insertMessage(TEAM_ID, i, history.get(i));
+            }
+        });
+        insertMessage = SampleMessages.message(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void insertMessage() throws SQLException {
+        database.insertMessage(INSERT_TEAM_ID, nextInsertIndex++, insertMessage);
+    }
+
+    @Benchmark
+    public List<ChatMessage> loadMessages() {
+        int start = nextPageStart;
+        nextPageStart = (nextPageStart + PAGE_SIZE) % (HISTORY_SIZE - PAGE_SIZE);
+        return database.loadMessages(TEAM_ID, HISTORY_ENTITY, start, PAGE_SIZE);
+    }
+}
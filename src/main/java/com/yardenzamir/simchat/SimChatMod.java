@@ -1,6 +1,7 @@
 package com.yardenzamir.simchat;
 
 import com.yardenzamir.simchat.client.ClientSetup;
+import com.yardenzamir.simchat.condition.TemplateEngine;
 import com.yardenzamir.simchat.config.ClientConfig;
 import com.yardenzamir.simchat.config.ServerConfig;
 import com.yardenzamir.simchat.data.DialogueManager;
@@ -71,6 +72,8 @@ public class SimChatMod {
     }
 
     private void onAddReloadListeners(AddReloadListenerEvent event) {
+        // Templates from the old datapacks go out of use
+        TemplateEngine.clearCache();
         event.addListener(new DialogueManager());
     }
 
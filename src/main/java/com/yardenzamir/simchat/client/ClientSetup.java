@@ -57,6 +57,7 @@ public class ClientSetup {
     public static void onClientDisconnect(ClientPlayerNetworkEvent.LoggingOut event) {
         ClientTeamCache.clear();
         RuntimeTemplateResolver.clear();
+        ClientTemplateEngine.clearCache();
         // Don't clear PlayerSkinCache - keep skins cached for offline teammates
     }
 
@@ -66,6 +67,7 @@ public class ClientSetup {
             return;
         }
         RuntimeTemplateResolver.flushQueuedRequests();
+        ClientTeamCache.enforceMemoryBudget();
     }
 
     /**
@@ -1,12 +1,12 @@
 package com.yardenzamir.simchat.client;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.UUID;
 
 import net.minecraftforge.api.distmarker.Dist;
@@ -14,6 +14,8 @@ import net.minecraftforge.api.distmarker.OnlyIn;
 
 import org.jetbrains.annotations.Nullable;
 
+import com.yardenzamir.simchat.SimChatMod;
+import com.yardenzamir.simchat.config.ClientConfig;
 import com.yardenzamir.simchat.data.ChatMessage;
 import com.yardenzamir.simchat.team.TeamData;
 
@@ -25,33 +27,37 @@ import com.yardenzamir.simchat.team.TeamData;
 public class ClientTeamCache {
 
     private static @Nullable TeamData team;
+    private static int syncedRevision;
+    private static boolean fullSyncRequested;
 
     // Track loaded message ranges per entity
     private static final Map<String, MessageCache> messageCaches = new HashMap<>();
 
+    // Messages dropped at a time when over the memory budget
+    private static final int EVICTION_BLOCK = 64;
+    private static long accessClock = 0;
+    private static @Nullable String activeEntityId;
+
     /**
      * Tracks loaded messages for a single conversation.
      */
     private static class MessageCache {
-        final TreeMap<Integer, ChatMessage> messages = new TreeMap<>(); // Index -> Message
+        final MessageStore messages = new MessageStore();
         final Map<UUID, Integer> messageIndexById = new HashMap<>();
         int totalCount = 0;
         boolean hasOlderMessages = false;
+        long estimatedBytes = 0;
+        long lastAccess = 0;
 
         int getLoadedStart() {
-            return messages.isEmpty() ? 0 : messages.firstKey();
-        }
-
-        int getLoadedEnd() {
-            return messages.isEmpty() ? 0 : messages.lastKey() + 1;
-        }
-
-        boolean isLoaded(int index) {
-            return messages.containsKey(index);
+            return messages.firstIndex();
         }
 
+        /**
+         * Loaded messages in order; shared with TeamData and the chat screen, never copied.
+         */
         List<ChatMessage> getMessageList() {
-            return new ArrayList<>(messages.values());
+            return messages.snapshot();
         }
     }
 
@@ -66,12 +72,14 @@ public class ClientTeamCache {
 
     /**
      * Set team metadata without messages (used for lazy loading).
+     * Replaces everything held for the team; the revision is the base for later deltas.
      */
     public static void setTeamMetadata(String teamId, String title, int color,
                                        List<UUID> members,
                                        List<String> entityOrder,
                                        Map<String, Integer> messageCountPerEntity,
-                                       Map<String, Object> teamData) {
+                                       Map<String, Object> teamData,
+                                       int revision) {
         // Create TeamData with empty conversations
         team = new TeamData(teamId, title);
         team.setColor(color);
@@ -85,30 +93,140 @@ public class ClientTeamCache {
         messageCaches.clear();
         Set<String> seenEntities = new HashSet<>();
         for (String entityId : entityOrder) {
-            int count = messageCountPerEntity.getOrDefault(entityId, 0);
-            team.setConversationMeta(entityId, count, null, null);
-            MessageCache cache = new MessageCache();
-            cache.totalCount = count;
-            cache.hasOlderMessages = count > 0;
-            messageCaches.put(entityId, cache);
+            resetConversation(entityId, messageCountPerEntity.getOrDefault(entityId, 0));
             seenEntities.add(entityId);
         }
 
         for (Map.Entry<String, Integer> entry : messageCountPerEntity.entrySet()) {
-            if (seenEntities.contains(entry.getKey())) {
-                continue;
+            if (!seenEntities.contains(entry.getKey())) {
+                resetConversation(entry.getKey(), entry.getValue());
             }
-            team.setConversationMeta(entry.getKey(), entry.getValue(), null, null);
-            MessageCache cache = new MessageCache();
-            cache.totalCount = entry.getValue();
-            cache.hasOlderMessages = entry.getValue() > 0;
-            messageCaches.put(entry.getKey(), cache);
         }
 
+        syncedRevision = revision;
+        fullSyncRequested = false;
+
         // Clear template cache for new team
         RuntimeTemplateResolver.clear();
     }
 
+    /**
+     * Applies a metadata delta on top of the synced revision.
+     * Conversations with a changed count drop their loaded pages; the server sends fresh ones.
+     *
+     * @return false if the delta doesn't apply to what this client holds, and a full sync is needed
+     */
+    public static boolean applyTeamDelta(String teamId, int baseRevision, int revision,
+                                         @Nullable String title, int color,
+                                         Map<String, Object> setData, List<String> removedData,
+                                         List<UUID> addedMembers, List<UUID> removedMembers,
+                                         List<String> removedEntities, Map<String, Integer> changedCounts,
+                                         List<String> movedToEnd) {
+        if (team == null || !team.getId().equals(teamId) || syncedRevision != baseRevision) {
+            return false;
+        }
+
+        if (title != null) {
+            team.setTitle(title);
+        }
+        if (color >= 0) {
+            team.setColor(color);
+        }
+        for (UUID member : addedMembers) {
+            team.addMember(member);
+        }
+        for (UUID member : removedMembers) {
+            team.removeMember(member);
+        }
+        for (String key : removedData) {
+            team.removeData(key);
+        }
+        for (Map.Entry<String, Object> entry : setData.entrySet()) {
+            team.setData(entry.getKey(), entry.getValue());
+        }
+
+        for (String entityId : removedEntities) {
+            team.clearConversation(entityId);
+            messageCaches.remove(entityId);
+        }
+        for (Map.Entry<String, Integer> entry : changedCounts.entrySet()) {
+            if (messageCaches.containsKey(entry.getKey())) {
+                resetLoadedMessages(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String entityId : movedToEnd) {
+            if (messageCaches.containsKey(entityId)) {
+                // Re-setting the meta moves the conversation to the end and keeps its previews
+                team.setConversationMeta(entityId, messageCaches.get(entityId).totalCount, null, null);
+            } else {
+                resetConversation(entityId, changedCounts.getOrDefault(entityId, 0));
+            }
+        }
+
+        syncedRevision = revision;
+        RuntimeTemplateResolver.invalidate(changedPlaceholders(title, color, setData, removedData,
+                !addedMembers.isEmpty() || !removedMembers.isEmpty()));
+        return true;
+    }
+
+    // Client template placeholders whose values a delta changes
+    private static Set<String> changedPlaceholders(@Nullable String title, int color,
+                                                   Map<String, Object> setData, List<String> removedData,
+                                                   boolean membersChanged) {
+        Set<String> changed = new HashSet<>();
+        if (title != null) {
+            changed.add("team:title");
+        }
+        if (color >= 0) {
+            changed.add("team:color");
+        }
+        if (membersChanged) {
+            changed.add("team:memberCount");
+        }
+        for (String key : setData.keySet()) {
+            changed.add("data:" + key);
+        }
+        for (String key : removedData) {
+            changed.add("data:" + key);
+        }
+        return changed;
+    }
+
+    /**
+     * Marks a full sync as requested.
+     *
+     * @return false if one is already outstanding
+     */
+    public static boolean beginFullSyncRequest() {
+        if (fullSyncRequested) {
+            return false;
+        }
+        fullSyncRequested = true;
+        return true;
+    }
+
+    private static void resetConversation(String entityId, int count) {
+        team.setConversationMeta(entityId, count, null, null);
+        MessageCache cache = new MessageCache();
+        cache.totalCount = count;
+        cache.hasOlderMessages = count > 0;
+        messageCaches.put(entityId, cache);
+    }
+
+    private static void resetLoadedMessages(String entityId, int count) {
+        MessageCache cache = new MessageCache();
+        cache.totalCount = count;
+        cache.hasOlderMessages = count > 0;
+        messageCaches.put(entityId, cache);
+        team.setConversation(entityId, List.of());
+        TeamData.ConversationMeta meta = team.getConversationMeta(entityId);
+        if (meta != null) {
+            meta.setMessageCount(count);
+            meta.setLastMessage(null);
+            meta.setLastEntityMessage(null);
+        }
+    }
+
     /**
      * Add a batch of messages for lazy loading.
      */
@@ -118,12 +236,17 @@ public class ClientTeamCache {
         int previousLoadedStart = cache.messages.isEmpty() ? Integer.MAX_VALUE : cache.getLoadedStart();
 
         cache.totalCount = totalCount;
+        cache.lastAccess = ++accessClock;
 
         // Insert messages at their indices
         for (int i = 0; i < messages.size(); i++) {
             int messageIndex = startIndex + i;
             ChatMessage message = messages.get(i);
-            cache.messages.put(messageIndex, message);
+            ChatMessage replaced = cache.messages.put(messageIndex, message);
+            if (replaced != null) {
+                cache.estimatedBytes -= replaced.estimatedSizeBytes();
+            }
+            cache.estimatedBytes += message.estimatedSizeBytes();
             cache.messageIndexById.put(message.messageId(), messageIndex);
         }
 
@@ -137,8 +260,7 @@ public class ClientTeamCache {
             ChatMessage lastMessage = meta != null ? meta.getLastMessage() : null;
             ChatMessage lastEntityMessage = meta != null ? meta.getLastEntityMessage() : null;
 
-            List<ChatMessage> allLoaded = cache.getMessageList();
-            team.setConversation(entityId, allLoaded);
+            team.setConversationSnapshot(entityId, cache.getMessageList());
 
             if (includesLatest && !messages.isEmpty()) {
                 lastMessage = messages.get(messages.size() - 1);
@@ -159,6 +281,74 @@ public class ClientTeamCache {
     public static void clear() {
         team = null;
         messageCaches.clear();
+        fullSyncRequested = false;
+        activeEntityId = null;
+    }
+
+    // === Memory budget ===
+
+    /**
+     * Marks the conversation shown on screen, which is never evicted; null when none is shown.
+     */
+    public static void setActiveConversation(@Nullable String entityId) {
+        activeEntityId = entityId;
+        MessageCache cache = entityId != null ? messageCaches.get(entityId) : null;
+        if (cache != null) {
+            cache.lastAccess = ++accessClock;
+        }
+    }
+
+    /**
+     * Drops the oldest loaded messages of the least recently used conversations, other than the one
+     * on screen, until loaded messages and resolved templates fit the memory budget.
+     * Dropped messages are requested again like any older page once they are scrolled to.
+     */
+    public static void enforceMemoryBudget() {
+        long budget = ClientConfig.MESSAGE_MEMORY_BUDGET_KB.get() * 1024L;
+        long used = RuntimeTemplateResolver.getEstimatedBytes();
+        for (MessageCache cache : messageCaches.values()) {
+            used += cache.estimatedBytes;
+        }
+        if (used <= budget) {
+            return;
+        }
+
+        List<Map.Entry<String, MessageCache>> candidates = new ArrayList<>();
+        for (Map.Entry<String, MessageCache> entry : messageCaches.entrySet()) {
+            if (!entry.getKey().equals(activeEntityId) && !entry.getValue().messages.isEmpty()) {
+                candidates.add(entry);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+
+        Set<UUID> evicted = new HashSet<>();
+        for (Map.Entry<String, MessageCache> entry : candidates) {
+            if (used <= budget) {
+                break;
+            }
+            MessageCache cache = entry.getValue();
+            while (used > budget && !cache.messages.isEmpty()) {
+                for (ChatMessage message : cache.messages.removeOldest(EVICTION_BLOCK)) {
+                    long size = message.estimatedSizeBytes();
+                    cache.estimatedBytes -= size;
+                    used -= size;
+                    cache.messageIndexById.remove(message.messageId());
+                    evicted.add(message.messageId());
+                }
+            }
+            cache.hasOlderMessages = cache.totalCount > cache.messages.size();
+            if (team != null) {
+                team.setConversationSnapshot(entry.getKey(), cache.getMessageList());
+            }
+        }
+
+        if (!evicted.isEmpty()) {
+            RuntimeTemplateResolver.removeMessages(evicted);
+            if (ClientConfig.DEBUG.get()) {
+                SimChatMod.LOGGER.info("[ClientTeamCache] Evicted {} messages to stay within {} KiB",
+                        evicted.size(), budget / 1024);
+            }
+        }
     }
 
     public static boolean hasTeam() {
@@ -211,21 +401,20 @@ public class ClientTeamCache {
             if (maxMessagesPerEntity <= 0) {
                 cache.messages.clear();
                 cache.messageIndexById.clear();
-            } else {
-                while (cache.messages.size() > maxMessagesPerEntity) {
-                    Map.Entry<Integer, ChatMessage> removed = cache.messages.pollFirstEntry();
-                    if (removed != null) {
-                        cache.messageIndexById.remove(removed.getValue().messageId());
-                    }
+                cache.estimatedBytes = 0;
+            } else if (cache.messages.size() > maxMessagesPerEntity) {
+                for (ChatMessage removed : cache.messages.removeOldest(cache.messages.size() - maxMessagesPerEntity)) {
+                    cache.messageIndexById.remove(removed.messageId());
+                    cache.estimatedBytes -= removed.estimatedSizeBytes();
                 }
             }
             cache.hasOlderMessages = cache.totalCount > cache.messages.size();
 
             if (team != null) {
-                team.setConversation(entry.getKey(), cache.getMessageList());
+                team.setConversationSnapshot(entry.getKey(), cache.getMessageList());
             }
 
-            for (ChatMessage message : cache.messages.values()) {
+            for (ChatMessage message : cache.getMessageList()) {
                 retained.add(message.messageId());
             }
         }
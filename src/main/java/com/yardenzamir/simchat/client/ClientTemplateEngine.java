@@ -1,6 +1,9 @@
 package com.yardenzamir.simchat.client;
 
-import java.util.regex.Matcher;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import net.minecraft.client.Minecraft;
@@ -10,6 +13,7 @@ import net.minecraftforge.api.distmarker.OnlyIn;
 import org.jetbrains.annotations.Nullable;
 
 import com.yardenzamir.simchat.SimChatMod;
+import com.yardenzamir.simchat.condition.CompiledTemplate;
 import com.yardenzamir.simchat.config.ClientConfig;
 import com.yardenzamir.simchat.team.TeamData;
 
@@ -24,6 +28,10 @@ import com.yardenzamir.simchat.team.TeamData;
 public final class ClientTemplateEngine {
     
     private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{([a-zA-Z_][a-zA-Z0-9_]*):([^}]+)}");
+
+    // Parsed templates by text; only touched on the client thread
+    private static final int MAX_CACHED_TEMPLATES = 4096;
+    private static final Map<String, CompiledTemplate> compiledTemplates = new HashMap<>();
     
     private ClientTemplateEngine() {}
 
@@ -45,21 +53,15 @@ public final class ClientTemplateEngine {
             return template;
         }
         
-        Matcher matcher = PLACEHOLDER_PATTERN.matcher(template);
-        StringBuilder result = new StringBuilder();
-        
-        while (matcher.find()) {
-            String prefix = matcher.group(1);
-            String name = matcher.group(2);
-            
-            String replacement = resolve(prefix, name);
-            if (replacement == null) {
-                replacement = matcher.group(0); // Keep original if unresolved
-            }
-            
-            matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
+        CompiledTemplate compiled = compile(template);
+        StringBuilder result = new StringBuilder(template.length());
+        for (int i = 0; i < compiled.placeholderCount(); i++) {
+            result.append(compiled.literal(i));
+            CompiledTemplate.Placeholder placeholder = compiled.placeholder(i);
+            String replacement = resolve(placeholder.prefix(), placeholder.name());
+            result.append(replacement != null ? replacement : placeholder.text()); // Keep original if unresolved
         }
-        matcher.appendTail(result);
+        result.append(compiled.literal(compiled.placeholderCount()));
         
         if (isDebugEnabled()) {
             SimChatMod.LOGGER.info("[ClientTemplate] '{}' -> '{}'", template, result);
@@ -120,6 +122,45 @@ public final class ClientTemplateEngine {
         };
     }
 
+    /**
+     * Placeholders of the template this engine resolves, as "prefix:name" (e.g. "data:gold").
+     * A value resolved from the template can only change when one of these does.
+     */
+    public static List<String> getDependencies(@Nullable String template) {
+        if (template == null || template.indexOf('{') < 0) {
+            return List.of();
+        }
+        CompiledTemplate compiled = compile(template);
+        List<String> dependencies = new ArrayList<>();
+        for (int i = 0; i < compiled.placeholderCount(); i++) {
+            CompiledTemplate.Placeholder placeholder = compiled.placeholder(i);
+            String prefix = placeholder.prefix();
+            if (prefix.equals("team") || prefix.equals("data") || prefix.equals("world")) {
+                dependencies.add(prefix + ":" + placeholder.name());
+            }
+        }
+        return List.copyOf(dependencies);
+    }
+
+    /**
+     * Drops parsed templates, e.g. when leaving a server.
+     */
+    public static void clearCache() {
+        compiledTemplates.clear();
+    }
+
+    private static CompiledTemplate compile(String template) {
+        CompiledTemplate compiled = compiledTemplates.get(template);
+        if (compiled == null) {
+            if (compiledTemplates.size() >= MAX_CACHED_TEMPLATES) {
+                compiledTemplates.clear();
+            }
+            compiled = CompiledTemplate.parse(template);
+            compiledTemplates.put(template, compiled);
+        }
+        return compiled;
+    }
+
     public static boolean hasPlaceholders(String text) {
         return text != null && PLACEHOLDER_PATTERN.matcher(text).find();
     }
@@ -0,0 +1,256 @@
+package com.yardenzamir.simchat.client;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.yardenzamir.simchat.data.ChatMessage;
+
+/**
+ * Loaded messages of one conversation, addressed by their index in the whole conversation.
+ * Messages live in fixed-size chunks aligned to those indices, so loading at either end is amortized O(1).
+ * Snapshots share chunks instead of copying messages; a chunk is copied only when it changes
+ * while a snapshot still refers to it.
+ */
+final class MessageStore {
+
+    private static final int CHUNK_BITS = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final class Chunk {
+        ChatMessage[] slots = new ChatMessage[CHUNK_SIZE];
+        int loaded = 0;
+        int firstSlot = CHUNK_SIZE;
+        int lastSlot = -1;
+        boolean shared = false; // A snapshot refers to slots
+
+        void detach() {
+            if (shared) {
+                slots = slots.clone();
+                shared = false;
+            }
+        }
+
+        boolean isDense() {
+            return lastSlot - firstSlot + 1 == loaded;
+        }
+    }
+
+    // Chunks by number, from firstChunk at array position head; unloaded gaps are null
+    private Chunk[] chunks = new Chunk[8];
+    private int head = 0;
+    private int firstChunk = 0;
+    private int chunkCount = 0;
+    private int size = 0;
+    private @Nullable List<ChatMessage> snapshot; // Valid until the next change
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Stores a message at its conversation index, replacing any message already there.
+     *
+     * @return the replaced message, if any
+     */
+    @Nullable ChatMessage put(int index, ChatMessage message) {
+        Chunk chunk = chunkFor(index >> CHUNK_BITS);
+        int slot = index & (CHUNK_SIZE - 1);
+        chunk.detach();
+        ChatMessage previous = chunk.slots[slot];
+        if (previous == null) {
+            chunk.loaded++;
+            size++;
+            chunk.firstSlot = Math.min(chunk.firstSlot, slot);
+            chunk.lastSlot = Math.max(chunk.lastSlot, slot);
+        }
+        chunk.slots[slot] = message;
+        snapshot = null;
+        return previous;
+    }
+
+    /**
+     * Index of the oldest loaded message, or 0 if none are loaded.
+     */
+    int firstIndex() {
+        if (size == 0) {
+            return 0;
+        }
+        Chunk chunk = chunks[head];
+        return (firstChunk << CHUNK_BITS) + chunk.firstSlot;
+    }
+
+    /**
+     * Drops the oldest loaded messages.
+     *
+     * @return the dropped messages, oldest first
+     */
+    List<ChatMessage> removeOldest(int count) {
+        List<ChatMessage> removed = new ArrayList<>(Math.min(count, size));
+        while (removed.size() < count && size > 0) {
+            Chunk chunk = chunks[head];
+            chunk.detach();
+            int slot = chunk.firstSlot;
+            removed.add(chunk.slots[slot]);
+            chunk.slots[slot] = null;
+            chunk.loaded--;
+            size--;
+            if (chunk.loaded > 0) {
+                do {
+                    slot++;
+                } while (chunk.slots[slot] == null);
+                chunk.firstSlot = slot;
+                continue;
+            }
+            // Drop the emptied chunk and any unloaded gap after it
+            do {
+                chunks[head] = null;
+                head++;
+                firstChunk++;
+                chunkCount--;
+            } while (chunkCount > 0 && chunks[head] == null);
+        }
+        if (size == 0) {
+            chunkCount = 0;
+        }
+        snapshot = null;
+        return removed;
+    }
+
+    void clear() {
+        chunks = new Chunk[8];
+        head = 0;
+        firstChunk = 0;
+        chunkCount = 0;
+        size = 0;
+        snapshot = null;
+    }
+
+    /**
+     * Loaded messages in conversation order, as an immutable list unaffected by later changes.
+     * Costs one entry per chunk, and nothing until the store changes again.
+     */
+    List<ChatMessage> snapshot() {
+        if (snapshot != null) {
+            return snapshot;
+        }
+        List<Chunk> used = new ArrayList<>();
+        for (int i = head; i < head + chunkCount; i++) {
+            Chunk chunk = chunks[i];
+            if (chunk != null && chunk.loaded > 0) {
+                chunk.shared = true;
+                used.add(chunk);
+            }
+        }
+        snapshot = used.isEmpty() ? List.of() : new Snapshot(used, size);
+        return snapshot;
+    }
+
+    private Chunk chunkFor(int number) {
+        if (chunkCount == 0) {
+            head = chunks.length / 2;
+            firstChunk = number;
+            chunkCount = 1;
+        } else if (number < firstChunk) {
+            int extra = firstChunk - number;
+            if (head < extra) {
+                grow(extra, 0);
+            }
+            head -= extra;
+            firstChunk = number;
+            chunkCount += extra;
+        } else if (number >= firstChunk + chunkCount) {
+            int extra = number - firstChunk - chunkCount + 1;
+            if (head + chunkCount + extra > chunks.length) {
+                grow(0, extra);
+            }
+            chunkCount += extra;
+        }
+        int position = head + number - firstChunk;
+        Chunk chunk = chunks[position];
+        if (chunk == null) {
+            chunk = new Chunk();
+            chunks[position] = chunk;
+        }
+        return chunk;
+    }
+
+    // Reallocates with at least the given free positions before and after the chunks in use
+    private void grow(int front, int back) {
+        int needed = chunkCount + front + back;
+        int length = Math.max(chunks.length * 2, needed * 2);
+        Chunk[] grown = new Chunk[length];
+        int newHead = front + (length - needed) / 2;
+        System.arraycopy(chunks, head, grown, newHead, chunkCount);
+        chunks = grown;
+        head = newHead;
+    }
+
+    /**
+     * Read-only view over shared chunks, frozen as they were when it was taken.
+     */
+    private static final class Snapshot extends AbstractList<ChatMessage> implements RandomAccess {
+        private final ChatMessage[][] slots;
+        private final int[] starts; // List index of each chunk's first message
+        private final int[] firstSlots;
+        private final boolean[] dense;
+        private final int size;
+
+        Snapshot(List<Chunk> chunks, int size) {
+            int count = chunks.size();
+            this.slots = new ChatMessage[count][];
+            this.starts = new int[count];
+            this.firstSlots = new int[count];
+            this.dense = new boolean[count];
+            this.size = size;
+            int start = 0;
+            for (int i = 0; i < count; i++) {
+                Chunk chunk = chunks.get(i);
+                slots[i] = chunk.slots;
+                starts[i] = start;
+                firstSlots[i] = chunk.firstSlot;
+                dense[i] = chunk.isDense();
+                start += chunk.loaded;
+            }
+        }
+
+        @Override
+        public ChatMessage get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+            }
+            int low = 0;
+            int high = starts.length - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (starts[mid] <= index) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            int offset = index - starts[low];
+            ChatMessage[] chunk = slots[low];
+            if (dense[low]) {
+                return chunk[firstSlots[low] + offset];
+            }
+            for (int slot = firstSlots[low]; ; slot++) {
+                if (chunk[slot] != null && offset-- == 0) {
+                    return chunk[slot];
+                }
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
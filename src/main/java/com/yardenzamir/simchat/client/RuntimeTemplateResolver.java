@@ -1,13 +1,17 @@
 package com.yardenzamir.simchat.client;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.Predicate;
 
 import org.jetbrains.annotations.Nullable;
 
@@ -20,12 +24,35 @@ import com.yardenzamir.simchat.network.ResolveTemplateRequestPacket;
 
 public final class RuntimeTemplateResolver {
 
-    private static final Map<CacheKey, String> localCache = new HashMap<>();
-    private static final Map<CacheKey, String> serverCache = new HashMap<>();
-    private static final Set<CacheKey> pending = new HashSet<>();
+    // Field numbers; action labels follow in action order. Sent as the string keys below.
+    private static final int CONTENT = 0;
+    private static final int SENDER_NAME = 1;
+    private static final int SENDER_SUBTITLE = 2;
+    private static final int FIRST_ACTION_FIELD = 3;
+    private static final String ACTION_LABEL_PREFIX = "actionLabel:";
+    private static final String[] FIELD_KEYS = new String[FIRST_ACTION_FIELD + 16];
+
+    static {
+        FIELD_KEYS[CONTENT] = "content";
+        FIELD_KEYS[SENDER_NAME] = "senderName";
+        FIELD_KEYS[SENDER_SUBTITLE] = "senderSubtitle";
+        for (int i = FIRST_ACTION_FIELD; i < FIELD_KEYS.length; i++) {
+            FIELD_KEYS[i] = ACTION_LABEL_PREFIX + (i - FIRST_ACTION_FIELD);
+        }
+    }
+
+    private static final Map<UUID, MessageFields> entries = new HashMap<>();
     private static final Deque<TemplateRequest> highPriorityQueue = new ArrayDeque<>();
     private static final Deque<TemplateRequest> lowPriorityQueue = new ArrayDeque<>();
-    private static final Map<CacheKey, ResolutionPriority> queuedPriority = new HashMap<>();
+    private static long accessClock = 0;
+
+    // Rough heap cost of one cached value besides its text, counted against the client message memory budget
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    private static long cachedBytes = 0;
+
+    // Bumped when a message's resolved values change, so layouts measured from them can tell they're stale
+    private static final Map<UUID, Integer> messageVersions = new HashMap<>();
+    private static int epoch = 0;
 
     public enum ResolutionPriority {
         HIGH,
@@ -35,16 +62,26 @@ public final class RuntimeTemplateResolver {
     private RuntimeTemplateResolver() {}
 
     public static void clear() {
-        localCache.clear();
-        serverCache.clear();
-        pending.clear();
+        for (MessageFields fields : entries.values()) {
+            fields.forgetAll();
+        }
+        entries.clear();
+        cachedBytes = 0;
         highPriorityQueue.clear();
         lowPriorityQueue.clear();
-        queuedPriority.clear();
+        messageVersions.clear();
+        epoch++;
+    }
+
+    /**
+     * Changes whenever the resolved text of the message may have changed.
+     */
+    public static long getVersion(UUID messageId) {
+        return ((long) epoch << 32) | messageVersions.getOrDefault(messageId, 0);
     }
 
     public static boolean needsPreload() {
-        return localCache.isEmpty() && serverCache.isEmpty();
+        return entries.isEmpty();
     }
 
     /**
@@ -67,14 +104,15 @@ public final class RuntimeTemplateResolver {
     }
 
     public static void preloadMessage(ChatMessage message, ResolutionPriority priority) {
-        resolveAndCache(message, "content", message.contentTemplate(), message.content(), priority);
-        resolveAndCache(message, "senderName", message.senderNameTemplate(), message.senderName(), priority);
+        MessageFields fields = touch(message.messageId());
+        resolveAndCache(message, fields, CONTENT, message.contentTemplate(), message.content(), priority);
+        resolveAndCache(message, fields, SENDER_NAME, message.senderNameTemplate(), message.senderName(), priority);
         if (message.senderSubtitle() != null || message.senderSubtitleTemplate() != null) {
-            resolveAndCache(message, "senderSubtitle", message.senderSubtitleTemplate(), message.senderSubtitle(), priority);
+            resolveAndCache(message, fields, SENDER_SUBTITLE, message.senderSubtitleTemplate(), message.senderSubtitle(), priority);
         }
         for (int i = 0; i < message.actions().size(); i++) {
             ChatAction action = message.actions().get(i);
-            resolveAndCache(message, "actionLabel:" + i, action.labelTemplate(), action.label(), priority);
+            resolveAndCache(message, fields, FIRST_ACTION_FIELD + i, action.labelTemplate(), action.label(), priority);
         }
     }
 
@@ -83,7 +121,7 @@ public final class RuntimeTemplateResolver {
     }
 
     public static String resolveContent(ChatMessage message, ResolutionPriority priority) {
-        return getCachedValue(message, "content", message.contentTemplate(), message.content(), priority);
+        return getCachedValue(message, CONTENT, message.contentTemplate(), message.content(), priority);
     }
 
     public static String resolveSenderName(ChatMessage message) {
@@ -91,7 +129,7 @@ public final class RuntimeTemplateResolver {
     }
 
     public static String resolveSenderName(ChatMessage message, ResolutionPriority priority) {
-        return getCachedValue(message, "senderName", message.senderNameTemplate(), message.senderName(), priority);
+        return getCachedValue(message, SENDER_NAME, message.senderNameTemplate(), message.senderName(), priority);
     }
 
     public static @Nullable String resolveSenderSubtitle(ChatMessage message) {
@@ -102,7 +140,7 @@ public final class RuntimeTemplateResolver {
         if (message.senderSubtitle() == null && message.senderSubtitleTemplate() == null) {
             return null;
         }
-        return getCachedValue(message, "senderSubtitle", message.senderSubtitleTemplate(), message.senderSubtitle(), priority);
+        return getCachedValue(message, SENDER_SUBTITLE, message.senderSubtitleTemplate(), message.senderSubtitle(), priority);
     }
 
     public static String resolveActionLabel(ChatMessage message, int actionIndex, ChatAction action) {
@@ -110,56 +148,199 @@ public final class RuntimeTemplateResolver {
     }
 
     public static String resolveActionLabel(ChatMessage message, int actionIndex, ChatAction action, ResolutionPriority priority) {
-        return getCachedValue(message, "actionLabel:" + actionIndex, action.labelTemplate(), action.label(), priority);
+        return getCachedValue(message, FIRST_ACTION_FIELD + actionIndex, action.labelTemplate(), action.label(), priority);
     }
 
     public static void updateFromServer(UUID messageId, String fieldKey, String value) {
-        CacheKey key = new CacheKey(messageId, fieldKey);
-        serverCache.put(key, value);
-        pending.remove(key);
-        queuedPriority.remove(key);
+        int index = fieldIndex(fieldKey);
+        if (index < 0) {
+            SimChatMod.LOGGER.error("Unknown template field from server: {}", fieldKey);
+            return;
+        }
+        Field field = touch(messageId).field(index);
+        cachedBytes += entryBytes(value) - (field.server != null ? entryBytes(field.server) : 0);
+        field.server = value;
+        field.pending = false;
+        field.queued = null;
+        messageVersions.merge(messageId, 1, Integer::sum);
         if (ClientConfig.DEBUG.get()) {
             SimChatMod.LOGGER.info("[RuntimeResolver] {}.{} resolved from server -> '{}'", messageId, fieldKey, value);
         }
     }
 
+    /**
+     * Drops resolved values that used any of the given placeholders (e.g. "data:gold"), so they are
+     * resolved again when next shown. Values resolved by the server are dropped too, since server
+     * resolvers (e.g. kjs:) may read any team state and record no dependencies.
+     * Other values are kept.
+     */
+    public static void invalidate(Set<String> placeholders) {
+        if (placeholders.isEmpty()) {
+            return;
+        }
+        int dropped = 0;
+        for (Map.Entry<UUID, MessageFields> entry : entries.entrySet()) {
+            int droppedHere = entry.getValue().forgetIf(
+                    field -> field.isServerResolved() || field.dependsOnAny(placeholders));
+            if (droppedHere > 0) {
+                messageVersions.merge(entry.getKey(), 1, Integer::sum);
+                dropped += droppedHere;
+            }
+        }
+        if (dropped > 0 && ClientConfig.DEBUG.get()) {
+            SimChatMod.LOGGER.info("[RuntimeResolver] {} changed, dropped {} resolved values", placeholders, dropped);
+        }
+    }
+
     public static void flushQueuedRequests() {
-        int maxRequests = ClientConfig.TEMPLATE_REQUESTS_PER_TICK.get();
+        int maxRequests = Math.min(ClientConfig.TEMPLATE_REQUESTS_PER_TICK.get(), ResolveTemplateRequestPacket.MAX_ENTRIES);
+        List<ResolveTemplateRequestPacket.Entry> batch = new ArrayList<>();
+        int batchBytes = ResolveTemplateRequestPacket.HEADER_BYTES;
         int sent = 0;
         while (sent < maxRequests) {
             TemplateRequest request = pollNextRequest();
             if (request == null) {
                 break;
             }
-            if (!pending.contains(request.key())) {
+            // Resolved, invalidated or evicted since it was queued
+            if (!request.field().pending) {
+                continue;
+            }
+            ResolveTemplateRequestPacket.Entry entry = new ResolveTemplateRequestPacket.Entry(request.messageId(),
+                    fieldKey(request.index()), request.entityId(), request.template());
+            int entryBytes = ResolveTemplateRequestPacket.estimateSize(entry);
+            if (ResolveTemplateRequestPacket.HEADER_BYTES + entryBytes > ResolveTemplateRequestPacket.MAX_PAYLOAD_BYTES) {
+                // Can't be sent in any packet; show what was resolved locally instead
+                SimChatMod.LOGGER.error("Template of {}.{} is too long to resolve on the server ({} bytes)",
+                        request.messageId(), entry.fieldKey(), entryBytes);
+                request.field().pending = false;
+                request.field().queued = null;
+                messageVersions.merge(request.messageId(), 1, Integer::sum);
                 continue;
             }
-            NetworkHandler.CHANNEL.sendToServer(
-                    new ResolveTemplateRequestPacket(request.key().messageId(), request.key().fieldKey(), request.entityId(), request.template())
-            );
+            if (batchBytes + entryBytes > ResolveTemplateRequestPacket.MAX_PAYLOAD_BYTES) {
+                NetworkHandler.CHANNEL.sendToServer(new ResolveTemplateRequestPacket(batch));
+                batch = new ArrayList<>();
+                batchBytes = ResolveTemplateRequestPacket.HEADER_BYTES;
+            }
+            batch.add(entry);
+            batchBytes += entryBytes;
             sent++;
         }
+        if (!batch.isEmpty()) {
+            NetworkHandler.CHANNEL.sendToServer(new ResolveTemplateRequestPacket(batch));
+        }
     }
 
     public static void retainMessages(Set<UUID> messageIds) {
-        localCache.keySet().removeIf(key -> !messageIds.contains(key.messageId()));
-        serverCache.keySet().removeIf(key -> !messageIds.contains(key.messageId()));
-        pending.removeIf(key -> !messageIds.contains(key.messageId()));
-        queuedPriority.keySet().removeIf(key -> !messageIds.contains(key.messageId()));
-        highPriorityQueue.removeIf(request -> !messageIds.contains(request.key().messageId()));
-        lowPriorityQueue.removeIf(request -> !messageIds.contains(request.key().messageId()));
+        removeMessagesIf(id -> !messageIds.contains(id));
+    }
+
+    /**
+     * Forgets everything cached for the given messages, e.g. after they were evicted from the client cache.
+     */
+    public static void removeMessages(Set<UUID> messageIds) {
+        removeMessagesIf(messageIds::contains);
+    }
+
+    /**
+     * Estimated heap used by cached values.
+     */
+    public static long getEstimatedBytes() {
+        return cachedBytes;
+    }
+
+    private static void removeMessagesIf(Predicate<UUID> removed) {
+        Iterator<Map.Entry<UUID, MessageFields>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, MessageFields> entry = iterator.next();
+            if (removed.test(entry.getKey())) {
+                entry.getValue().forgetAll();
+                iterator.remove();
+            }
+        }
+        highPriorityQueue.removeIf(request -> !request.field().pending);
+        lowPriorityQueue.removeIf(request -> !request.field().pending);
+        if (messageVersions.keySet().removeIf(removed)) {
+            // A message loaded again starts from version 0, which must not match what was measured before
+            epoch++;
+        }
+    }
+
+    /**
+     * Looks up or creates the fields of a message and marks them as used.
+     */
+    private static MessageFields touch(UUID messageId) {
+        MessageFields fields = entries.get(messageId);
+        if (fields != null) {
+            fields.lastAccess = ++accessClock;
+            return fields;
+        }
+        fields = new MessageFields();
+        fields.lastAccess = ++accessClock;
+        entries.put(messageId, fields);
+        if (entries.size() > ClientConfig.TEMPLATE_CACHE_SIZE.get()) {
+            evictLeastRecentlyUsed();
+        }
+        return fields;
+    }
+
+    // Evicts down to 7/8 of the limit at once, so the sort is paid once per many new messages
+    private static void evictLeastRecentlyUsed() {
+        int target = ClientConfig.TEMPLATE_CACHE_SIZE.get() * 7 / 8;
+        List<Map.Entry<UUID, MessageFields>> candidates = new ArrayList<>(entries.entrySet());
+        candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+        int count = candidates.size() - target;
+        for (int i = 0; i < count; i++) {
+            Map.Entry<UUID, MessageFields> entry = candidates.get(i);
+            entry.getValue().forgetAll();
+            entries.remove(entry.getKey());
+            // Values resolved again may differ from the ones measured
+            messageVersions.computeIfPresent(entry.getKey(), (id, version) -> version + 1);
+        }
+        if (ClientConfig.DEBUG.get()) {
+            SimChatMod.LOGGER.info("[RuntimeResolver] Evicted resolved templates of {} messages", count);
+        }
+    }
+
+    private static String fieldKey(int index) {
+        return index < FIELD_KEYS.length ? FIELD_KEYS[index] : ACTION_LABEL_PREFIX + (index - FIRST_ACTION_FIELD);
+    }
+
+    private static int fieldIndex(String fieldKey) {
+        return switch (fieldKey) {
+            case "content" -> CONTENT;
+            case "senderName" -> SENDER_NAME;
+            case "senderSubtitle" -> SENDER_SUBTITLE;
+            default -> {
+                if (!fieldKey.startsWith(ACTION_LABEL_PREFIX)) {
+                    yield -1;
+                }
+                try {
+                    int actionIndex = Integer.parseInt(fieldKey.substring(ACTION_LABEL_PREFIX.length()));
+                    yield actionIndex >= 0 ? FIRST_ACTION_FIELD + actionIndex : -1;
+                } catch (NumberFormatException e) {
+                    yield -1;
+                }
+            }
+        };
+    }
+
+    private static long entryBytes(String value) {
+        return ENTRY_OVERHEAD_BYTES + 2L * value.length();
     }
 
-    private static void queueRequest(CacheKey key, String entityId, String template, ResolutionPriority priority) {
-        ResolutionPriority existing = queuedPriority.get(key);
+    private static void queueRequest(UUID messageId, int index, Field field, String entityId, String template,
+                                     ResolutionPriority priority) {
+        ResolutionPriority existing = field.queued;
         if (existing == ResolutionPriority.HIGH) {
             return;
         }
         
-        TemplateRequest request = new TemplateRequest(key, entityId, template);
+        TemplateRequest request = new TemplateRequest(messageId, index, field, entityId, template);
         if (existing == ResolutionPriority.LOW && priority == ResolutionPriority.HIGH) {
             // Upgrade: remove from low, add to front of high (preserve newest-first order)
-            lowPriorityQueue.removeIf(r -> r.key().equals(key));
+            lowPriorityQueue.removeIf(r -> r.field() == field);
             highPriorityQueue.addFirst(request);
         } else if (existing == ResolutionPriority.LOW) {
             return;
@@ -168,7 +349,7 @@ public final class RuntimeTemplateResolver {
         } else {
             lowPriorityQueue.add(request);
         }
-        queuedPriority.put(key, priority);
+        field.queued = priority;
     }
 
     private static @Nullable TemplateRequest pollNextRequest() {
@@ -190,80 +371,163 @@ public final class RuntimeTemplateResolver {
         return template.replaceAll("\\{[^}]+\\}", "...");
     }
 
-    private static String getCachedValue(ChatMessage message, String fieldKey, @Nullable String template,
+    private static String getCachedValue(ChatMessage message, int index, @Nullable String template,
                                           @Nullable String fallback, ResolutionPriority priority) {
-        CacheKey key = new CacheKey(message.messageId(), fieldKey);
+        MessageFields fields = touch(message.messageId());
+        Field field = fields.field(index);
+        if (field.dependencies == null) {
+            // Values sent along with the message arrive before their template is known here
+            field.dependencies = ClientTemplateEngine.getDependencies(template);
+        }
 
         // Return server-resolved value if available
-        String serverValue = serverCache.get(key);
-        if (serverValue != null) {
-            return serverValue;
+        if (field.server != null) {
+            return field.server;
         }
 
         // Return template with placeholders replaced by "..." if waiting for server resolution
-        if (pending.contains(key)) {
+        if (field.pending) {
             if (template != null && !template.isEmpty()) {
-                queueRequest(key, message.entityId(), template, priority);
+                queueRequest(message.messageId(), index, field, message.entityId(), template, priority);
             }
             return templateWithPlaceholders(template, fallback);
         }
 
         // Return local value if available
-        String localValue = localCache.get(key);
-        if (localValue != null) {
-            return localValue;
+        if (field.local != null) {
+            return field.local;
         }
 
         // Resolve and cache
-        resolveAndCache(message, fieldKey, template, fallback, priority);
+        resolveAndCache(message, fields, index, template, fallback, priority);
 
         // Check if now pending after resolution attempt
-        if (pending.contains(key)) {
+        if (field.pending) {
             return templateWithPlaceholders(template, fallback);
         }
 
-        String cached = localCache.get(key);
-        return cached != null ? cached : (fallback != null ? fallback : "");
+        return field.local != null ? field.local : (fallback != null ? fallback : "");
     }
 
-    private static void resolveAndCache(ChatMessage message, String fieldKey, @Nullable String template,
+    private static void resolveAndCache(ChatMessage message, MessageFields fields, int index, @Nullable String template,
                                         @Nullable String fallback, ResolutionPriority priority) {
-        CacheKey key = new CacheKey(message.messageId(), fieldKey);
-        if (localCache.containsKey(key) || serverCache.containsKey(key)) {
+        Field field = fields.field(index);
+        if (field.local != null || field.server != null) {
             return;
         }
-        if (pending.contains(key)) {
-            queueRequest(key, message.entityId(), template, priority);
+        if (field.pending) {
+            queueRequest(message.messageId(), index, field, message.entityId(), template, priority);
             return;
         }
         boolean debug = ClientConfig.DEBUG.get();
         if (template == null || template.isEmpty()) {
             String value = fallback != null ? fallback : "";
-            localCache.put(key, value);
+            field.setLocal(value);
+            field.dependencies = List.of();
             if (debug) {
-                SimChatMod.LOGGER.info("[RuntimeResolver] {}.{} cached fallback -> '{}'", message.messageId(), fieldKey, value);
+                SimChatMod.LOGGER.info("[RuntimeResolver] {}.{} cached fallback -> '{}'", message.messageId(), fieldKey(index), value);
             }
             return;
         }
 
         String locallyResolved = ClientTemplateEngine.process(template);
-        localCache.put(key, locallyResolved);
+        field.setLocal(locallyResolved);
+        field.dependencies = ClientTemplateEngine.getDependencies(template);
         if (debug) {
-            SimChatMod.LOGGER.info("[RuntimeResolver] {}.{} cached local -> '{}'", message.messageId(), fieldKey, locallyResolved);
+            SimChatMod.LOGGER.info("[RuntimeResolver] {}.{} cached local -> '{}'", message.messageId(), fieldKey(index), locallyResolved);
         }
 
         if (!ClientTemplateEngine.hasPlaceholders(locallyResolved)) {
             return;
         }
 
-        pending.add(key);
-        queueRequest(key, message.entityId(), template, priority);
+        field.pending = true;
+        queueRequest(message.messageId(), index, field, message.entityId(), template, priority);
         if (debug) {
-            SimChatMod.LOGGER.info("[RuntimeResolver] {}.{} queued server resolution for '{}'", message.messageId(), fieldKey, template);
+            SimChatMod.LOGGER.info("[RuntimeResolver] {}.{} queued server resolution for '{}'", message.messageId(), fieldKey(index), template);
+        }
+    }
+
+    /**
+     * Cached state of one message's fields, indexed by field number.
+     */
+    private static final class MessageFields {
+        Field[] fields = new Field[FIRST_ACTION_FIELD];
+        long lastAccess;
+
+        Field field(int index) {
+            if (index >= fields.length) {
+                fields = Arrays.copyOf(fields, index + 1);
+            }
+            Field field = fields[index];
+            if (field == null) {
+                field = new Field();
+                fields[index] = field;
+            }
+            return field;
+        }
+
+        /**
+         * @return how many fields were dropped
+         */
+        int forgetIf(Predicate<Field> test) {
+            int dropped = 0;
+            for (int i = 0; i < fields.length; i++) {
+                Field field = fields[i];
+                if (field != null && test.test(field)) {
+                    field.forget();
+                    fields[i] = null;
+                    dropped++;
+                }
+            }
+            return dropped;
+        }
+
+        void forgetAll() {
+            forgetIf(field -> true);
         }
     }
 
-    private record TemplateRequest(CacheKey key, String entityId, String template) {}
+    private static final class Field {
+        @Nullable String local;
+        @Nullable String server;
+        boolean pending;
+        @Nullable ResolutionPriority queued;
+        // Client-resolvable placeholders the template uses; null until the template is seen.
+        // Server-resolved placeholders are not tracked, see invalidate
+        @Nullable List<String> dependencies;
+
+        void setLocal(String value) {
+            cachedBytes += entryBytes(value) - (local != null ? entryBytes(local) : 0);
+            local = value;
+        }
+
+        // Holds or awaits a server value
+        boolean isServerResolved() {
+            return server != null || pending;
+        }
+
+        boolean dependsOnAny(Set<String> placeholders) {
+            if (dependencies == null) {
+                return true;
+            }
+            for (String dependency : dependencies) {
+                if (placeholders.contains(dependency)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Also makes queued requests for this field stale
+        void forget() {
+            cachedBytes -= (local != null ? entryBytes(local) : 0) + (server != null ? entryBytes(server) : 0);
+            local = null;
+            server = null;
+            pending = false;
+            queued = null;
+        }
+    }
 
-    private record CacheKey(UUID messageId, String fieldKey) {}
+    private record TemplateRequest(UUID messageId, int index, Field field, String entityId, String template) {}
 }
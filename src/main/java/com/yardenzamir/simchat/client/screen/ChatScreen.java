@@ -18,6 +18,7 @@ import com.yardenzamir.simchat.client.RuntimeTemplateResolver;
 import com.yardenzamir.simchat.client.SortMode;
 import com.yardenzamir.simchat.client.widget.ChatHistoryWidget;
 import com.yardenzamir.simchat.client.widget.EntityListWidget;
+import com.yardenzamir.simchat.client.widget.MessageRenderer;
 import com.yardenzamir.simchat.config.ClientConfig;
 import com.yardenzamir.simchat.data.ChatMessage;
 import com.yardenzamir.simchat.data.PlayerChatData;
@@ -78,8 +79,10 @@ public class ChatScreen extends Screen {
         sortMode = SortMode.fromId(ClientConfig.SIDEBAR_SORT_MODE.get());
         clampSidebarWidth();
 
+        // The font may have changed (resource reload, unicode option) since wrapped lines were cached
+        MessageRenderer.clearWrapCache();
         rebuildLayout();
-        RuntimeTemplateResolver.clear();
+        // Resolved values are kept: most server-pushed ones arrive while the screen is closed
         refreshAll();
 
         boolean toastActive = ChatToast.isToastActive() && initialMessageId == null;
@@ -251,6 +254,7 @@ public class ChatScreen extends Screen {
 
     private void selectEntity(String entityId, @Nullable PlayerChatData.FocusInfo focusInfo, boolean forceLatest) {
         this.selectedEntityId = entityId;
+        ClientTeamCache.setActiveConversation(entityId);
         entityList.setSelected(entityId);
 
         TeamData team = ClientTeamCache.getTeam();
@@ -499,6 +503,7 @@ public class ChatScreen extends Screen {
     @Override
     public void removed() {
         super.removed();
+        ClientTeamCache.setActiveConversation(null);
         int keepCount = ClientConfig.CLOSED_CACHE_SIZE.get();
         java.util.Set<java.util.UUID> retained = ClientTeamCache.trimToLatest(keepCount);
         RuntimeTemplateResolver.retainMessages(retained);
@@ -524,6 +529,7 @@ public class ChatScreen extends Screen {
             if (teamChanged) {
                 // Switched teams - clear selection and select first entity
                 selectedEntityId = null;
+                ClientTeamCache.setActiveConversation(null);
                 lastTeamId = team.getId();
             }
 
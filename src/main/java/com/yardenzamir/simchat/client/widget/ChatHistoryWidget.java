@@ -1,6 +1,5 @@
 package com.yardenzamir.simchat.client.widget;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.regex.Pattern;
@@ -33,8 +32,9 @@ import static com.yardenzamir.simchat.client.widget.ChatHistoryConstants.*;
 public class ChatHistoryWidget extends AbstractWidget {
 
     private final Minecraft minecraft;
-    private final List<ChatMessage> messages = new ArrayList<>();
+    private List<ChatMessage> messages = List.of(); // Snapshot from ClientTeamCache, never modified
     private final HoverState hoverState = new HoverState();
+    private final MessageLayout layout = new MessageLayout();
 
     private @Nullable String entityId;
     private @Nullable String typingEntityNameResolved;
@@ -118,9 +118,11 @@ public class ChatHistoryWidget extends AbstractWidget {
         setMessages(messages, entityId, messages.size());
     }
 
+    /**
+     * Shows the given messages. The list is kept rather than copied, so it must not change afterwards.
+     */
     public void setMessages(List<ChatMessage> messages, String entityId, int readCount) {
-        this.messages.clear();
-        this.messages.addAll(messages);
+        this.messages = messages;
         this.entityId = entityId;
         this.requestingOlderMessages = false;
         this.contextMenu = null;
@@ -134,7 +136,7 @@ public class ChatHistoryWidget extends AbstractWidget {
 
     /**
      * Updates messages for the current conversation, preserving scroll position appropriately.
-     * Used when messages are added or older messages are loaded.
+     * Used when messages are added or older messages are loaded. The list is kept, as in setMessages.
      */
     public void updateMessages(List<ChatMessage> messages, @Nullable String entityId) {
         int oldCount = this.messages.size();
@@ -156,8 +158,7 @@ public class ChatHistoryWidget extends AbstractWidget {
             loadingOlderMessages = newIndex > 0;
         }
 
-        this.messages.clear();
-        this.messages.addAll(messages);
+        this.messages = messages;
         this.entityId = entityId;
         this.contextMenu = null;
 
@@ -214,21 +215,17 @@ public class ChatHistoryWidget extends AbstractWidget {
     }
 
     private boolean scrollToMessage(UUID messageId) {
-        int y = getY() + MESSAGE_PADDING;
-        for (ChatMessage message : messages) {
-            int msgHeight = MessageRenderer.calculateHeight(minecraft, message, width);
-            if (message.messageId().equals(messageId)) {
-                int desiredOffset = y - getY() - MESSAGE_PADDING;
-                scrollOffset = clampScrollOffset(desiredOffset);
+        for (int i = 0; i < messages.size(); i++) {
+            if (messages.get(i).messageId().equals(messageId)) {
+                scrollOffset = clampScrollOffset(layout.top(i));
                 return true;
             }
-            y += msgHeight + MESSAGE_PADDING;
         }
         return false;
     }
 
     public void clearMessages() {
-        this.messages.clear();
+        this.messages = List.of();
         this.entityId = null;
         this.isTyping = false;
         this.typingEntityNameResolved = null;
@@ -240,6 +237,7 @@ public class ChatHistoryWidget extends AbstractWidget {
         this.focusedMessageId = null;
         this.focusedMessageIndex = -1;
         this.contextMenu = null;
+        layout.rebuild(minecraft, messages, width);
     }
 
     public void setTyping(boolean typing, @Nullable String entityName, @Nullable String nameTemplate, @Nullable String imageId) {
@@ -247,7 +245,7 @@ public class ChatHistoryWidget extends AbstractWidget {
         this.isTyping = typing;
         this.typingEntityNameResolved = resolveTypingName(entityName, nameTemplate);
         this.typingEntityImageId = imageId;
-        recalculateContentHeight();
+        updateContentHeight();
 
         if (typing && !wasTyping) {
             scrollToBottom();
@@ -274,10 +272,13 @@ public class ChatHistoryWidget extends AbstractWidget {
     }
 
     private void recalculateContentHeight() {
-        int totalHeight = MESSAGE_PADDING;
-        for (ChatMessage message : messages) {
-            totalHeight += MessageRenderer.calculateHeight(minecraft, message, width) + MESSAGE_PADDING;
-        }
+        layout.rebuild(minecraft, messages, width);
+        updateContentHeight();
+    }
+
+    // Content height from the current layout, without re-measuring messages
+    private void updateContentHeight() {
+        int totalHeight = MESSAGE_PADDING + layout.totalHeight();
         if (isTyping) {
             totalHeight += TYPING_INDICATOR_HEIGHT + MESSAGE_PADDING;
         }
@@ -353,21 +354,34 @@ public class ChatHistoryWidget extends AbstractWidget {
         // Check if we should load older messages
         checkLazyLoadOlderMessages();
 
+        if (layout.width() != width || layout.size() != messages.size()) {
+            recalculateContentHeight();
+        }
+
         // Clamp scroll in case dimensions changed since scroll was set
         scrollOffset = clampScrollOffset(scrollOffset);
 
+        // Only messages in view are re-measured; the rest keep their cached heights
+        int contentTop = getY() + MESSAGE_PADDING - scrollOffset;
+        int first = Math.max(0, layout.indexAt(getY() - contentTop));
+        int end = first;
+        while (end < messages.size() && contentTop + layout.top(end) < getY() + height) {
+            end++;
+        }
+        if (layout.refresh(minecraft, messages, first, end)) {
+            updateContentHeight();
+            scrollOffset = clampScrollOffset(scrollOffset);
+            contentTop = getY() + MESSAGE_PADDING - scrollOffset;
+        }
+
         hoverState.reset();
 
         graphics.enableScissor(getX(), getY(), getX() + width, getY() + height);
 
-        // Copy to avoid ConcurrentModificationException from network thread updates
-        List<ChatMessage> snapshot = List.copyOf(messages);
-
-        int y = getY() + MESSAGE_PADDING - scrollOffset;
-
-        for (int i = 0; i < snapshot.size(); i++) {
-            ChatMessage message = snapshot.get(i);
-            int msgHeight = MessageRenderer.calculateHeight(minecraft, message, width);
+        for (int i = first; i < end; i++) {
+            ChatMessage message = messages.get(i);
+            int y = contentTop + layout.top(i);
+            int msgHeight = layout.height(i);
 
             boolean isHovered = mouseX >= getX() && mouseX < getX() + width
                     && mouseY >= y && mouseY < y + msgHeight;
@@ -408,10 +422,9 @@ public class ChatHistoryWidget extends AbstractWidget {
                         getX() + MESSAGE_PADDING, y, width,
                         mouseX, mouseY, isHovered, hoverState, inputInfo);
             }
-
-            y += msgHeight + MESSAGE_PADDING;
         }
 
+        int y = contentTop + layout.totalHeight();
         if (isTyping && typingEntityImageId != null) {
             if (y + TYPING_INDICATOR_HEIGHT > getY() && y < getY() + height) {
                 MessageRenderer.renderTypingIndicator(graphics, minecraft,
@@ -532,15 +545,18 @@ public class ChatHistoryWidget extends AbstractWidget {
     }
 
     private @Nullable MessageHit getMessageHit(double mouseX, double mouseY) {
-        int y = getY() + MESSAGE_PADDING - scrollOffset;
-        for (int i = 0; i < messages.size(); i++) {
-            ChatMessage message = messages.get(i);
-            int msgHeight = MessageRenderer.calculateHeight(minecraft, message, width);
-            if (mouseX >= getX() && mouseX < getX() + width
-                    && mouseY >= y && mouseY < y + msgHeight) {
-                return new MessageHit(i, message, y, msgHeight);
-            }
-            y += msgHeight + MESSAGE_PADDING;
+        if (mouseX < getX() || mouseX >= getX() + width) {
+            return null;
+        }
+        int contentTop = getY() + MESSAGE_PADDING - scrollOffset;
+        int index = layout.indexAt((int) Math.floor(mouseY) - contentTop);
+        if (index < 0 || index >= messages.size()) {
+            return null;
+        }
+        int y = contentTop + layout.top(index);
+        int msgHeight = layout.height(index);
+        if (mouseY >= y && mouseY < y + msgHeight) {
+            return new MessageHit(index, messages.get(index), y, msgHeight);
         }
         return null;
     }
@@ -672,17 +688,15 @@ public class ChatHistoryWidget extends AbstractWidget {
             return true;
         }
 
-        // Copy to avoid ConcurrentModificationException from network thread updates
-        List<ChatMessage> snapshot = List.copyOf(messages);
-
         // Track if we clicked inside the active input field
         boolean clickedInsideActiveInput = false;
 
-        int y = getY() + MESSAGE_PADDING - scrollOffset;
-
-        for (int i = 0; i < snapshot.size(); i++) {
-            ChatMessage message = snapshot.get(i);
-            int msgHeight = MessageRenderer.calculateHeight(minecraft, message, width);
+        // Buttons lie within their message, so only the message under the cursor can be hit
+        MessageHit clicked = getMessageHit(mouseX, mouseY);
+        if (clicked != null) {
+            int i = clicked.index();
+            ChatMessage message = clicked.message();
+            int y = clicked.y();
 
             if (!message.actions().isEmpty()) {
                 int textX = getX() + MESSAGE_PADDING + AVATAR_SIZE + MESSAGE_PADDING;
@@ -772,8 +786,6 @@ public class ChatHistoryWidget extends AbstractWidget {
                     }
                 }
             }
-
-            y += msgHeight + MESSAGE_PADDING;
         }
 
         // Clicked outside all buttons - cancel active input if any
@@ -0,0 +1,139 @@
+package com.yardenzamir.simchat.client.widget;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import net.minecraft.client.Minecraft;
+
+import com.yardenzamir.simchat.client.RuntimeTemplateResolver;
+import com.yardenzamir.simchat.data.ChatMessage;
+
+import static com.yardenzamir.simchat.client.widget.ChatHistoryConstants.*;
+
+/**
+ * Message heights and offsets for ChatHistoryWidget, so a frame only measures the messages it shows.
+ * Heights are cached per message instance, width and resolved-text version, so a message replaced
+ * under the same ID (e.g. with its actions consumed) is re-measured; offsets are prefix sums
+ * searched by binary search.
+ */
+final class MessageLayout {
+
+    // Holds the measured message so a replacement under the same ID misses the cache
+    private record CachedHeight(ChatMessage message, int width, long version, int height) {}
+
+    private final Map<UUID, CachedHeight> cache = new HashMap<>();
+    private int width = -1;
+    private int count = 0;
+    private int[] heights = new int[0];
+    private int[] tops = new int[1]; // tops[i] = offset of message i; tops[count] = total height with padding
+
+    /**
+     * Lays out a new message list or width, reusing cached heights.
+     */
+    void rebuild(Minecraft mc, List<ChatMessage> messages, int width) {
+        this.width = width;
+        this.count = messages.size();
+        this.heights = new int[count];
+        this.tops = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            heights[i] = heightOf(mc, messages.get(i));
+            tops[i + 1] = tops[i] + heights[i] + MESSAGE_PADDING;
+        }
+        // Drop heights of messages that are no longer shown
+        if (cache.size() > count * 2) {
+            Set<UUID> shown = new HashSet<>(count);
+            for (ChatMessage message : messages) {
+                shown.add(message.messageId());
+            }
+            cache.keySet().retainAll(shown);
+        }
+    }
+
+    /**
+     * Re-measures messages in [from, to) that were replaced or whose resolved text changed since they
+     * were laid out.
+     *
+     * @return true if any height changed
+     */
+    boolean refresh(Minecraft mc, List<ChatMessage> messages, int from, int to) {
+        int firstChanged = -1;
+        for (int i = from; i < to; i++) {
+            int height = heightOf(mc, messages.get(i));
+            if (height != heights[i]) {
+                heights[i] = height;
+                if (firstChanged < 0) {
+                    firstChanged = i;
+                }
+            }
+        }
+        if (firstChanged < 0) {
+            return false;
+        }
+        for (int i = firstChanged; i < count; i++) {
+            tops[i + 1] = tops[i] + heights[i] + MESSAGE_PADDING;
+        }
+        return true;
+    }
+
+    int width() {
+        return width;
+    }
+
+    int size() {
+        return count;
+    }
+
+    int top(int index) {
+        return tops[index];
+    }
+
+    int height(int index) {
+        return heights[index];
+    }
+
+    /**
+     * Sum of message heights, each followed by padding.
+     */
+    int totalHeight() {
+        return tops[count];
+    }
+
+    /**
+     * Index of the message spanning the given offset (with its trailing padding), clamped to the list.
+     *
+     * @return -1 if there are no messages
+     */
+    int indexAt(int offset) {
+        if (count == 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (tops[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private int heightOf(Minecraft mc, ChatMessage message) {
+        UUID messageId = message.messageId();
+        CachedHeight cached = cache.get(messageId);
+        if (cached != null && cached.message() == message && cached.width() == width
+                && cached.version() == RuntimeTemplateResolver.getVersion(messageId)) {
+            return cached.height();
+        }
+        int height = MessageRenderer.calculateHeight(mc, message, width);
+        // Read the version after measuring, which may have resolved templates for the first time
+        cache.put(messageId, new CachedHeight(message, width, RuntimeTemplateResolver.getVersion(messageId), height));
+        return height;
+    }
+}
@@ -1,12 +1,18 @@
 package com.yardenzamir.simchat.client.widget;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import net.minecraft.ChatFormatting;
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.StringSplitter;
 import net.minecraft.client.gui.GuiGraphics;
 import net.minecraft.network.chat.Component;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.util.Mth;
 import net.minecraft.world.item.ItemStack;
 
 import com.mojang.blaze3d.systems.RenderSystem;
@@ -30,6 +36,16 @@ import static com.yardenzamir.simchat.client.widget.ChatHistoryConstants.*;
 public final class MessageRenderer {
     private MessageRenderer() {}
 
+    private static final int WRAP_CACHE_SIZE = 1024;
+
+    // Least recently used entries are evicted first
+    private static final Map<WrapKey, List<String>> wrapCache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<WrapKey, List<String>> eldest) {
+            return size() > WRAP_CACHE_SIZE;
+        }
+    };
+
     /**
      * Info about an action in input mode.
      */
@@ -298,9 +314,108 @@ public final class MessageRenderer {
     }
 
     /**
-     * Wraps text to fit within maxWidth.
+     * Wraps text to fit within maxWidth, breaking at spaces.
+     * Results are cached by text and width; callers pass resolved text, so a template that
+     * resolves to new text simply misses the cache.
      */
     public static List<String> wrapText(Minecraft mc, String text, int maxWidth) {
+        WrapKey key = new WrapKey(text, maxWidth);
+        List<String> lines = wrapCache.get(key);
+        if (lines == null) {
+            // Formatting codes change the width of everything after them, so measure those whole lines
+            lines = List.copyOf(text.indexOf(ChatFormatting.PREFIX_CODE) >= 0
+                    ? wrapFormattedText(mc, text, maxWidth)
+                    : wrapPlainText(mc.font.getSplitter(), text, maxWidth));
+            wrapCache.put(key, lines);
+        }
+        return lines;
+    }
+
+    /**
+     * Drops cached wrapped lines, e.g. after the font may have changed.
+     */
+    public static void clearWrapCache() {
+        wrapCache.clear();
+    }
+
+    /**
+     * Same breaks as wrapFormattedText, but keeps a running line width instead of re-measuring the line
+     * for every word. Widths are summed per code point in the same order as Font.width, so the results are identical.
+     */
+    private static List<String> wrapPlainText(StringSplitter splitter, String text, int maxWidth) {
+        List<String> lines = new ArrayList<>();
+        float[] asciiWidths = new float[128];
+        Arrays.fill(asciiWidths, -1);
+        float spaceWidth = charWidth(splitter, asciiWidths, ' ');
+
+        // String.split drops trailing empty words, so trailing spaces never reach a line
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (end == 0 && !text.isEmpty()) {
+            return lines; // Only spaces: split yields no words at all
+        }
+
+        int lineStart = 0;
+        int lineEnd = 0; // Line is empty while lineEnd == lineStart
+        float lineWidth = 0;
+        int wordStart = 0;
+        while (wordStart <= end) {
+            int wordEnd = text.indexOf(' ', wordStart);
+            if (wordEnd < 0 || wordEnd > end) {
+                wordEnd = end;
+            }
+
+            boolean lineEmpty = lineEnd == lineStart;
+            float testWidth = lineEmpty ? 0 : lineWidth + spaceWidth;
+            testWidth = addWidth(splitter, asciiWidths, text, wordStart, wordEnd, testWidth);
+            if (Mth.ceil(testWidth) > maxWidth) {
+                if (!lineEmpty) {
+                    lines.add(text.substring(lineStart, lineEnd));
+                    lineStart = wordStart;
+                    lineEnd = wordEnd;
+                    lineWidth = addWidth(splitter, asciiWidths, text, wordStart, wordEnd, 0);
+                } else {
+                    lines.add(text.substring(wordStart, wordEnd));
+                }
+            } else {
+                if (lineEmpty) {
+                    lineStart = wordStart;
+                }
+                lineEnd = wordEnd;
+                lineWidth = testWidth;
+            }
+            wordStart = wordEnd + 1;
+        }
+        if (lineEnd > lineStart) {
+            lines.add(text.substring(lineStart, lineEnd));
+        }
+        return lines;
+    }
+
+    private static float addWidth(StringSplitter splitter, float[] asciiWidths, String text, int start, int end, float width) {
+        for (int i = start; i < end; ) {
+            int codePoint = text.codePointAt(i);
+            width += charWidth(splitter, asciiWidths, codePoint);
+            i += Character.charCount(codePoint);
+        }
+        return width;
+    }
+
+    private static float charWidth(StringSplitter splitter, float[] asciiWidths, int codePoint) {
+        if (codePoint < asciiWidths.length) {
+            float width = asciiWidths[codePoint];
+            if (width < 0) {
+                width = splitter.stringWidth(Character.toString(codePoint));
+                asciiWidths[codePoint] = width;
+            }
+            return width;
+        }
+        return splitter.stringWidth(Character.toString(codePoint));
+    }
+
+    private static List<String> wrapFormattedText(Minecraft mc, String text, int maxWidth) {
         List<String> lines = new ArrayList<>();
         String[] words = text.split(" ");
         StringBuilder currentLine = new StringBuilder();
@@ -324,6 +439,8 @@ public final class MessageRenderer {
         return lines;
     }
 
+    private record WrapKey(String text, int maxWidth) {}
+
     private static int getPlayerNameColor() {
         TeamData team = ClientTeamCache.getTeam();
         if (team == null) {
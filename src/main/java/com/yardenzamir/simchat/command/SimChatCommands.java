@@ -14,6 +14,7 @@ import net.minecraft.commands.arguments.ResourceLocationArgument;
 import net.minecraft.network.chat.ClickEvent;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.HoverEvent;
+import net.minecraft.network.chat.MutableComponent;
 import net.minecraft.network.chat.Style;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerPlayer;
@@ -32,6 +33,7 @@ import com.mojang.brigadier.suggestion.SuggestionsBuilder;
 import com.yardenzamir.simchat.SimChatMod;
 import com.yardenzamir.simchat.capability.ChatCapability;
 import com.yardenzamir.simchat.condition.CallbackContext;
+import com.yardenzamir.simchat.condition.CallbackProfiler;
 import com.yardenzamir.simchat.condition.TemplateEngine;
 import com.yardenzamir.simchat.config.ServerConfig;
 import com.yardenzamir.simchat.data.ChatMessage;
@@ -41,6 +43,7 @@ import com.yardenzamir.simchat.data.PlayerChatData;
 import com.yardenzamir.simchat.integration.kubejs.KubeJSIntegration;
 import com.yardenzamir.simchat.network.NetworkHandler;
 import com.yardenzamir.simchat.storage.SimChatDatabase;
+import com.yardenzamir.simchat.team.MessageTailCache;
 import com.yardenzamir.simchat.team.SimChatTeamManager;
 import com.yardenzamir.simchat.team.TeamData;
 
@@ -50,6 +53,9 @@ import com.yardenzamir.simchat.team.TeamData;
 @Mod.EventBusSubscriber(modid = SimChatMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
 public class SimChatCommands {
 
+    // Entries of each kind listed by /simchat callback profile
+    private static final int PROFILE_ENTRIES_SHOWN = 10;
+
     @SubscribeEvent
     public static void onRegisterCommands(RegisterCommandsEvent event) {
         CommandDispatcher<CommandSourceStack> dispatcher = event.getDispatcher();
@@ -148,7 +154,20 @@ public class SimChatCommands {
                                                 com.yardenzamir.simchat.condition.CallbackRegistry.getCallbackNames(), builder))
                                         .executes(SimChatCommands::callbackRunSelf)
                                         .then(Commands.argument("player", EntityArgument.player())
-                                                .executes(SimChatCommands::callbackRunPlayer)))))
+                                                .executes(SimChatCommands::callbackRunPlayer))))
+                        // callback profile [reset] - slowest callbacks and resolvers
+                        .then(Commands.literal("profile")
+                                .requires(source -> source.hasPermission(ServerConfig.getCommandPermission("callback.profile")))
+                                .executes(SimChatCommands::callbackProfile)
+                                .then(Commands.literal("reset")
+                                        .executes(SimChatCommands::callbackProfileReset))))
+                // storage stats [reset] - message cache and write queue diagnostics
+                .then(Commands.literal("storage")
+                        .then(Commands.literal("stats")
+                                .requires(source -> source.hasPermission(ServerConfig.getCommandPermission("storage.stats")))
+                                .executes(SimChatCommands::storageStats)
+                                .then(Commands.literal("reset")
+                                        .executes(SimChatCommands::storageStatsReset))))
                 // data subcommands for team data - all accept optional [target] (player or team)
                         .then(Commands.literal("data")
                         .then(Commands.literal("get")
@@ -658,6 +677,78 @@ public class SimChatCommands {
         return 1;
     }
 
+    private static int callbackProfile(CommandContext<CommandSourceStack> ctx) {
+        sendProfile(ctx, CallbackProfiler.CALLBACKS);
+        sendProfile(ctx, CallbackProfiler.TEMPLATES);
+        sendProfile(ctx, CallbackProfiler.CONDITIONS);
+        return 1;
+    }
+
+    private static void sendProfile(CommandContext<CommandSourceStack> ctx, CallbackProfiler profiler) {
+        List<CallbackProfiler.Entry> entries = profiler.snapshot();
+        ctx.getSource().sendSuccess(() -> Component.literal(profiler.getKind() + "s (" + entries.size() + ")")
+                .withStyle(Style.EMPTY.withColor(0x55FFFF).withBold(true)), false);
+        if (entries.isEmpty()) {
+            ctx.getSource().sendSuccess(() -> Component.literal("  (no calls recorded)")
+                    .withStyle(Style.EMPTY.withColor(0x555555)), false);
+            return;
+        }
+        for (CallbackProfiler.Entry entry : entries.subList(0, Math.min(PROFILE_ENTRIES_SHOWN, entries.size()))) {
+            String value = String.format("%d calls, %s total, mean %s, p50 %s, p99 %s, max %s",
+                    entry.calls(), formatNanos(entry.totalNanos()), formatNanos(entry.meanNanos()),
+                    formatNanos(entry.p50Nanos()), formatNanos(entry.p99Nanos()), formatNanos(entry.maxNanos()));
+            MutableComponent line = Component.literal("  ")
+                    .append(Component.literal(entry.name()).withStyle(Style.EMPTY.withColor(0xFFAA00)))
+                    .append(Component.literal(": " + value).withStyle(Style.EMPTY.withColor(0xFFFFFF)));
+            if (entry.errors() > 0) {
+                line.append(Component.literal(", " + entry.errors() + " errors")
+                        .withStyle(Style.EMPTY.withColor(0xFF5555)));
+            }
+            ctx.getSource().sendSuccess(() -> line, false);
+        }
+    }
+
+    private static String formatNanos(long nanos) {
+        return nanos >= 1_000_000 ? String.format("%.1fms", nanos / 1_000_000.0) : (nanos / 1000) + "\u00b5s";
+    }
+
+    private static int callbackProfileReset(CommandContext<CommandSourceStack> ctx) {
+        CallbackProfiler.resetAll();
+        ctx.getSource().sendSuccess(() -> Component.literal("Callback profile reset")
+                .withStyle(Style.EMPTY.withColor(0x55FF55)), false);
+        return 1;
+    }
+
+    // === Storage Commands ===
+
+    private static int storageStats(CommandContext<CommandSourceStack> ctx) {
+        SimChatTeamManager manager = SimChatTeamManager.get(ctx.getSource().getServer());
+        MessageTailCache.Stats stats = manager.getTailCacheStats();
+
+        ctx.getSource().sendSuccess(() -> Component.literal("Storage")
+                .withStyle(Style.EMPTY.withColor(0x55FFFF).withBold(true)), false);
+        sendStatLine(ctx, "Tail cache hits", stats.hits() + " / " + (stats.hits() + stats.misses())
+                + String.format(" (%.1f%%)", stats.hitRate() * 100.0));
+        sendStatLine(ctx, "Tail cache conversations", String.valueOf(stats.conversations()));
+        sendStatLine(ctx, "Tail cache memory", String.format("%.1f / %.1f MB",
+                stats.bytes() / (1024.0 * 1024.0), stats.maxBytes() / (1024.0 * 1024.0)));
+        sendStatLine(ctx, "Queued writes", String.valueOf(manager.getQueuedWriteCount()));
+        return 1;
+    }
+
+    private static int storageStatsReset(CommandContext<CommandSourceStack> ctx) {
+        SimChatTeamManager.get(ctx.getSource().getServer()).resetTailCacheStats();
+        ctx.getSource().sendSuccess(() -> Component.literal("Storage stats reset")
+                .withStyle(Style.EMPTY.withColor(0x55FF55)), false);
+        return 1;
+    }
+
+    private static void sendStatLine(CommandContext<CommandSourceStack> ctx, String label, String value) {
+        Component labelComp = Component.literal("  " + label + ": ").withStyle(Style.EMPTY.withColor(0xAAAAAA));
+        Component valueComp = Component.literal(value).withStyle(Style.EMPTY.withColor(0xFFFFFF));
+        ctx.getSource().sendSuccess(() -> labelComp.copy().append(valueComp), false);
+    }
+
     private static int callbackRunSelf(CommandContext<CommandSourceStack> ctx) throws CommandSyntaxException {
         ServerPlayer player = ctx.getSource().getPlayerOrException();
         return runCallback(ctx, player);
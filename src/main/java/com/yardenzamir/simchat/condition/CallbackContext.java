@@ -24,6 +24,8 @@ public class CallbackContext {
     @Nullable private final TeamContext teamContext;
     @Nullable private final EntityContext entityContext;
     private final Map<String, String> inputValues;
+    // Callback results within this context, so one evaluation calls each callback once (null results included)
+    @Nullable private Map<String, Object> callbackResults;
 
     public CallbackContext(ServerPlayer player, @Nullable TeamData team, @Nullable String entityId) {
         this(player, team, entityId, Collections.emptyMap());
@@ -82,6 +84,43 @@ public class CallbackContext {
         return inputValues.get(key);
     }
 
+    /**
+     * Forgets callback results remembered by this context, so callbacks run again and see
+     * changes made since (e.g. by commands run between evaluations).
+     */
+    public void forgetCallbackResults() {
+        callbackResults = null;
+    }
+
+    boolean hasCallbackResult(String name) {
+        return callbackResults != null && callbackResults.containsKey(name);
+    }
+
+    @Nullable
+    Object getCallbackResult(String name) {
+        return callbackResults != null ? callbackResults.get(name) : null;
+    }
+
+    void putCallbackResult(String name, @Nullable Object result) {
+        if (callbackResults == null) {
+            callbackResults = new HashMap<>();
+        }
+        callbackResults.put(name, result);
+    }
+
+    /**
+     * Whether results for this context may be shared with other contexts of the same player, team and entity.
+     * Not when it carries player input, which callbacks can read.
+     */
+    boolean canShareResults() {
+        return player != null && inputValues.isEmpty();
+    }
+
+    @Nullable
+    String entityId() {
+        return entityContext != null ? entityContext.getId() : null;
+    }
+
     // Java code compatibility (for TemplateEngine, ConditionEvaluator)
     public ServerPlayer player() { return player; }
     @Nullable public TeamData team() { return teamData; }
@@ -0,0 +1,151 @@
+package com.yardenzamir.simchat.condition;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.yardenzamir.simchat.SimChatMod;
+import com.yardenzamir.simchat.config.ServerConfig;
+
+/**
+ * Call counts, error counts and latency histograms for KubeJS callbacks (by name) and for template
+ * and condition resolvers (by prefix), shown by /simchat callback profile.
+ * Recording costs two clock reads and a few uncontended atomic adds, so it is always on.
+ * Resolver timings include the callbacks a resolver calls.
+ */
+public final class CallbackProfiler {
+    public static final CallbackProfiler CALLBACKS = new CallbackProfiler("KubeJS callback");
+    public static final CallbackProfiler TEMPLATES = new CallbackProfiler("Template resolver");
+    public static final CallbackProfiler CONDITIONS = new CallbackProfiler("Condition resolver");
+
+    // Bucket i counts calls under 2^i microseconds; the last one also counts everything slower
+    private static final int BUCKETS = 20;
+    // Slow-call warnings for one name are logged at most this often
+    private static final long WARNING_INTERVAL_NANOS = 10_000_000_000L;
+
+    private final String kind;
+    private final Map<String, Timing> timings = new ConcurrentHashMap<>();
+
+    private CallbackProfiler(String kind) {
+        this.kind = kind;
+    }
+
+    /**
+     * @param name Callback name or resolver prefix
+     * @param calls Number of calls
+     * @param errors Calls that threw
+     * @param totalNanos Time spent in all calls
+     * @param p50Nanos Median latency, as the upper bound of its histogram bucket
+     * @param p99Nanos 99th percentile latency, as the upper bound of its histogram bucket
+     * @param maxNanos Slowest call
+     */
+    public record Entry(String name, long calls, long errors, long totalNanos,
+                        long p50Nanos, long p99Nanos, long maxNanos) {
+        public long meanNanos() {
+            return calls == 0 ? 0 : totalNanos / calls;
+        }
+    }
+
+    private static final class Timing {
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        final AtomicLong lastWarning = new AtomicLong(System.nanoTime() - WARNING_INTERVAL_NANOS);
+    }
+
+    /**
+     * Start time to pass to {@link #record}.
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a call that began at the given {@link #start()} time, warning if it was slow.
+     */
+    public void record(String name, long startNanos, boolean error) {
+        long now = System.nanoTime();
+        long nanos = now - startNanos;
+        Timing timing = timings.computeIfAbsent(name, key -> new Timing());
+        if (error) {
+            timing.errors.increment();
+        }
+        timing.totalNanos.add(nanos);
+        timing.maxNanos.accumulate(nanos);
+        timing.buckets.incrementAndGet(bucket(nanos));
+
+        int warnMillis = ServerConfig.SLOW_CALL_WARNING_MS.get();
+        if (warnMillis > 0 && nanos >= warnMillis * 1_000_000L) {
+            long last = timing.lastWarning.get();
+            if (now - last >= WARNING_INTERVAL_NANOS && timing.lastWarning.compareAndSet(last, now)) {
+                SimChatMod.LOGGER.warn("Slow {} '{}' took {} ms (warning threshold {} ms)",
+                        kind, name, String.format("%.1f", nanos / 1_000_000.0), warnMillis);
+            }
+        }
+    }
+
+    private static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        return micros == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * What is being timed, e.g. "KubeJS callback".
+     */
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * Timings recorded since the last reset, by total time spent, highest first.
+     */
+    public List<Entry> snapshot() {
+        List<Entry> entries = new ArrayList<>(timings.size());
+        for (Map.Entry<String, Timing> entry : timings.entrySet()) {
+            Timing timing = entry.getValue();
+            long[] counts = new long[BUCKETS];
+            long calls = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = timing.buckets.get(i);
+                calls += counts[i];
+            }
+            long max = timing.maxNanos.get();
+            entries.add(new Entry(entry.getKey(), calls, timing.errors.sum(), timing.totalNanos.sum(),
+                    percentile(counts, calls, 0.50, max), percentile(counts, calls, 0.99, max), max));
+        }
+        entries.sort(Comparator.comparingLong(Entry::totalNanos).reversed());
+        return entries;
+    }
+
+    private static long percentile(long[] counts, long calls, double fraction, long max) {
+        long rank = (long) Math.ceil(calls * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min((1L << i) * 1000, max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        timings.clear();
+    }
+
+    /**
+     * Resets all profilers.
+     */
+    public static void resetAll() {
+        CALLBACKS.reset();
+        TEMPLATES.reset();
+        CONDITIONS.reset();
+    }
+}
@@ -1,17 +1,34 @@
 package com.yardenzamir.simchat.condition;
 
 import com.yardenzamir.simchat.SimChatMod;
+import com.yardenzamir.simchat.team.TeamData;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Registry for SimChat callbacks registered via KubeJS.
  * Thread-safe for concurrent access during condition evaluation.
+ *
+ * <p>Each result is remembered by the CallbackContext it was computed for, so conditions and
+ * templates evaluated together (a dialogue's actions, a batch of template requests) call each
+ * callback once. Callbacks registered with cacheTicks also share results across contexts of the
+ * same player, team and entity for that many server ticks.
  */
 public final class CallbackRegistry {
-    private static final Map<String, SimChatCallback> callbacks = new ConcurrentHashMap<>();
+    private static final Map<String, Registration> callbacks = new ConcurrentHashMap<>();
+
+    // Results of callbacks registered with cacheTicks
+    private static final int SHARED_PRUNE_THRESHOLD = 1024;
+    private static final Map<SharedKey, SharedResult> sharedResults = new ConcurrentHashMap<>();
+
+    private record Registration(SimChatCallback callback, int cacheTicks) {}
+
+    private record SharedKey(String name, UUID playerId, @Nullable String teamId, @Nullable String entityId) {}
+
+    private record SharedResult(@Nullable Object value, long expiresAtTick) {}
 
     private CallbackRegistry() {}
 
@@ -20,8 +37,19 @@ public final class CallbackRegistry {
      * Overwrites any existing callback with the same name.
      */
     public static void register(String name, SimChatCallback callback) {
-        callbacks.put(name, callback);
-        SimChatMod.LOGGER.debug("Registered SimChat callback: {}", name);
+        register(name, callback, 0);
+    }
+
+    /**
+     * Registers a callback whose results are shared across evaluations for a number of server ticks.
+     * Overwrites any existing callback with the same name.
+     *
+     * @param cacheTicks How long a result stays valid; 1 shares it within the current tick, 0 disables sharing
+     */
+    public static void register(String name, SimChatCallback callback, int cacheTicks) {
+        callbacks.put(name, new Registration(callback, Math.max(0, cacheTicks)));
+        forgetShared(name);
+        SimChatMod.LOGGER.debug("Registered SimChat callback: {} (cacheTicks={})", name, cacheTicks);
     }
 
     /**
@@ -29,6 +57,7 @@ public final class CallbackRegistry {
      */
     public static void unregister(String name) {
         callbacks.remove(name);
+        forgetShared(name);
     }
 
     /**
@@ -36,9 +65,14 @@ public final class CallbackRegistry {
      */
     public static void clear() {
         callbacks.clear();
+        sharedResults.clear();
         SimChatMod.LOGGER.debug("Cleared all SimChat callbacks");
     }
 
+    private static void forgetShared(String name) {
+        sharedResults.keySet().removeIf(key -> key.name().equals(name));
+    }
+
     /**
      * Checks if a callback is registered.
      */
@@ -48,21 +82,56 @@ public final class CallbackRegistry {
 
     /**
      * Evaluates a callback and returns the raw result.
+     * Repeated calls with the same context return the first result without calling the callback again.
      *
      * @return The callback result, or null if not found or error occurs
      */
     @Nullable
     public static Object evaluate(String name, CallbackContext ctx) {
-        SimChatCallback callback = callbacks.get(name);
-        if (callback == null) {
+        if (ctx.hasCallbackResult(name)) {
+            return ctx.getCallbackResult(name);
+        }
+        Registration registration = callbacks.get(name);
+        Object result;
+        if (registration == null) {
             SimChatMod.LOGGER.warn("KubeJS callback '{}' not found. Registered callbacks: {}", name, callbacks.keySet());
-            return null;
+            result = null;
+        } else if (registration.cacheTicks() > 0 && ctx.canShareResults()) {
+            result = evaluateShared(name, registration, ctx);
+        } else {
+            result = call(name, registration.callback(), ctx);
         }
+        ctx.putCallbackResult(name, result);
+        return result;
+    }
+
+    @Nullable
+    private static Object evaluateShared(String name, Registration registration, CallbackContext ctx) {
+        long tick = ctx.player().server.getTickCount();
+        TeamData team = ctx.team();
+        SharedKey key = new SharedKey(name, ctx.player().getUUID(), team != null ? team.getId() : null, ctx.entityId());
+        SharedResult shared = sharedResults.get(key);
+        if (shared != null && tick < shared.expiresAtTick()) {
+            return shared.value();
+        }
+        Object result = call(name, registration.callback(), ctx);
+        if (sharedResults.size() >= SHARED_PRUNE_THRESHOLD) {
+            sharedResults.values().removeIf(entry -> tick >= entry.expiresAtTick());
+        }
+        sharedResults.put(key, new SharedResult(result, tick + registration.cacheTicks()));
+        return result;
+    }
+
+    @Nullable
+    private static Object call(String name, SimChatCallback callback, CallbackContext ctx) {
+        long start = CallbackProfiler.start();
         try {
             Object result = callback.call(ctx);
+            CallbackProfiler.CALLBACKS.record(name, start, false);
             SimChatMod.LOGGER.debug("KubeJS callback '{}' returned: {}", name, result);
             return result;
         } catch (Exception e) {
+            CallbackProfiler.CALLBACKS.record(name, start, true);
             SimChatMod.LOGGER.error("Error evaluating KubeJS callback '{}': {}", name, e.getMessage(), e);
             return null;
         }
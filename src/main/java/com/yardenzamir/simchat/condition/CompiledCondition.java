@@ -0,0 +1,309 @@
+package com.yardenzamir.simchat.condition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.yardenzamir.simchat.SimChatMod;
+
+/**
+ * A condition parsed once into a tree that evaluates left to right and short-circuits.
+ * Built by {@link ConditionEvaluator#compile}; see there for the syntax.
+ *
+ * <p>Like before, a condition that fails to evaluate (unknown prefix, callback error) passes,
+ * so a broken condition shows its action rather than hiding it.
+ */
+public final class CompiledCondition {
+    // Characters that make a condition an expression rather than a single check
+    private static final String OPERATOR_CHARS = "&|()<>=!";
+
+    static final CompiledCondition ALWAYS = new CompiledCondition("", ctx -> true);
+
+    private final String source;
+    private final Node root;
+
+    private CompiledCondition(String source, Node root) {
+        this.source = source;
+        this.root = root;
+    }
+
+    public boolean test(CallbackContext ctx) {
+        try {
+            return root.test(ctx);
+        } catch (Exception e) {
+            SimChatMod.LOGGER.error("Error evaluating condition '{}': {}", source, e.getMessage());
+            return true; // Error = show by default
+        }
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the condition isn't valid syntax
+     */
+    static CompiledCondition parse(String condition) {
+        String expr = condition.trim();
+        boolean negate = expr.startsWith("!");
+        String single = negate ? expr.substring(1).trim() : expr;
+        if (!containsOperator(single)) {
+            // The original syntax, kept exact: names may hold any other characters, even spaces
+            int colonIndex = single.indexOf(':');
+            if (colonIndex == -1) {
+                throw new IllegalArgumentException("missing prefix");
+            }
+            if (colonIndex == single.length() - 1) {
+                throw new IllegalArgumentException("empty name");
+            }
+            return new CompiledCondition(condition, new Check(single.substring(0, colonIndex),
+                    single.substring(colonIndex + 1), negate));
+        }
+        return new CompiledCondition(condition, new Parser(expr).parseAll());
+    }
+
+    private static boolean containsOperator(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (OPERATOR_CHARS.indexOf(text.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // === Tree ===
+
+    private interface Node {
+        boolean test(CallbackContext ctx);
+    }
+
+    private record Check(String prefix, String name, boolean negate) implements Node {
+        @Override
+        public boolean test(CallbackContext ctx) {
+            ConditionResolver resolver = ConditionEvaluator.getResolver(prefix);
+            if (resolver == null) {
+                throw new IllegalStateException("Unknown condition prefix: " + prefix);
+            }
+            long start = CallbackProfiler.start();
+            boolean result;
+            try {
+                result = resolver.evaluate(name, ctx);
+            } catch (RuntimeException e) {
+                CallbackProfiler.CONDITIONS.record(prefix, start, true);
+                throw e;
+            }
+            CallbackProfiler.CONDITIONS.record(prefix, start, false);
+            return negate != result; // XOR: negate flips the result
+        }
+    }
+
+    private record Compare(String prefix, String name, Operator operator, double operand) implements Node {
+        @Override
+        public boolean test(CallbackContext ctx) {
+            ConditionValueResolver resolver = ConditionEvaluator.getValueResolver(prefix);
+            if (resolver == null) {
+                throw new IllegalStateException("Condition prefix has no values to compare: " + prefix);
+            }
+            long start = CallbackProfiler.start();
+            double value;
+            try {
+                value = resolver.value(name, ctx);
+            } catch (RuntimeException e) {
+                CallbackProfiler.CONDITIONS.record(prefix, start, true);
+                throw e;
+            }
+            CallbackProfiler.CONDITIONS.record(prefix, start, false);
+            return !Double.isNaN(value) && operator.test(value, operand);
+        }
+    }
+
+    private record Not(Node node) implements Node {
+        @Override
+        public boolean test(CallbackContext ctx) {
+            return !node.test(ctx);
+        }
+    }
+
+    private record And(Node[] nodes) implements Node {
+        @Override
+        public boolean test(CallbackContext ctx) {
+            for (Node node : nodes) {
+                if (!node.test(ctx)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private record Or(Node[] nodes) implements Node {
+        @Override
+        public boolean test(CallbackContext ctx) {
+            for (Node node : nodes) {
+                if (node.test(ctx)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private enum Operator {
+        GREATER_OR_EQUAL(">="),
+        LESS_OR_EQUAL("<="),
+        EQUAL("=="),
+        NOT_EQUAL("!="),
+        GREATER(">"),
+        LESS("<");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        boolean test(double value, double operand) {
+            return switch (this) {
+                case GREATER_OR_EQUAL -> value >= operand;
+                case LESS_OR_EQUAL -> value <= operand;
+                case EQUAL -> value == operand;
+                case NOT_EQUAL -> value != operand;
+                case GREATER -> value > operand;
+                case LESS -> value < operand;
+            };
+        }
+    }
+
+    // === Parser ===
+
+    /**
+     * Recursive descent over:
+     * <pre>
+     * or      := and ("||" and)*
+     * and     := unary ("&amp;&amp;" unary)*
+     * unary   := "!" unary | "(" or ")" | prefix:name [operator number]
+     * </pre>
+     */
+    private static final class Parser {
+        private final String text;
+        private int pos = 0;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Node parseAll() {
+            Node node = parseOr();
+            skipSpaces();
+            if (pos < text.length()) {
+                throw error("unexpected '" + text.charAt(pos) + "'");
+            }
+            return node;
+        }
+
+        private Node parseOr() {
+            List<Node> nodes = new ArrayList<>();
+            nodes.add(parseAnd());
+            while (accept("||")) {
+                nodes.add(parseAnd());
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Or(nodes.toArray(new Node[0]));
+        }
+
+        private Node parseAnd() {
+            List<Node> nodes = new ArrayList<>();
+            nodes.add(parseUnary());
+            while (accept("&&")) {
+                nodes.add(parseUnary());
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new And(nodes.toArray(new Node[0]));
+        }
+
+        private Node parseUnary() {
+            skipSpaces();
+            if (!text.startsWith("!=", pos) && accept("!")) {
+                Node node = parseUnary();
+                return node instanceof Check check
+                        ? new Check(check.prefix(), check.name(), !check.negate())
+                        : new Not(node);
+            }
+            if (accept("(")) {
+                Node node = parseOr();
+                if (!accept(")")) {
+                    throw error("missing ')'");
+                }
+                return node;
+            }
+            return parseComparison();
+        }
+
+        private Node parseComparison() {
+            int start = pos;
+            while (pos < text.length() && isPrefixChar(text.charAt(pos), pos == start)) {
+                pos++;
+            }
+            if (pos == start || pos >= text.length() || text.charAt(pos) != ':') {
+                throw error("expected prefix:name");
+            }
+            String prefix = text.substring(start, pos);
+            pos++;
+            int nameStart = pos;
+            while (pos < text.length() && !Character.isWhitespace(text.charAt(pos))
+                    && OPERATOR_CHARS.indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            if (pos == nameStart) {
+                throw error("empty name");
+            }
+            String name = text.substring(nameStart, pos);
+
+            skipSpaces();
+            for (Operator operator : Operator.values()) {
+                if (text.startsWith(operator.symbol, pos)) {
+                    pos += operator.symbol.length();
+                    return new Compare(prefix, name, operator, parseNumber());
+                }
+            }
+            return new Check(prefix, name, false);
+        }
+
+        private double parseNumber() {
+            skipSpaces();
+            int start = pos;
+            if (pos < text.length() && (text.charAt(pos) == '-' || text.charAt(pos) == '+')) {
+                pos++;
+            }
+            while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+                pos++;
+            }
+            try {
+                return Double.parseDouble(text.substring(start, pos));
+            } catch (NumberFormatException e) {
+                pos = start;
+                throw error("expected a number");
+            }
+        }
+
+        private static boolean isPrefixChar(char c, boolean first) {
+            return c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (!first && c >= '0' && c <= '9');
+        }
+
+        private boolean accept(String token) {
+            skipSpaces();
+            if (text.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.yardenzamir.simchat.condition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A template string split once into literal text and {prefix:name} placeholders, so resolving it
+ * is a single pass appending literals and values. {compile:prefix:name} and {runtime:prefix:name}
+ * are unwrapped here rather than on every resolution.
+ */
+public final class CompiledTemplate {
+    // Matches {prefix:name} patterns
+    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{([a-zA-Z_][a-zA-Z0-9_]*):([^}]+)}");
+
+    /**
+     * @param text the placeholder as written
+     * @param prefix prefix as written, e.g. "runtime" for {runtime:kjs:gold}
+     * @param name name as written, e.g. "kjs:gold"
+     * @param resolverPrefix prefix with compile/runtime unwrapped, e.g. "kjs"
+     * @param resolverName name with compile/runtime unwrapped, e.g. "gold"
+     * @param runtime whether it is a {runtime:...} placeholder
+     * @param unresolved what is left in its place when it isn't resolved
+     * @param error why a compile/runtime placeholder is malformed, or null
+     */
+    public record Placeholder(String text, String prefix, String name,
+                              String resolverPrefix, String resolverName, boolean runtime,
+                              String unresolved, @Nullable String error) {
+        public boolean isWrapped() {
+            return "compile".equals(prefix) || "runtime".equals(prefix);
+        }
+    }
+
+    private final String[] literals; // Text before each placeholder, then the text after the last one
+    private final Placeholder[] placeholders;
+
+    private CompiledTemplate(String[] literals, Placeholder[] placeholders) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+    }
+
+    public static CompiledTemplate parse(String template) {
+        List<String> literals = new ArrayList<>();
+        List<Placeholder> placeholders = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER_PATTERN.matcher(template);
+        int lastEnd = 0;
+        while (matcher.find()) {
+            literals.add(template.substring(lastEnd, matcher.start()));
+            placeholders.add(parsePlaceholder(matcher.group(0), matcher.group(1), matcher.group(2)));
+            lastEnd = matcher.end();
+        }
+        literals.add(template.substring(lastEnd));
+        return new CompiledTemplate(literals.toArray(new String[0]), placeholders.toArray(new Placeholder[0]));
+    }
+
+    private static Placeholder parsePlaceholder(String text, String prefix, String name) {
+        if (!"compile".equals(prefix) && !"runtime".equals(prefix)) {
+            return new Placeholder(text, prefix, name, prefix, name, false, text, null);
+        }
+        int split = name.indexOf(':');
+        if (split <= 0 || split >= name.length() - 1) {
+            return new Placeholder(text, prefix, name, prefix, name, false, text,
+                    "Invalid " + prefix + " placeholder: " + text);
+        }
+        String resolverPrefix = name.substring(0, split);
+        String resolverName = name.substring(split + 1);
+        return new Placeholder(text, prefix, name, resolverPrefix, resolverName, "runtime".equals(prefix),
+                "{" + resolverPrefix + ":" + resolverName + "}", null);
+    }
+
+    public int placeholderCount() {
+        return placeholders.length;
+    }
+
+    public Placeholder placeholder(int index) {
+        return placeholders[index];
+    }
+
+    /**
+     * Text before the placeholder at the index; the index equal to placeholderCount() gives the text after the last one.
+     */
+    public String literal(int index) {
+        return literals[index];
+    }
+}
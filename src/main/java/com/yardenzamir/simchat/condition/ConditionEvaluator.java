@@ -1,6 +1,7 @@
 package com.yardenzamir.simchat.condition;
 
 import com.yardenzamir.simchat.SimChatMod;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -15,10 +16,14 @@ import java.util.Map;
  *   <li>{@code !kjs:name} - Falsy check (negated)</li>
  *   <li>{@code flag:name} - Check if team flag exists and is truthy</li>
  *   <li>{@code !flag:name} - Check if team flag is missing or falsy</li>
+ *   <li>{@code data:gold >= 100} - Numeric comparison ({@code > >= < <= == !=}) via a value resolver</li>
+ *   <li>{@code a && (b || !c)} - Combined checks; {@code &&} binds tighter than {@code ||}</li>
  * </ul>
+ * Conditions are compiled once (datapack dialogues at load) and evaluated without re-parsing.
  */
 public final class ConditionEvaluator {
     private static final Map<String, ConditionResolver> resolvers = new HashMap<>();
+    private static final Map<String, ConditionValueResolver> valueResolvers = new HashMap<>();
 
     private ConditionEvaluator() {}
 
@@ -41,57 +46,62 @@ public final class ConditionEvaluator {
     }
 
     /**
-     * Evaluates a condition string.
+     * Registers a numeric value source for comparisons with a given prefix.
      *
-     * @param condition The condition string (e.g., "kjs:hasHighRep", "!flag:seen_intro")
-     * @param ctx The callback context
-     * @return true if condition passes, false otherwise
+     * @param prefix The prefix (e.g., "data" for data:gold >= 100)
+     * @param resolver The resolver implementation
      */
-    public static boolean evaluate(String condition, CallbackContext ctx) {
-        if (condition == null || condition.isEmpty()) {
-            return true; // No condition = always show
-        }
-
-        // Handle negation
-        boolean negate = false;
-        String expr = condition.trim();
-        if (expr.startsWith("!")) {
-            negate = true;
-            expr = expr.substring(1).trim();
-        }
+    public static void registerValueResolver(String prefix, ConditionValueResolver resolver) {
+        valueResolvers.put(prefix, resolver);
+        SimChatMod.LOGGER.debug("Registered condition value resolver for prefix: {}", prefix);
+    }
 
-        // Parse prefix:name
-        int colonIndex = expr.indexOf(':');
-        if (colonIndex == -1) {
-            SimChatMod.LOGGER.warn("Invalid condition syntax (missing prefix): {}", condition);
-            return true; // Invalid syntax = show by default
-        }
+    /**
+     * Removes a value resolver by prefix.
+     */
+    public static void unregisterValueResolver(String prefix) {
+        valueResolvers.remove(prefix);
+    }
 
-        String prefix = expr.substring(0, colonIndex);
-        String name = expr.substring(colonIndex + 1);
+    @Nullable
+    static ConditionResolver getResolver(String prefix) {
+        return resolvers.get(prefix);
+    }
 
-        if (name.isEmpty()) {
-            SimChatMod.LOGGER.warn("Invalid condition syntax (empty name): {}", condition);
-            return true;
-        }
+    @Nullable
+    static ConditionValueResolver getValueResolver(String prefix) {
+        return valueResolvers.get(prefix);
+    }
 
-        // Find resolver
-        ConditionResolver resolver = resolvers.get(prefix);
-        if (resolver == null) {
-            SimChatMod.LOGGER.warn("Unknown condition prefix: {}", prefix);
-            return true; // Unknown prefix = show by default
+    /**
+     * Compiles a condition string for repeated evaluation.
+     * Invalid syntax is logged here and compiles to a condition that always passes.
+     *
+     * @param condition The condition string (e.g., "data:gold >= 100 && !kjs:banned")
+     */
+    public static CompiledCondition compile(@Nullable String condition) {
+        if (condition == null || condition.isEmpty()) {
+            return CompiledCondition.ALWAYS; // No condition = always show
         }
-
-        // Evaluate
         try {
-            boolean result = resolver.evaluate(name, ctx);
-            return negate != result; // XOR: negate flips the result
-        } catch (Exception e) {
-            SimChatMod.LOGGER.error("Error evaluating condition '{}': {}", condition, e.getMessage());
-            return true; // Error = show by default
+            return CompiledCondition.parse(condition);
+        } catch (IllegalArgumentException e) {
+            SimChatMod.LOGGER.warn("Invalid condition syntax ({}): {}", e.getMessage(), condition);
+            return CompiledCondition.ALWAYS; // Invalid syntax = show by default
         }
     }
 
+    /**
+     * Evaluates a condition string, parsing it on every call; prefer {@link #compile} for repeated use.
+     *
+     * @param condition The condition string (e.g., "kjs:hasHighRep", "!flag:seen_intro")
+     * @param ctx The callback context
+     * @return true if condition passes, false otherwise
+     */
+    public static boolean evaluate(String condition, CallbackContext ctx) {
+        return compile(condition).test(ctx);
+    }
+
     /**
      * Checks if a condition string has valid syntax.
      */
@@ -99,12 +109,12 @@ public final class ConditionEvaluator {
         if (condition == null || condition.isEmpty()) {
             return true;
         }
-        String expr = condition.trim();
-        if (expr.startsWith("!")) {
-            expr = expr.substring(1).trim();
+        try {
+            CompiledCondition.parse(condition);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
         }
-        int colonIndex = expr.indexOf(':');
-        return colonIndex > 0 && colonIndex < expr.length() - 1;
     }
 
     // Static initializer to register built-in resolvers
@@ -139,5 +149,41 @@ public final class ConditionEvaluator {
                 return false;
             }
         });
+
+        // Numeric values for comparisons
+        registerValueResolver("kjs", (name, ctx) -> toNumber(CallbackRegistry.evaluate(name, ctx)));
+
+        // Missing team data counts as 0, like counters incremented with addData
+        registerValueResolver("data", (name, ctx) -> {
+            if (ctx.team() == null) return Double.NaN;
+            Object value = ctx.team().getData(name);
+            return value != null ? toNumber(value) : 0;
+        });
+
+        registerValueResolver("score", (name, ctx) -> {
+            if (ctx.player() == null) return Double.NaN;
+            var scoreboard = ctx.player().getScoreboard();
+            var objective = scoreboard.getObjective(name);
+            if (objective == null) return Double.NaN;
+            String playerName = ctx.player().getScoreboardName();
+            return scoreboard.getOrCreatePlayerScore(playerName, objective).getScore();
+        });
+    }
+
+    private static double toNumber(@Nullable Object value) {
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        if (value instanceof Boolean bool) {
+            return bool ? 1 : 0;
+        }
+        if (value instanceof String string) {
+            try {
+                return Double.parseDouble(string.trim());
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        return Double.NaN;
     }
 }
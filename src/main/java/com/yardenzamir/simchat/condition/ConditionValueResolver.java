@@ -0,0 +1,16 @@
+package com.yardenzamir.simchat.condition;
+
+/**
+ * Interface for reading numeric values with a specific prefix, for comparisons like {@code data:gold >= 100}.
+ */
+@FunctionalInterface
+public interface ConditionValueResolver {
+    /**
+     * Reads a value by name within this resolver's domain.
+     *
+     * @param name The name after the prefix (e.g., "gold" from "data:gold")
+     * @param ctx  The callback context
+     * @return The value, or NaN if there is none (every comparison with it fails)
+     */
+    double value(String name, CallbackContext ctx);
+}
@@ -2,7 +2,8 @@ package com.yardenzamir.simchat.condition;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Matcher;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.jetbrains.annotations.Nullable;
@@ -21,8 +22,18 @@ public final class TemplateEngine {
     // Matches {prefix:name} patterns
     private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{([a-zA-Z_][a-zA-Z0-9_]*):([^}]+)}");
 
+    // Prefixes ClientTemplateEngine resolves on its own
+    private static final Set<String> CLIENT_PREFIXES = Set.of("team", "data", "world");
+
     private static final Map<String, TemplateResolver> resolvers = new HashMap<>();
 
+    // Parsed templates by text, with their resolvers looked up; dropped on datapack reload and resolver changes
+    private static final int MAX_CACHED_TEMPLATES = 4096;
+    private static final Map<String, ParsedTemplate> parsedTemplates = new ConcurrentHashMap<>();
+
+    // resolvers[i] serves placeholder i after unwrapping compile/runtime, or is null if its prefix is unknown
+    private record ParsedTemplate(CompiledTemplate template, @Nullable TemplateResolver[] resolvers) {}
+
     private TemplateEngine() {}
 
     /**
@@ -44,6 +55,7 @@ public final class TemplateEngine {
      */
     public static void registerResolver(String prefix, TemplateResolver resolver) {
         resolvers.put(prefix, resolver);
+        parsedTemplates.clear();
         SimChatMod.LOGGER.debug("Registered template resolver for prefix: {}", prefix);
     }
 
@@ -52,6 +64,14 @@ public final class TemplateEngine {
      */
     public static void unregisterResolver(String prefix) {
         resolvers.remove(prefix);
+        parsedTemplates.clear();
+    }
+
+    /**
+     * Drops parsed templates, e.g. when datapacks reload and the templates in use change.
+     */
+    public static void clearCache() {
+        parsedTemplates.clear();
     }
 
     /**
@@ -67,23 +87,19 @@ public final class TemplateEngine {
             return template;
         }
 
-        Matcher matcher = PLACEHOLDER_PATTERN.matcher(template);
-        StringBuilder result = new StringBuilder();
-
-        while (matcher.find()) {
-            String prefix = matcher.group(1);
-            String name = matcher.group(2);
-
-            String replacement = resolve(prefix, name, ctx);
+        ParsedTemplate parsed = parse(template);
+        CompiledTemplate compiled = parsed.template();
+        StringBuilder result = new StringBuilder(template.length());
+        for (int i = 0; i < compiled.placeholderCount(); i++) {
+            result.append(compiled.literal(i));
+            CompiledTemplate.Placeholder placeholder = compiled.placeholder(i);
+            // Plain processing doesn't unwrap compile/runtime, which no resolver serves
+            TemplateResolver resolver = placeholder.isWrapped() ? null : parsed.resolvers()[i];
+            String replacement = resolve(resolver, placeholder.prefix(), placeholder.name(), ctx);
             // If resolution failed, keep original placeholder
-            if (replacement == null) {
-                replacement = matcher.group(0);
-            }
-
-            // Escape replacement string for appendReplacement
-            matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
+            result.append(replacement != null ? replacement : placeholder.text());
         }
-        matcher.appendTail(result);
+        result.append(compiled.literal(compiled.placeholderCount()));
 
         return result.toString();
     }
@@ -107,51 +123,31 @@ public final class TemplateEngine {
             return new TemplateCompilation(template, null);
         }
 
-        Matcher matcher = PLACEHOLDER_PATTERN.matcher(template);
-        StringBuilder compiled = new StringBuilder();
-        StringBuilder runtime = new StringBuilder();
+        ParsedTemplate parsed = parse(template);
+        CompiledTemplate compiled = parsed.template();
+        StringBuilder text = new StringBuilder(template.length());
         boolean hasRuntime = false;
-        int lastEnd = 0;
-
-        while (matcher.find()) {
-            compiled.append(template, lastEnd, matcher.start());
-            runtime.append(template, lastEnd, matcher.start());
-
-            String prefix = matcher.group(1);
-            String name = matcher.group(2);
-            boolean runtimePlaceholder = false;
-
-            if ("compile".equals(prefix) || "runtime".equals(prefix)) {
-                int split = name.indexOf(':');
-                if (split <= 0 || split >= name.length() - 1) {
-                    throw new IllegalArgumentException("Invalid " + prefix + " placeholder: " + matcher.group(0));
-                }
-                runtimePlaceholder = "runtime".equals(prefix);
-                prefix = name.substring(0, split);
-                name = name.substring(split + 1);
+        for (int i = 0; i < compiled.placeholderCount(); i++) {
+            text.append(compiled.literal(i));
+            CompiledTemplate.Placeholder placeholder = compiled.placeholder(i);
+            if (placeholder.error() != null) {
+                throw new IllegalArgumentException(placeholder.error());
             }
 
-            if (runtimePlaceholder && !resolveRuntime) {
-                String placeholder = "{" + prefix + ":" + name + "}";
-                compiled.append(placeholder);
-                runtime.append(placeholder);
+            if (placeholder.runtime() && !resolveRuntime) {
+                text.append(placeholder.unresolved());
                 hasRuntime = true;
             } else {
-                String replacement = resolve(prefix, name, ctx);
-                if (replacement == null) {
-                    replacement = "{" + prefix + ":" + name + "}";
-                }
-                compiled.append(replacement);
-                runtime.append(replacement);
+                String replacement = resolve(parsed.resolvers()[i], placeholder.resolverPrefix(),
+                        placeholder.resolverName(), ctx);
+                text.append(replacement != null ? replacement : placeholder.unresolved());
             }
-
-            lastEnd = matcher.end();
         }
+        text.append(compiled.literal(compiled.placeholderCount()));
 
-        compiled.append(template, lastEnd, template.length());
-        runtime.append(template, lastEnd, template.length());
-
-        TemplateCompilation result = new TemplateCompilation(compiled.toString(), hasRuntime ? runtime.toString() : null);
+        // The runtime template is the compiled text whenever runtime placeholders remain in it
+        String compiledText = text.toString();
+        TemplateCompilation result = new TemplateCompilation(compiledText, hasRuntime ? compiledText : null);
         if (ServerConfig.DEBUG.get()) {
             SimChatMod.LOGGER.info("[TemplateEngine] compile '{}' -> compiled='{}', runtime='{}'", 
                     template, result.compiledText(), result.runtimeTemplate());
@@ -159,24 +155,47 @@ public final class TemplateEngine {
         return result;
     }
 
+    private static ParsedTemplate parse(String template) {
+        ParsedTemplate parsed = parsedTemplates.get(template);
+        if (parsed != null) {
+            return parsed;
+        }
+        CompiledTemplate compiled = CompiledTemplate.parse(template);
+        TemplateResolver[] bound = new TemplateResolver[compiled.placeholderCount()];
+        for (int i = 0; i < bound.length; i++) {
+            bound[i] = resolvers.get(compiled.placeholder(i).resolverPrefix());
+        }
+        parsed = new ParsedTemplate(compiled, bound);
+        if (parsedTemplates.size() >= MAX_CACHED_TEMPLATES) {
+            // Templates built from arbitrary text (commands, chat) would otherwise pile up
+            parsedTemplates.clear();
+        }
+        parsedTemplates.put(template, parsed);
+        return parsed;
+    }
+
     /**
      * Resolves a single placeholder value.
      *
+     * @param resolver The resolver for the prefix, or null if none is registered
      * @param prefix The prefix (resolver type)
      * @param name The name within that prefix
      * @param ctx The callback context
      * @return Resolved value or null if not found
      */
-    private static String resolve(String prefix, String name, CallbackContext ctx) {
-        TemplateResolver resolver = resolvers.get(prefix);
+    private static String resolve(@Nullable TemplateResolver resolver, String prefix, String name, CallbackContext ctx) {
         if (resolver == null) {
             SimChatMod.LOGGER.warn("Unknown template prefix: {}", prefix);
             return null;
         }
 
+        long start = CallbackProfiler.start();
         try {
-            return resolver.resolve(name, ctx);
+            String value = resolver.resolve(name, ctx);
+            CallbackProfiler.TEMPLATES.record(prefix, start, false);
+            return value;
         } catch (Exception e) {
+            CallbackProfiler.TEMPLATES.record(prefix, start, true);
             SimChatMod.LOGGER.error("Error resolving template {{{}: {}}}: {}", prefix, name, e.getMessage());
             return null;
         }
@@ -189,6 +208,22 @@ public final class TemplateEngine {
         return text != null && PLACEHOLDER_PATTERN.matcher(text).find();
     }
 
+    /**
+     * Checks if a template has placeholders the client can't resolve on its own.
+     */
+    public static boolean needsServerResolution(@Nullable String template) {
+        if (template == null || !template.contains("{")) {
+            return false;
+        }
+        CompiledTemplate compiled = parse(template).template();
+        for (int i = 0; i < compiled.placeholderCount(); i++) {
+            if (!CLIENT_PREFIXES.contains(compiled.placeholder(i).prefix())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     // Static initializer to register built-in resolvers
     static {
         // KubeJS callback resolver
@@ -80,9 +80,11 @@ public class ClientConfig {
     public static final ForgeConfigSpec.IntValue LAZY_LOAD_BATCH_SIZE;
     public static final ForgeConfigSpec.IntValue LAZY_LOAD_THRESHOLD;
     public static final ForgeConfigSpec.IntValue CLOSED_CACHE_SIZE;
+    public static final ForgeConfigSpec.IntValue MESSAGE_MEMORY_BUDGET_KB;
 
     // Templates
     public static final ForgeConfigSpec.IntValue TEMPLATE_REQUESTS_PER_TICK;
+    public static final ForgeConfigSpec.IntValue TEMPLATE_CACHE_SIZE;
 
     // Sort mode (0 = recent, 1 = alphabetical)
     public static final ForgeConfigSpec.IntValue SIDEBAR_SORT_MODE;
@@ -207,12 +209,19 @@ public class ClientConfig {
         CLOSED_CACHE_SIZE = builder
                 .comment("Messages to keep per conversation after closing chat")
                 .defineInRange("closedCacheSize", 400, 1, 5000);
+        MESSAGE_MEMORY_BUDGET_KB = builder
+                .comment("Estimated memory (KiB) for loaded messages and their resolved templates.",
+                        "Past this, the oldest messages of conversations not on screen are dropped and loaded again when needed")
+                .defineInRange("messageMemoryBudgetKb", 32768, 1024, 1048576);
         builder.pop();
 
         builder.comment("Template Settings").push("templates");
         TEMPLATE_REQUESTS_PER_TICK = builder
-                .comment("How many runtime template requests to send per client tick")
-                .defineInRange("requestsPerTick", 20, 1, 200);
+                .comment("How many runtime template fields to request per client tick (sent together in one packet)")
+                .defineInRange("requestsPerTick", 100, 1, 500);
+        TEMPLATE_CACHE_SIZE = builder
+                .comment("Messages whose resolved templates are kept; the least recently shown are resolved again when needed")
+                .defineInRange("cacheSize", 4096, 64, 65536);
         builder.pop();
 
         builder.comment("Team Settings").push("team");
@@ -25,9 +25,21 @@ public class ServerConfig {
     // History sync
     public static final ForgeConfigSpec.IntValue INITIAL_SYNC_MESSAGE_COUNT;
     public static final ForgeConfigSpec.IntValue MAX_LAZY_LOAD_BATCH_SIZE;
+    public static final ForgeConfigSpec.IntValue SYNC_CONVERSATIONS_PER_TICK;
+    public static final ForgeConfigSpec.BooleanValue PRE_RESOLVE_TEMPLATES;
+    public static final ForgeConfigSpec.IntValue PRE_RESOLVE_FIELDS_PER_TICK;
+
+    // Storage
+    public static final ForgeConfigSpec.IntValue WRITE_QUEUE_CAPACITY;
+    public static final ForgeConfigSpec.IntValue WRITE_OVERFLOW_CAPACITY;
+    public static final ForgeConfigSpec.IntValue WRITE_BATCH_SIZE;
+    public static final ForgeConfigSpec.IntValue TAIL_CACHE_MESSAGES;
+    public static final ForgeConfigSpec.IntValue TAIL_CACHE_MAX_MB;
+    public static final ForgeConfigSpec.IntValue READ_THREADS;
 
     // Debug
     public static final ForgeConfigSpec.BooleanValue DEBUG;
+    public static final ForgeConfigSpec.IntValue SLOW_CALL_WARNING_MS;
 
     static {
         ForgeConfigSpec.Builder builder = new ForgeConfigSpec.Builder();
@@ -62,12 +74,14 @@ public class ServerConfig {
         commandPermission(builder, "team.color", 4, "Permission to use /simchat team color");
         commandPermission(builder, "callback.list", 4, "Permission to use /simchat callback list");
         commandPermission(builder, "callback.run", 4, "Permission to use /simchat callback run");
+        commandPermission(builder, "callback.profile", 4, "Permission to use /simchat callback profile");
         commandPermission(builder, "callback.reload", 4, "Permission to use /simchat reload");
         commandPermission(builder, "data.get", 4, "Permission to use /simchat data get");
         commandPermission(builder, "data.set", 4, "Permission to use /simchat data set");
         commandPermission(builder, "data.add", 4, "Permission to use /simchat data add");
         commandPermission(builder, "data.remove", 4, "Permission to use /simchat data remove");
         commandPermission(builder, "data.list", 4, "Permission to use /simchat data list");
+        commandPermission(builder, "storage.stats", 4, "Permission to use /simchat storage stats");
         builder.pop();
 
         builder.comment("Team Join Settings").push("teamJoin");
@@ -91,12 +105,51 @@ public class ServerConfig {
         MAX_LAZY_LOAD_BATCH_SIZE = builder
                 .comment("Server-side cap for lazy load batch size")
                 .defineInRange("maxLazyLoadBatchSize", 100, 10, 2000);
+        SYNC_CONVERSATIONS_PER_TICK = builder
+                .comment("Conversations loaded and sent per player per tick while streaming a team sync",
+                        "Conversations sent in the same tick share one compressed packet")
+                .defineInRange("syncConversationsPerTick", 16, 1, 100);
+        PRE_RESOLVE_TEMPLATES = builder
+                .comment("Resolve server-only template placeholders (e.g. {kjs:...}) for each recipient before sending messages,",
+                        "so they render without asking the server")
+                .define("preResolveTemplates", true);
+        PRE_RESOLVE_FIELDS_PER_TICK = builder
+                .comment("Maximum template fields resolved ahead of sending per server tick; the rest are requested by clients as needed")
+                .defineInRange("preResolveFieldsPerTick", 200, 0, 10000);
+        builder.pop();
+
+        builder.comment("Storage Settings",
+                "Database writes are queued and committed in batches on a background thread.")
+                .push("storage");
+        WRITE_QUEUE_CAPACITY = builder
+                .comment("Maximum queued writes; more are held in an overflow list (with a logged warning) until the writer catches up")
+                .defineInRange("writeQueueCapacity", 8192, 64, 1000000);
+        WRITE_OVERFLOW_CAPACITY = builder
+                .comment("Maximum writes held in the overflow list once the queue is full. Writes past it fail and are logged:",
+                        "new messages are not saved (their reserved index is released) and team changes stay unsaved until the next save")
+                .defineInRange("writeOverflowCapacity", 65536, 0, 1000000);
+        WRITE_BATCH_SIZE = builder
+                .comment("Maximum writes committed together in one transaction")
+                .defineInRange("writeBatchSize", 256, 1, 10000);
+        TAIL_CACHE_MESSAGES = builder
+                .comment("Recent messages kept in memory per conversation to serve syncs without a query (0 disables)")
+                .defineInRange("tailCacheMessages", 64, 0, 5000);
+        TAIL_CACHE_MAX_MB = builder
+                .comment("Memory budget for the recent message cache in megabytes (estimated)")
+                .defineInRange("tailCacheMaxMb", 32, 1, 4096);
+        READ_THREADS = builder
+                .comment("Background threads (each with its own read-only connection) serving history requests off the server thread")
+                .defineInRange("readThreads", 2, 1, 16);
         builder.pop();
 
         builder.comment("Debug Settings").push("debug");
         DEBUG = builder
                 .comment("Enable verbose debug logging")
                 .define("enabled", false);
+        SLOW_CALL_WARNING_MS = builder
+                .comment("Log a warning when a KubeJS callback or template/condition resolver takes at least this many milliseconds (0 disables)",
+                        "Warnings for the same callback or prefix are logged at most every 10 seconds")
+                .defineInRange("slowCallWarningMs", 50, 0, 60000);
         builder.pop();
 
         SPEC = builder.build();
@@ -9,6 +9,7 @@ import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.StringTag;
 import net.minecraft.nbt.Tag;
+import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.util.GsonHelper;
 import net.minecraft.world.item.ItemStack;
 
@@ -117,6 +118,28 @@ public record ChatAction(
                     GsonHelper.getAsBoolean(json, "saveAsData", false)
             );
         }
+
+        public void writeBinary(FriendlyByteBuf buf, StringTable strings) {
+            int flags = (pattern != null ? 1 : 0) | (error != null ? 2 : 0) | (saveAsData ? 4 : 0);
+            buf.writeByte(flags);
+            strings.write(buf, id);
+            buf.writeVarInt(maxLength);
+            if (pattern != null) {
+                strings.write(buf, pattern);
+            }
+            if (error != null) {
+                strings.write(buf, error);
+            }
+        }
+
+        public static PlayerInputConfig readBinary(FriendlyByteBuf buf, StringTable strings) {
+            int flags = buf.readByte();
+            String id = strings.read(buf);
+            int maxLength = buf.readVarInt();
+            String pattern = (flags & 1) != 0 ? strings.read(buf) : null;
+            String error = (flags & 2) != 0 ? strings.read(buf) : null;
+            return new PlayerInputConfig(id, maxLength, pattern, error, (flags & 4) != 0);
+        }
     }
 
     private static final String TAG_LABEL = "label";
@@ -132,6 +155,19 @@ public record ChatAction(
     private static final String TAG_ITEM = "item";
     private static final String TAG_ITEM_COUNT = "count";
 
+    /** Upper bound for strings in the binary layout; generous enough for any dialogue text. */
+    public static final int BINARY_MAX_STRING_LENGTH = 262144;
+
+    // Presence bits for the binary layout
+    private static final int FLAG_LABEL_TEMPLATE = 1;
+    private static final int FLAG_REPLY = 1 << 1;
+    private static final int FLAG_NEXT_STATE = 1 << 2;
+    private static final int FLAG_CONDITION = 1 << 3;
+    private static final int FLAG_PLAYER_INPUT = 1 << 4;
+    private static final int FLAG_ITEMS_VISUAL = 1 << 5;
+    private static final int FLAG_ITEMS_INPUT = 1 << 6;
+    private static final int FLAG_ITEMS_OUTPUT = 1 << 7;
+
     /**
      * Item to display on an action button.
      * @param item Full item string with optional NBT (e.g., "minecraft:diamond{display:{Name:'\"Custom\"'}}")
@@ -162,6 +198,15 @@ public record ChatAction(
             return new ActionItem(item, count);
         }
 
+        public void writeBinary(FriendlyByteBuf buf, StringTable strings) {
+            strings.write(buf, item);
+            buf.writeVarInt(count);
+        }
+
+        public static ActionItem readBinary(FriendlyByteBuf buf, StringTable strings) {
+            return new ActionItem(strings.read(buf), buf.readVarInt());
+        }
+
         public @Nullable ItemStack toItemStack() {
             try {
                 ItemParser.ItemResult result = ItemParser.parseForItem(
@@ -324,6 +369,88 @@ public record ChatAction(
                 nextState, condition, playerInput);
     }
 
+    /**
+     * Writes this action in the compact binary layout: a presence bitmask, then only the set fields.
+     * Reply text is written inline; other strings go through the table.
+     */
+    public void writeBinary(FriendlyByteBuf buf, StringTable strings) {
+        int flags = 0;
+        if (labelTemplate != null) flags |= FLAG_LABEL_TEMPLATE;
+        if (replyText != null) flags |= FLAG_REPLY;
+        if (nextState != null) flags |= FLAG_NEXT_STATE;
+        if (condition != null) flags |= FLAG_CONDITION;
+        if (playerInput != null) flags |= FLAG_PLAYER_INPUT;
+        if (!itemsVisual.isEmpty()) flags |= FLAG_ITEMS_VISUAL;
+        if (!itemsInput.isEmpty()) flags |= FLAG_ITEMS_INPUT;
+        if (!itemsOutput.isEmpty()) flags |= FLAG_ITEMS_OUTPUT;
+        buf.writeVarInt(flags);
+
+        strings.write(buf, label);
+        if (labelTemplate != null) strings.write(buf, labelTemplate);
+        buf.writeVarInt(commands.size());
+        for (String cmd : commands) {
+            strings.write(buf, cmd);
+        }
+        if (replyText != null) strings.writeText(buf, replyText);
+        if (!itemsVisual.isEmpty()) writeItemsBinary(buf, itemsVisual, strings);
+        if (!itemsInput.isEmpty()) writeItemsBinary(buf, itemsInput, strings);
+        if (!itemsOutput.isEmpty()) writeItemsBinary(buf, itemsOutput, strings);
+        if (nextState != null) strings.write(buf, nextState);
+        if (condition != null) strings.write(buf, condition);
+        if (playerInput != null) playerInput.writeBinary(buf, strings);
+    }
+
+    public static ChatAction readBinary(FriendlyByteBuf buf, StringTable strings) {
+        int flags = buf.readVarInt();
+
+        String label = strings.read(buf);
+        String labelTemplate = (flags & FLAG_LABEL_TEMPLATE) != 0 ? strings.read(buf) : null;
+        int commandCount = buf.readVarInt();
+        List<String> commands = new ArrayList<>(commandCount);
+        for (int i = 0; i < commandCount; i++) {
+            commands.add(strings.read(buf));
+        }
+        String replyText = (flags & FLAG_REPLY) != 0 ? strings.readText(buf) : null;
+        List<ActionItem> itemsVisual = (flags & FLAG_ITEMS_VISUAL) != 0 ? readItemsBinary(buf, strings) : List.of();
+        List<ActionItem> itemsInput = (flags & FLAG_ITEMS_INPUT) != 0 ? readItemsBinary(buf, strings) : List.of();
+        List<ActionItem> itemsOutput = (flags & FLAG_ITEMS_OUTPUT) != 0 ? readItemsBinary(buf, strings) : List.of();
+        String nextState = (flags & FLAG_NEXT_STATE) != 0 ? strings.read(buf) : null;
+        String condition = (flags & FLAG_CONDITION) != 0 ? strings.read(buf) : null;
+        PlayerInputConfig playerInput = (flags & FLAG_PLAYER_INPUT) != 0 ? PlayerInputConfig.readBinary(buf, strings) : null;
+
+        return new ChatAction(label, labelTemplate, commands, replyText, itemsVisual, itemsInput, itemsOutput,
+                nextState, condition, playerInput);
+    }
+
+    static void writeItemsBinary(FriendlyByteBuf buf, List<ActionItem> items, StringTable strings) {
+        buf.writeVarInt(items.size());
+        for (ActionItem item : items) {
+            item.writeBinary(buf, strings);
+        }
+    }
+
+    static List<ActionItem> readItemsBinary(FriendlyByteBuf buf, StringTable strings) {
+        int count = buf.readVarInt();
+        List<ActionItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(ActionItem.readBinary(buf, strings));
+        }
+        return items;
+    }
+
+    /**
+     * Rough heap footprint of this action in bytes, see {@link ChatMessage#estimatedSizeBytes()}.
+     */
+    public int estimatedSizeBytes() {
+        int size = 96 + ChatMessage.sizeOf(label) + ChatMessage.sizeOf(labelTemplate) + ChatMessage.sizeOf(replyText)
+                + ChatMessage.sizeOf(nextState) + ChatMessage.sizeOf(condition);
+        for (String command : commands) {
+            size += ChatMessage.sizeOf(command);
+        }
+        size += (itemsVisual.size() + itemsInput.size() + itemsOutput.size()) * 64;
+        return playerInput != null ? size + 96 : size;
+    }
+
     /**
      * Checks if this action has any items to display.
      */
@@ -8,6 +8,7 @@ import java.util.UUID;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
+import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.util.GsonHelper;
 
 import com.google.gson.JsonArray;
@@ -36,6 +37,17 @@ public final class ChatMessage {
     private static final String TAG_TRANSACTION_OUTPUT = "transactionOutput";
     private static final String TAG_PLAYER_UUID = "playerUuid";
 
+    // Presence bits for the binary layout
+    private static final int FLAG_SENDER_NAME_TEMPLATE = 1;
+    private static final int FLAG_SENDER_SUBTITLE = 1 << 1;
+    private static final int FLAG_SENDER_SUBTITLE_TEMPLATE = 1 << 2;
+    private static final int FLAG_SENDER_IMAGE = 1 << 3;
+    private static final int FLAG_CONTENT_TEMPLATE = 1 << 4;
+    private static final int FLAG_PLAYER_UUID = 1 << 5;
+    private static final int FLAG_ACTIONS = 1 << 6;
+    private static final int FLAG_TRANSACTION_INPUT = 1 << 7;
+    private static final int FLAG_TRANSACTION_OUTPUT = 1 << 8;
+
     /**
      * Default subtitle template for player messages.
      * Resolved at render time via ClientTemplateEngine.
@@ -226,6 +238,24 @@ public final class ChatMessage {
         return playerUuid;
     }
 
+    /**
+     * Rough heap footprint of this message in bytes, used to budget message caches.
+     */
+    public int estimatedSizeBytes() {
+        int size = 128 + sizeOf(entityId) + sizeOf(senderName) + sizeOf(senderNameTemplate)
+                + sizeOf(senderSubtitle) + sizeOf(senderSubtitleTemplate) + sizeOf(senderImageId)
+                + sizeOf(content) + sizeOf(contentTemplate);
+        for (ChatAction action : actions) {
+            size += action.estimatedSizeBytes();
+        }
+        size += (transactionInput.size() + transactionOutput.size()) * 64;
+        return size;
+    }
+
+    static int sizeOf(@Nullable String value) {
+        return value != null ? 40 + value.length() : 0;
+    }
+
     /**
      * Returns a copy of this message with actions cleared.
      */
@@ -404,4 +434,90 @@ public final class ChatMessage {
                 json.has(TAG_PLAYER_UUID) ? UUID.fromString(GsonHelper.getAsString(json, TAG_PLAYER_UUID)) : null
         );
     }
+
+    /**
+     * Writes this message in the compact binary layout: a presence bitmask for optional fields,
+     * varints for numbers, length-prefixed UTF-8 strings and a 16-byte message UUID.
+     */
+    public void writeBinary(FriendlyByteBuf buf) {
+        writeBinary(buf, StringTable.INLINE);
+    }
+
+    /**
+     * Writes the binary layout with identifier-like strings (entity ID, sender fields, action and item IDs)
+     * going through the given table; message content is written inline, within the table's length limit.
+     */
+    public void writeBinary(FriendlyByteBuf buf, StringTable strings) {
+        int flags = 0;
+        if (senderNameTemplate != null) flags |= FLAG_SENDER_NAME_TEMPLATE;
+        if (senderSubtitle != null) flags |= FLAG_SENDER_SUBTITLE;
+        if (senderSubtitleTemplate != null) flags |= FLAG_SENDER_SUBTITLE_TEMPLATE;
+        if (senderImageId != null) flags |= FLAG_SENDER_IMAGE;
+        if (contentTemplate != null) flags |= FLAG_CONTENT_TEMPLATE;
+        if (playerUuid != null) flags |= FLAG_PLAYER_UUID;
+        if (!actions.isEmpty()) flags |= FLAG_ACTIONS;
+        if (!transactionInput.isEmpty()) flags |= FLAG_TRANSACTION_INPUT;
+        if (!transactionOutput.isEmpty()) flags |= FLAG_TRANSACTION_OUTPUT;
+        buf.writeVarInt(flags);
+
+        buf.writeVarInt(type.ordinal());
+        buf.writeUUID(messageId);
+        strings.write(buf, entityId);
+        strings.write(buf, senderName);
+        if (senderNameTemplate != null) strings.write(buf, senderNameTemplate);
+        if (senderSubtitle != null) strings.write(buf, senderSubtitle);
+        if (senderSubtitleTemplate != null) strings.write(buf, senderSubtitleTemplate);
+        if (senderImageId != null) strings.write(buf, senderImageId);
+        strings.writeText(buf, content);
+        if (contentTemplate != null) strings.writeText(buf, contentTemplate);
+        buf.writeVarLong(worldDay);
+
+        if (!actions.isEmpty()) {
+            buf.writeVarInt(actions.size());
+            for (ChatAction action : actions) {
+                action.writeBinary(buf, strings);
+            }
+        }
+        if (!transactionInput.isEmpty()) ChatAction.writeItemsBinary(buf, transactionInput, strings);
+        if (!transactionOutput.isEmpty()) ChatAction.writeItemsBinary(buf, transactionOutput, strings);
+        if (playerUuid != null) buf.writeUUID(playerUuid);
+    }
+
+    public static ChatMessage readBinary(FriendlyByteBuf buf) {
+        return readBinary(buf, StringTable.INLINE);
+    }
+
+    public static ChatMessage readBinary(FriendlyByteBuf buf, StringTable strings) {
+        int flags = buf.readVarInt();
+
+        MessageType type = MessageType.fromOrdinal(buf.readVarInt());
+        UUID messageId = buf.readUUID();
+        String entityId = strings.read(buf);
+        String senderName = strings.read(buf);
+        String senderNameTemplate = (flags & FLAG_SENDER_NAME_TEMPLATE) != 0 ? strings.read(buf) : null;
+        String senderSubtitle = (flags & FLAG_SENDER_SUBTITLE) != 0 ? strings.read(buf) : null;
+        String senderSubtitleTemplate = (flags & FLAG_SENDER_SUBTITLE_TEMPLATE) != 0 ? strings.read(buf) : null;
+        String senderImageId = (flags & FLAG_SENDER_IMAGE) != 0 ? strings.read(buf) : null;
+        String content = strings.readText(buf);
+        String contentTemplate = (flags & FLAG_CONTENT_TEMPLATE) != 0 ? strings.readText(buf) : null;
+        long worldDay = buf.readVarLong();
+
+        List<ChatAction> actions = Collections.emptyList();
+        if ((flags & FLAG_ACTIONS) != 0) {
+            int actionCount = buf.readVarInt();
+            actions = new ArrayList<>(actionCount);
+            for (int i = 0; i < actionCount; i++) {
+                actions.add(ChatAction.readBinary(buf, strings));
+            }
+        }
+        List<ChatAction.ActionItem> transactionInput = (flags & FLAG_TRANSACTION_INPUT) != 0
+                ? ChatAction.readItemsBinary(buf, strings) : Collections.emptyList();
+        List<ChatAction.ActionItem> transactionOutput = (flags & FLAG_TRANSACTION_OUTPUT) != 0
+                ? ChatAction.readItemsBinary(buf, strings) : Collections.emptyList();
+        UUID playerUuid = (flags & FLAG_PLAYER_UUID) != 0 ? buf.readUUID() : null;
+
+        return new ChatMessage(type, messageId, entityId, senderName, senderNameTemplate, senderSubtitle,
+                senderSubtitleTemplate, senderImageId, content, contentTemplate, worldDay, actions,
+                transactionInput, transactionOutput, playerUuid);
+    }
 }
@@ -14,6 +14,7 @@ import com.google.gson.JsonObject;
 import org.jetbrains.annotations.Nullable;
 
 import com.yardenzamir.simchat.condition.CallbackContext;
+import com.yardenzamir.simchat.condition.CompiledCondition;
 import com.yardenzamir.simchat.condition.ConditionEvaluator;
 import com.yardenzamir.simchat.condition.TemplateEngine;
 import com.yardenzamir.simchat.condition.TemplateEngine.TemplateCompilation;
@@ -64,6 +65,7 @@ public record DialogueData(
      * @param nextState Dialogue resource location to auto-send after this action (e.g., "mypack:npc/next")
      * @param condition Condition that must pass for action to be visible (e.g., "kjs:hasHighRep", "!flag:seen_intro")
      * @param playerInput If present, transforms button into text input field
+     * @param compiledCondition The condition compiled at load (always passes if there is none)
      */
     public record DialogueAction(
             @Nullable String id,
@@ -77,7 +79,8 @@ public record DialogueData(
             List<ChatAction.ActionItem> itemsOutput,
             @Nullable String nextState,
             @Nullable String condition,
-            @Nullable ChatAction.PlayerInputConfig playerInput
+            @Nullable ChatAction.PlayerInputConfig playerInput,
+            CompiledCondition compiledCondition
     ) {
         private static List<ChatAction.ActionItem> parseItemArray(JsonObject json, String key) {
             List<ChatAction.ActionItem> items = new ArrayList<>();
@@ -123,7 +126,8 @@ public record DialogueData(
             ChatAction.PlayerInputConfig playerInput = parsePlayerInput(json);
 
             return new DialogueAction(actionId, labelVariants, labelMode, commands, replyVariants, replyMode,
-                    itemsVisual, itemsInput, itemsOutput, nextState, condition, playerInput);
+                    itemsVisual, itemsInput, itemsOutput, nextState, condition, playerInput,
+                    ConditionEvaluator.compile(condition));
         }
 
         private static @Nullable ChatAction.PlayerInputConfig parsePlayerInput(JsonObject json) {
@@ -204,10 +208,8 @@ public record DialogueData(
 
         List<ChatAction> chatActions = new ArrayList<>();
         for (DialogueAction action : actions) {
-            if (ctx != null && action.condition() != null) {
-                if (!ConditionEvaluator.evaluate(action.condition(), ctx)) {
-                    continue;
-                }
+            if (ctx != null && !action.compiledCondition().test(ctx)) {
+                continue;
             }
 
             String actionId = action.id();
@@ -0,0 +1,102 @@
+package com.yardenzamir.simchat.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.netty.handler.codec.DecoderException;
+import net.minecraft.network.FriendlyByteBuf;
+
+/**
+ * Deduplicates repeated strings (entity IDs, sender names, item IDs) within one binary payload.
+ * The first occurrence of a string is written inline and later ones as a varint back-reference,
+ * so the reader rebuilds the same table as it goes. Use a fresh table per payload on each side.
+ */
+public final class StringTable {
+
+    private static final int MAX_STRING = ChatAction.BINARY_MAX_STRING_LENGTH;
+    private static final int UNLIMITED = -1;
+
+    /** Writes every string inline. Holds no state, so it can be shared. */
+    public static final StringTable INLINE = new StringTable(false, MAX_STRING);
+
+    /**
+     * Writes every string inline with no length limit, for stored payloads; the layout is the same as
+     * {@link #INLINE}. Only for trusted input, since reads aren't capped either.
+     */
+    public static final StringTable STORAGE = new StringTable(false, UNLIMITED);
+
+    private final boolean deduplicate;
+    private final int maxLength;
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    private StringTable(boolean deduplicate, int maxLength) {
+        this.deduplicate = deduplicate;
+        this.maxLength = maxLength;
+    }
+
+    public static StringTable create() {
+        return new StringTable(true, MAX_STRING);
+    }
+
+    public void write(FriendlyByteBuf buf, String value) {
+        if (!deduplicate) {
+            writeText(buf, value);
+            return;
+        }
+        Integer index = indices.get(value);
+        if (index != null) {
+            buf.writeVarInt(index + 1);
+            return;
+        }
+        indices.put(value, indices.size());
+        buf.writeVarInt(0);
+        writeText(buf, value);
+    }
+
+    public String read(FriendlyByteBuf buf) {
+        if (!deduplicate) {
+            return readText(buf);
+        }
+        int reference = buf.readVarInt();
+        if (reference == 0) {
+            String value = readText(buf);
+            strings.add(value);
+            return value;
+        }
+        if (reference > strings.size()) {
+            throw new DecoderException("Unknown string table reference " + reference);
+        }
+        return strings.get(reference - 1);
+    }
+
+    /**
+     * Writes free text such as message content inline, never deduplicated, within this table's length limit.
+     */
+    public void writeText(FriendlyByteBuf buf, String value) {
+        if (maxLength != UNLIMITED) {
+            buf.writeUtf(value, maxLength);
+            return;
+        }
+        // Same layout as writeUtf: varint byte length, then UTF-8
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buf.writeVarInt(bytes.length);
+        buf.writeBytes(bytes);
+    }
+
+    public String readText(FriendlyByteBuf buf) {
+        if (maxLength != UNLIMITED) {
+            return buf.readUtf(maxLength);
+        }
+        int length = buf.readVarInt();
+        if (length < 0 || length > buf.readableBytes()) {
+            throw new DecoderException("String length " + length + " exceeds the remaining " + buf.readableBytes() + " bytes");
+        }
+        String value = buf.toString(buf.readerIndex(), length, StandardCharsets.UTF_8);
+        buf.skipBytes(length);
+        return value;
+    }
+}
@@ -4,7 +4,9 @@ import com.yardenzamir.simchat.SimChatMod;
 import com.yardenzamir.simchat.condition.CallbackContext;
 import com.yardenzamir.simchat.condition.CallbackRegistry;
 import dev.latvian.mods.kubejs.event.EventJS;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Map;
 import java.util.function.Function;
 
 /**
@@ -21,8 +23,15 @@ public class RegisterCallbacksKubeEvent extends EventJS {
      */
     @SuppressWarnings("unchecked")
     public void register(String name, Function<CallbackContext, Object> callback) {
+        register(name, callback, null);
+    }
+
+    /**
+     * Registers a callback with options; see {@link SimChatBindings#registerCallback(String, Function, Map)}.
+     */
+    public void register(String name, Function<CallbackContext, Object> callback, @Nullable Map<String, Object> options) {
         SimChatMod.LOGGER.debug("Registering KubeJS callback: {}", name);
-        CallbackRegistry.register(name, callback::apply);
+        CallbackRegistry.register(name, callback::apply, SimChatBindings.getCacheTicks(name, options));
     }
 
     /**
@@ -3,7 +3,9 @@ package com.yardenzamir.simchat.integration.kubejs;
 import com.yardenzamir.simchat.SimChatMod;
 import com.yardenzamir.simchat.condition.CallbackContext;
 import com.yardenzamir.simchat.condition.CallbackRegistry;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
@@ -13,6 +15,7 @@ import java.util.function.Function;
  *
  * Usage in JS:
  *   SimChat.registerCallback('myCallback', ctx => { return ctx.player.persistentData.getInt('foo') })
+ *   SimChat.registerCallback('expensive', ctx => { ... }, { cacheTicks: 20 })
  */
 public class SimChatBindings {
 
@@ -38,6 +41,20 @@ public class SimChatBindings {
      * @param callback The JS function that receives CallbackContext and returns any value
      */
     public static void registerCallback(String name, Function<CallbackContext, Object> callback) {
+        registerCallback(name, callback, null);
+    }
+
+    /**
+     * Registers a callback with options.
+     * {@code cacheTicks}: share results for the same player, team and entity for this many server ticks
+     * (1 = within the current tick). By default a result is only reused within one evaluation.
+     *
+     * @param name The callback name (used as "kjs:name" in conditions/templates)
+     * @param callback The JS function that receives CallbackContext and returns any value
+     * @param options Registration options from the script, may be null
+     */
+    public static void registerCallback(String name, Function<CallbackContext, Object> callback,
+                                        @Nullable Map<String, Object> options) {
         // Auto-clear on first registration of a new cycle (detected by incrementing generation)
         long gen = currentGeneration.get();
         if (lastRegistrationGeneration != gen) {
@@ -46,7 +63,19 @@ public class SimChatBindings {
             SimChatMod.LOGGER.info("SimChat: Starting new callback registration cycle");
         }
 
-        CallbackRegistry.register(name, callback::apply);
+        CallbackRegistry.register(name, callback::apply, getCacheTicks(name, options));
+    }
+
+    static int getCacheTicks(String name, @Nullable Map<String, Object> options) {
+        Object value = options != null ? options.get("cacheTicks") : null;
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Number number && number.intValue() >= 0) {
+            return number.intValue();
+        }
+        SimChatMod.LOGGER.error("SimChat: Invalid cacheTicks for callback '{}': {}", name, value);
+        return 0;
     }
 
     /**
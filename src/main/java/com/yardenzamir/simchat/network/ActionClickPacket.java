@@ -174,7 +174,9 @@ public class ActionClickPacket {
                 }
             }
 
-            boolean actionsConsumed = manager.consumeActions(team, packet.messageId);
+            // Consumed actions, replies and team data are committed together in one transaction
+            SimChatTeamManager.UnitOfWork work = manager.beginWork(team);
+            boolean actionsConsumed = work.consumeActions(packet.messageId);
             ChatMessage updatedMessage = actionsConsumed ? stored.message().withoutActions() : null;
             int updatedMessageIndex = stored.messageIndex();
 
@@ -194,7 +196,7 @@ public class ActionClickPacket {
                         replyCompilation.runtimeTemplate(),
                         worldDay
                 );
-                replyIndex = manager.appendMessage(team, reply);
+                replyIndex = work.appendMessage(reply);
                 if (replyIndex >= 0) {
                     replyMessage = reply;
                 }
@@ -208,14 +210,15 @@ public class ActionClickPacket {
                         packet.entityId, worldDay,
                         action.itemsInput(), action.itemsOutput()
                 );
-                transactionIndex = manager.appendMessage(team, transactionMsg);
+                transactionIndex = work.appendMessage(transactionMsg);
                 if (transactionIndex >= 0) {
                     transactionMessage = transactionMsg;
                 }
             }
 
             // Save team data
-            manager.saveTeam(team);
+            work.saveTeam();
+            work.commit();
 
             int totalCount = manager.getMessageCount(team, packet.entityId);
             if (actionsConsumed && updatedMessage != null) {
@@ -251,6 +254,8 @@ public class ActionClickPacket {
             // Execute commands (with template processing for input values)
             for (String command : action.commands()) {
                 if (!command.isEmpty()) {
+                    // Earlier commands may have changed what callbacks return
+                    callbackCtx.forgetCallbackResults();
                     String cmd = TemplateEngine.resolveWithPrefixes(command, callbackCtx);
                     if (cmd.startsWith("/")) {
                         cmd = cmd.substring(1);
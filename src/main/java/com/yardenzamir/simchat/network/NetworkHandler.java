@@ -1,21 +1,24 @@
 package com.yardenzamir.simchat.network;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.network.NetworkDirection;
 import net.minecraftforge.network.NetworkRegistry;
 import net.minecraftforge.network.PacketDistributor;
 import net.minecraftforge.network.simple.SimpleChannel;
+import net.minecraftforge.server.ServerLifecycleHooks;
 
 import com.yardenzamir.simchat.SimChatMod;
 import com.yardenzamir.simchat.capability.ChatCapability;
-import com.yardenzamir.simchat.config.ServerConfig;
 import com.yardenzamir.simchat.data.ChatMessage;
 import com.yardenzamir.simchat.team.SimChatTeamManager;
 import com.yardenzamir.simchat.team.TeamData;
@@ -25,7 +28,7 @@ import com.yardenzamir.simchat.team.TeamData;
  */
 public class NetworkHandler {
 
-    private static final String PROTOCOL_VERSION = "6";
+    private static final String PROTOCOL_VERSION = "13";
 
     public static final SimpleChannel CHANNEL = NetworkRegistry.newSimpleChannel(
             new ResourceLocation(SimChatMod.MOD_ID, "main"),
@@ -34,6 +37,20 @@ public class NetworkHandler {
             PROTOCOL_VERSION::equals
     );
 
+    /**
+     * Targets a team's online members. Like Forge's built-in targets, the packet is encoded once
+     * and the same buffer is written to every member's connection.
+     */
+    public static final PacketDistributor<TeamData> TEAM = new PacketDistributor<>(
+            (distributor, teamSupplier) -> packet -> {
+                MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+                if (server == null) return;
+                for (ServerPlayer member : SimChatTeamManager.get(server).getOnlineTeamMembers(teamSupplier.get())) {
+                    member.connection.send(packet);
+                }
+            },
+            NetworkDirection.PLAY_TO_CLIENT);
+
     private static int packetId = 0;
 
     public static void init() {
@@ -101,6 +118,21 @@ public class NetworkHandler {
                 RequestOlderMessagesPacket::encode,
                 RequestOlderMessagesPacket::decode,
                 RequestOlderMessagesPacket::handle);
+
+        CHANNEL.registerMessage(packetId++, TeamMetadataDeltaPacket.class,
+                TeamMetadataDeltaPacket::encode,
+                TeamMetadataDeltaPacket::decode,
+                TeamMetadataDeltaPacket::handle);
+
+        CHANNEL.registerMessage(packetId++, RequestTeamSyncPacket.class,
+                RequestTeamSyncPacket::encode,
+                RequestTeamSyncPacket::decode,
+                RequestTeamSyncPacket::handle);
+
+        CHANNEL.registerMessage(packetId++, SyncConversationsPacket.class,
+                SyncConversationsPacket::encode,
+                SyncConversationsPacket::decode,
+                SyncConversationsPacket::handle);
     }
 
     /**
@@ -108,7 +140,7 @@ public class NetworkHandler {
      */
     public static void syncToPlayer(ServerPlayer player) {
         ChatCapability.get(player).ifPresent(data ->
-            CHANNEL.send(PacketDistributor.PLAYER.with(() -> player), new SyncChatDataPacket(data))
+            SimChatOutbox.send(player, new SyncChatDataPacket(data))
         );
     }
 
@@ -117,22 +149,21 @@ public class NetworkHandler {
      * Shows toast notification instead of auto-opening screen.
      */
     public static void sendNewMessage(ServerPlayer player, com.yardenzamir.simchat.data.ChatMessage message, boolean showToast) {
-        CHANNEL.send(PacketDistributor.PLAYER.with(() -> player), new NewMessagePacket(message, showToast));
+        SimChatOutbox.send(player, new NewMessagePacket(message, showToast));
     }
 
     /**
      * Tells client to open chat screen for an entity and optional message.
      */
     public static void openChatScreen(ServerPlayer player, String entityId, @org.jetbrains.annotations.Nullable java.util.UUID messageId, int messageIndex) {
-        CHANNEL.send(PacketDistributor.PLAYER.with(() -> player), new OpenChatScreenPacket(entityId, messageId, messageIndex));
+        SimChatOutbox.send(player, new OpenChatScreenPacket(entityId, messageId, messageIndex));
     }
 
     /**
      * Sends typing indicator to client.
      */
     public static void sendTyping(ServerPlayer player, String entityId, boolean isTyping) {
-        CHANNEL.send(PacketDistributor.PLAYER.with(() -> player),
-                new TypingPacket(entityId, isTyping));
+        SimChatOutbox.sendTyping(player, entityId, isTyping);
     }
 
     // === Team sync methods ===
@@ -140,36 +171,79 @@ public class NetworkHandler {
 
     /**
      * Syncs team metadata and recent messages (hybrid approach).
-     * Sends metadata + last 500 messages per conversation.
+     * Metadata is sent immediately; the last messages of each conversation follow over
+     * the next ticks via TeamSyncScheduler, most recently active first.
      */
     public static void syncTeamWithLazyLoad(ServerPlayer player, TeamData team) {
-        SimChatTeamManager manager = SimChatTeamManager.get(player.server);
+        Map<String, Integer> messageCountPerEntity = getMessageCounts(player.server, team);
+        List<String> entityOrder = getEntityOrder(team);
 
-        Map<String, Integer> messageCountPerEntity = new HashMap<>();
-        List<String> entityIds = team.getEntityIds();
-        for (String entityId : entityIds) {
-            int count = manager.getMessageCount(team, entityId);
-            messageCountPerEntity.put(entityId, count);
+        SimChatOutbox.sendSnapshot(player,
+                new SyncTeamMetadataPacket(team.getId(), team.getTitle(), team.getColor(),
+                        new ArrayList<>(team.getMembers()), entityOrder, messageCountPerEntity, team.getAllData(),
+                        team.getRevision()));
+
+        TeamSyncScheduler.recordSynced(player, TeamSyncScheduler.SyncedState.of(team, entityOrder, messageCountPerEntity));
+        TeamSyncScheduler.schedule(player, team, team.getEntityIds(), messageCountPerEntity, true);
+    }
+
+    /**
+     * Brings a synced client up to date with only what changed since its last sync.
+     * Sends nothing when the team is unchanged; falls back to a full sync for a client
+     * that was never synced with this team.
+     */
+    public static void resyncTeam(ServerPlayer player, TeamData team) {
+        if (TeamSyncScheduler.isUpToDate(player, team)) {
+            return;
+        }
+        TeamSyncScheduler.SyncedState previous = TeamSyncScheduler.getSyncedState(player, team);
+        if (previous == null) {
+            syncTeamWithLazyLoad(player, team);
+            return;
         }
-        List<String> entityOrder = new java.util.ArrayList<>(entityIds);
-        Collections.reverse(entityOrder);
 
-        CHANNEL.send(PacketDistributor.PLAYER.with(() -> player),
-                new SyncTeamMetadataPacket(team.getId(), team.getTitle(), team.getColor(),
-                        new java.util.ArrayList<>(team.getMembers()), entityOrder, messageCountPerEntity, team.getAllData()));
+        Map<String, Integer> messageCountPerEntity = getMessageCounts(player.server, team);
+        List<String> entityOrder = getEntityOrder(team);
+        TeamMetadataDeltaPacket delta = TeamMetadataDeltaPacket.between(previous, team, entityOrder, messageCountPerEntity);
+        if (delta.isEmpty()) {
+            return;
+        }
 
-        int initialCount = ServerConfig.INITIAL_SYNC_MESSAGE_COUNT.get();
-        for (String entityId : entityIds) {
-            int totalCount = messageCountPerEntity.getOrDefault(entityId, 0);
-            if (totalCount <= 0 || initialCount <= 0) {
-                continue;
+        SimChatOutbox.sendTeamState(player, delta);
+        TeamSyncScheduler.recordSynced(player, TeamSyncScheduler.SyncedState.of(team, entityOrder, messageCountPerEntity));
+
+        // Conversations with a changed count were reset on the client; page their latest messages back in
+        Set<String> changed = delta.getChangedEntities();
+        List<String> toPage = new ArrayList<>();
+        for (String entityId : team.getEntityIds()) {
+            if (changed.contains(entityId)) {
+                toPage.add(entityId);
             }
-            int startIndex = Math.max(0, totalCount - initialCount);
-            List<com.yardenzamir.simchat.data.ChatMessage> recent =
-                    manager.loadMessages(team, entityId, startIndex, totalCount - startIndex);
+        }
+        TeamSyncScheduler.schedule(player, team, toPage, messageCountPerEntity, false);
+    }
 
-            sendMessages(player, entityId, recent, totalCount, startIndex);
+    private static Map<String, Integer> getMessageCounts(MinecraftServer server, TeamData team) {
+        SimChatTeamManager manager = SimChatTeamManager.get(server);
+        Map<String, Integer> messageCountPerEntity = new HashMap<>();
+        for (String entityId : team.getEntityIds()) {
+            messageCountPerEntity.put(entityId, manager.getMessageCount(team, entityId));
         }
+        return messageCountPerEntity;
+    }
+
+    // Least to most recently active, as the client orders conversations
+    private static List<String> getEntityOrder(TeamData team) {
+        List<String> entityOrder = new ArrayList<>(team.getEntityIds());
+        Collections.reverse(entityOrder);
+        return entityOrder;
+    }
+
+    /**
+     * Client asks for a full team snapshot.
+     */
+    public static void requestTeamSync() {
+        CHANNEL.sendToServer(new RequestTeamSyncPacket());
     }
 
     /**
@@ -178,8 +252,25 @@ public class NetworkHandler {
     public static void sendMessages(ServerPlayer player, String entityId,
                                     java.util.List<com.yardenzamir.simchat.data.ChatMessage> messages,
                                     int totalCount, int startIndex) {
-        CHANNEL.send(PacketDistributor.PLAYER.with(() -> player),
-                new SyncMessagesPacket(entityId, messages, totalCount, startIndex));
+        SimChatOutbox.sendMessages(player, entityId, messages, totalCount, startIndex);
+        TeamSyncScheduler.recordSentCount(player, entityId, totalCount);
+    }
+
+    /**
+     * Sends several conversations' messages to a player, bundled and compressed.
+     */
+    public static void sendConversations(ServerPlayer player, List<SyncConversationsPacket.ConversationPage> pages) {
+        // Later pages belong to more recently active conversations, so they get the budget first
+        List<ResolveTemplateResponsePacket.Entry> resolved = new ArrayList<>();
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            resolved.addAll(TemplatePreResolver.resolve(player, pages.get(i).messages()));
+        }
+        for (SyncConversationsPacket packet : SyncConversationsPacket.split(pages, resolved)) {
+            SimChatOutbox.sendTeamState(player, packet);
+        }
+        for (SyncConversationsPacket.ConversationPage page : pages) {
+            TeamSyncScheduler.recordSentCount(player, page.entityId(), page.totalCount());
+        }
     }
 
     /**
@@ -208,13 +299,13 @@ public class NetworkHandler {
     }
 
     /**
-     * Syncs team data to all online team members.
+     * Syncs team data to all online team members, as a delta where they already hold the team.
      */
     public static void syncTeamToAllMembers(TeamData team, MinecraftServer server) {
         SimChatTeamManager manager = SimChatTeamManager.get(server);
         List<ServerPlayer> members = manager.getOnlineTeamMembers(team);
         for (ServerPlayer member : members) {
-            syncTeamWithLazyLoad(member, team);
+            resyncTeam(member, team);
         }
     }
 
@@ -233,12 +324,14 @@ public class NetworkHandler {
 
     public static void sendMessageToTeam(TeamData team, ChatMessage message, int messageIndex, int totalCount,
                                          MinecraftServer server, boolean showToast) {
+        // Members share the queued entries, which the outbox flush sends through TEAM
+        List<ChatMessage> messages = List.of(message);
+        NewMessagePacket toast = showToast ? new NewMessagePacket(message, true) : null;
         SimChatTeamManager manager = SimChatTeamManager.get(server);
-        List<ServerPlayer> members = manager.getOnlineTeamMembers(team);
-        for (ServerPlayer member : members) {
-            sendMessages(member, message.entityId(), java.util.List.of(message), totalCount, messageIndex);
-            if (showToast) {
-                sendNewMessage(member, message, true);
+        for (ServerPlayer member : manager.getOnlineTeamMembers(team)) {
+            sendMessages(member, message.entityId(), messages, totalCount, messageIndex);
+            if (toast != null) {
+                SimChatOutbox.send(member, toast);
             }
         }
     }
@@ -248,9 +341,8 @@ public class NetworkHandler {
      */
     public static void sendTypingToTeam(TeamData team, String entityId, boolean isTyping, MinecraftServer server) {
         SimChatTeamManager manager = SimChatTeamManager.get(server);
-        List<ServerPlayer> members = manager.getOnlineTeamMembers(team);
-        for (ServerPlayer member : members) {
-            sendTyping(member, entityId, isTyping);
+        for (ServerPlayer member : manager.getOnlineTeamMembers(team)) {
+            SimChatOutbox.sendTyping(member, entityId, isTyping);
         }
     }
 }
@@ -5,7 +5,6 @@ import java.util.function.Supplier;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.resources.sounds.SimpleSoundInstance;
 import net.minecraft.core.registries.BuiltInRegistries;
-import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.sounds.SoundEvent;
@@ -19,6 +18,7 @@ import com.yardenzamir.simchat.client.ClientTeamCache;
 import com.yardenzamir.simchat.client.screen.ChatScreen;
 import com.yardenzamir.simchat.config.ClientConfig;
 import com.yardenzamir.simchat.data.ChatMessage;
+import com.yardenzamir.simchat.data.StringTable;
 import com.yardenzamir.simchat.team.TeamData;
 
 /**
@@ -27,26 +27,29 @@ import com.yardenzamir.simchat.team.TeamData;
  */
 public class NewMessagePacket {
 
-    private final CompoundTag messageData;
+    private final ChatMessage message;
     private final boolean showToast;
 
     public NewMessagePacket(ChatMessage message, boolean showToast) {
-        this.messageData = message.toNbt();
+        this.message = message;
         this.showToast = showToast;
     }
 
-    private NewMessagePacket(CompoundTag data, boolean showToast) {
-        this.messageData = data;
-        this.showToast = showToast;
+    public ChatMessage getMessage() {
+        return message;
     }
 
     public static void encode(NewMessagePacket packet, FriendlyByteBuf buf) {
-        buf.writeNbt(packet.messageData);
+        StringTable strings = StringTable.create();
+        packet.message.writeBinary(buf, strings);
         buf.writeBoolean(packet.showToast);
     }
 
     public static NewMessagePacket decode(FriendlyByteBuf buf) {
-        return new NewMessagePacket(buf.readNbt(), buf.readBoolean());
+        StringTable strings = StringTable.create();
+        ChatMessage message = ChatMessage.readBinary(buf, strings);
+        boolean showToast = buf.readBoolean();
+        return new NewMessagePacket(message, showToast);
     }
 
     public static void handle(NewMessagePacket packet, Supplier<NetworkEvent.Context> ctx) {
@@ -60,7 +63,7 @@ public class NewMessagePacket {
         Minecraft mc = Minecraft.getInstance();
         if (mc.player == null) return;
 
-        ChatMessage message = ChatMessage.fromNbt(packet.messageData);
+        ChatMessage message = packet.message;
 
         // Clear typing state on team data
         TeamData team = ClientTeamCache.getTeam();
@@ -8,7 +8,6 @@ import net.minecraft.server.level.ServerPlayer;
 import net.minecraftforge.network.NetworkEvent;
 
 import com.yardenzamir.simchat.config.ServerConfig;
-import com.yardenzamir.simchat.data.ChatMessage;
 import com.yardenzamir.simchat.team.SimChatTeamManager;
 import com.yardenzamir.simchat.team.TeamData;
 
@@ -55,8 +54,15 @@ public class RequestOlderMessagesPacket {
 
             if (startIndex >= endIndex) return;
 
-            List<ChatMessage> batch = manager.loadMessages(team, packet.entityId, startIndex, endIndex - startIndex);
-            NetworkHandler.sendMessages(player, packet.entityId, batch, totalCount, startIndex);
+            // Query on the read pool, send from the server thread. A failed read (already logged) still
+            // gets an empty reply, so the client stops waiting and can request the page again
+            manager.loadMessagesAsync(team, packet.entityId, startIndex, endIndex - startIndex)
+                    .whenCompleteAsync((batch, error) -> {
+                        if (!player.hasDisconnected()) {
+                            NetworkHandler.sendMessages(player, packet.entityId,
+                                    batch != null ? batch : List.of(), totalCount, startIndex);
+                        }
+                    }, player.server);
         });
         ctx.get().setPacketHandled(true);
     }
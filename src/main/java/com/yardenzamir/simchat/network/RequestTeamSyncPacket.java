@@ -0,0 +1,36 @@
+package com.yardenzamir.simchat.network;
+
+import java.util.function.Supplier;
+
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.network.NetworkEvent;
+
+import com.yardenzamir.simchat.team.SimChatTeamManager;
+import com.yardenzamir.simchat.team.TeamData;
+
+/**
+ * Client asks for a full team snapshot after receiving a delta it cannot apply.
+ */
+public class RequestTeamSyncPacket {
+
+    public static void encode(RequestTeamSyncPacket packet, FriendlyByteBuf buf) {
+    }
+
+    public static RequestTeamSyncPacket decode(FriendlyByteBuf buf) {
+        return new RequestTeamSyncPacket();
+    }
+
+    public static void handle(RequestTeamSyncPacket packet, Supplier<NetworkEvent.Context> ctx) {
+        ctx.get().enqueueWork(() -> {
+            ServerPlayer player = ctx.get().getSender();
+            if (player == null) return;
+
+            TeamData team = SimChatTeamManager.get(player.server).getPlayerTeam(player);
+            if (team != null) {
+                NetworkHandler.syncTeamWithLazyLoad(player, team);
+            }
+        });
+        ctx.get().setPacketHandled(true);
+    }
+}
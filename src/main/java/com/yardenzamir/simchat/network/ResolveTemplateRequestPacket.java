@@ -1,8 +1,14 @@
 package com.yardenzamir.simchat.network;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.function.Supplier;
 
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.DecoderException;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraftforge.network.NetworkEvent;
@@ -10,57 +16,104 @@ import net.minecraftforge.network.PacketDistributor;
 
 import com.yardenzamir.simchat.condition.CallbackContext;
 import com.yardenzamir.simchat.condition.TemplateEngine;
+import com.yardenzamir.simchat.data.StringTable;
 import com.yardenzamir.simchat.team.SimChatTeamManager;
 import com.yardenzamir.simchat.team.TeamData;
 
+/**
+ * Client asks the server to resolve a batch of runtime template fields.
+ * Answered with one ResolveTemplateResponsePacket for the whole batch.
+ */
 public class ResolveTemplateRequestPacket {
 
-    private final UUID messageId;
-    private final String fieldKey;
-    private final String entityId;
-    private final String template;
+    // Bounds the work a single packet can ask for
+    public static final int MAX_ENTRIES = 512;
+    // Keeps a packet under the 32767-byte limit on serverbound custom payloads
+    public static final int MAX_PAYLOAD_BYTES = 30000;
+    // Entry count varint
+    public static final int HEADER_BYTES = 5;
 
-    public ResolveTemplateRequestPacket(UUID messageId, String fieldKey, String entityId, String template) {
-        this.messageId = messageId;
-        this.fieldKey = fieldKey;
-        this.entityId = entityId;
-        this.template = template;
+    public record Entry(UUID messageId, String fieldKey, String entityId, String template) {}
+
+    private final List<Entry> entries;
+
+    public ResolveTemplateRequestPacket(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Upper bound of the bytes an entry adds to a packet; strings repeated from earlier entries take less.
+     */
+    public static int estimateSize(Entry entry) {
+        return 16 + stringSize(entry.fieldKey()) + stringSize(entry.entityId()) + stringSize(entry.template());
+    }
+
+    // String table reference, length varint and UTF-8 bytes
+    private static int stringSize(String value) {
+        return 1 + 5 + ByteBufUtil.utf8Bytes(value);
     }
 
     public static void encode(ResolveTemplateRequestPacket packet, FriendlyByteBuf buf) {
-        buf.writeUUID(packet.messageId);
-        buf.writeUtf(packet.fieldKey);
-        buf.writeUtf(packet.entityId);
-        buf.writeUtf(packet.template);
+        StringTable strings = StringTable.create();
+        buf.writeVarInt(packet.entries.size());
+        for (Entry entry : packet.entries) {
+            buf.writeUUID(entry.messageId());
+            strings.write(buf, entry.fieldKey());
+            strings.write(buf, entry.entityId());
+            strings.write(buf, entry.template());
+        }
     }
 
     public static ResolveTemplateRequestPacket decode(FriendlyByteBuf buf) {
-        UUID messageId = buf.readUUID();
-        String fieldKey = buf.readUtf();
-        String entityId = buf.readUtf();
-        String template = buf.readUtf();
-        return new ResolveTemplateRequestPacket(messageId, fieldKey, entityId, template);
+        if (buf.readableBytes() > MAX_PAYLOAD_BYTES) {
+            throw new DecoderException("Template request too large: " + buf.readableBytes() + " bytes");
+        }
+        StringTable strings = StringTable.create();
+        int count = buf.readVarInt();
+        if (count < 0 || count > MAX_ENTRIES) {
+            throw new DecoderException("Too many template requests: " + count);
+        }
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            UUID messageId = buf.readUUID();
+            String fieldKey = strings.read(buf);
+            String entityId = strings.read(buf);
+            String template = strings.read(buf);
+            entries.add(new Entry(messageId, fieldKey, entityId, template));
+        }
+        return new ResolveTemplateRequestPacket(entries);
     }
 
     public static void handle(ResolveTemplateRequestPacket packet, Supplier<NetworkEvent.Context> ctx) {
         ctx.get().enqueueWork(() -> {
             ServerPlayer player = ctx.get().getSender();
-            if (player == null) {
+            if (player == null || packet.entries.isEmpty()) {
                 return;
             }
 
             SimChatTeamManager manager = SimChatTeamManager.get(player.server);
             TeamData team = manager.getPlayerTeam(player);
-            CallbackContext callbackCtx = new CallbackContext(player, team, packet.entityId);
 
-            String resolved;
-            try {
-                resolved = TemplateEngine.resolveWithPrefixes(packet.template, callbackCtx);
-            } catch (Exception e) {
-                resolved = packet.template;
+            // One context per conversation and one resolution per distinct template in the batch
+            Map<String, CallbackContext> contexts = new HashMap<>();
+            Map<String, Map<String, String>> resolvedByEntity = new HashMap<>();
+            List<ResolveTemplateResponsePacket.Entry> responses = new ArrayList<>(packet.entries.size());
+            for (Entry entry : packet.entries) {
+                String resolved = resolvedByEntity
+                        .computeIfAbsent(entry.entityId(), id -> new HashMap<>())
+                        .computeIfAbsent(entry.template(), template -> {
+                            CallbackContext callbackCtx = contexts.computeIfAbsent(entry.entityId(),
+                                    id -> new CallbackContext(player, team, id));
+                            try {
+                                return TemplateEngine.resolveWithPrefixes(template, callbackCtx);
+                            } catch (Exception e) {
+                                return template;
+                            }
+                        });
+                responses.add(new ResolveTemplateResponsePacket.Entry(entry.messageId(), entry.fieldKey(), resolved));
             }
             NetworkHandler.CHANNEL.send(PacketDistributor.PLAYER.with(() -> player),
-                    new ResolveTemplateResponsePacket(packet.messageId, packet.fieldKey, resolved));
+                    new ResolveTemplateResponsePacket(responses));
         });
         ctx.get().setPacketHandled(true);
     }
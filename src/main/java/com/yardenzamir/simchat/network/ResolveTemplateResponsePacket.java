@@ -1,5 +1,7 @@
 package com.yardenzamir.simchat.network;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.function.Supplier;
 
@@ -9,30 +11,58 @@ import net.minecraftforge.fml.DistExecutor;
 import net.minecraftforge.network.NetworkEvent;
 
 import com.yardenzamir.simchat.client.RuntimeTemplateResolver;
+import com.yardenzamir.simchat.data.StringTable;
 
+/**
+ * Server's answer to a ResolveTemplateRequestPacket: the resolved text of every requested field.
+ * Also sent unasked just before messages whose fields were resolved ahead of sending.
+ */
 public class ResolveTemplateResponsePacket {
 
-    private final UUID messageId;
-    private final String fieldKey;
-    private final String resolvedText;
+    public record Entry(UUID messageId, String fieldKey, String resolvedText) {}
 
-    public ResolveTemplateResponsePacket(UUID messageId, String fieldKey, String resolvedText) {
-        this.messageId = messageId;
-        this.fieldKey = fieldKey;
-        this.resolvedText = resolvedText;
+    private final List<Entry> entries;
+
+    public ResolveTemplateResponsePacket(List<Entry> entries) {
+        this.entries = entries;
     }
 
     public static void encode(ResolveTemplateResponsePacket packet, FriendlyByteBuf buf) {
-        buf.writeUUID(packet.messageId);
-        buf.writeUtf(packet.fieldKey);
-        buf.writeUtf(packet.resolvedText);
+        writeEntries(buf, StringTable.create(), packet.entries);
     }
 
     public static ResolveTemplateResponsePacket decode(FriendlyByteBuf buf) {
-        UUID messageId = buf.readUUID();
-        String fieldKey = buf.readUtf();
-        String resolvedText = buf.readUtf();
-        return new ResolveTemplateResponsePacket(messageId, fieldKey, resolvedText);
+        return new ResolveTemplateResponsePacket(readEntries(buf, StringTable.create()));
+    }
+
+    /**
+     * Also used by SyncConversationsPacket, which carries values resolved ahead of sending.
+     */
+    static void writeEntries(FriendlyByteBuf buf, StringTable strings, List<Entry> entries) {
+        buf.writeVarInt(entries.size());
+        for (Entry entry : entries) {
+            buf.writeUUID(entry.messageId());
+            strings.write(buf, entry.fieldKey());
+            strings.write(buf, entry.resolvedText());
+        }
+    }
+
+    static List<Entry> readEntries(FriendlyByteBuf buf, StringTable strings) {
+        int count = buf.readVarInt();
+        List<Entry> entries = new ArrayList<>(Math.min(count, ResolveTemplateRequestPacket.MAX_ENTRIES));
+        for (int i = 0; i < count; i++) {
+            UUID messageId = buf.readUUID();
+            String fieldKey = strings.read(buf);
+            String resolvedText = strings.read(buf);
+            entries.add(new Entry(messageId, fieldKey, resolvedText));
+        }
+        return entries;
+    }
+
+    static void applyClient(List<Entry> entries) {
+        for (Entry entry : entries) {
+            RuntimeTemplateResolver.updateFromServer(entry.messageId(), entry.fieldKey(), entry.resolvedText());
+        }
     }
 
     public static void handle(ResolveTemplateResponsePacket packet, Supplier<NetworkEvent.Context> ctx) {
@@ -43,6 +73,6 @@ public class ResolveTemplateResponsePacket {
     }
 
     private static void handleClient(ResolveTemplateResponsePacket packet) {
-        RuntimeTemplateResolver.updateFromServer(packet.messageId, packet.fieldKey, packet.resolvedText);
+        applyClient(packet.entries);
     }
 }
@@ -3,6 +3,7 @@ package com.yardenzamir.simchat.network;
 import java.util.UUID;
 import java.util.function.Supplier;
 
+import net.minecraft.ChatFormatting;
 import net.minecraft.network.chat.ClickEvent;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.HoverEvent;
@@ -43,37 +44,46 @@ public class ShareMessagePacket {
             TeamData team = manager.getPlayerTeam(player);
             if (team == null) return;
 
-            var stored = manager.getMessageById(team, packet.messageId);
-            if (stored == null) return;
-
-            CallbackContext callbackCtx = CallbackContext.of(player, team, stored.entityId());
-            String contentTemplate = stored.message().contentTemplate() != null
-                    ? stored.message().contentTemplate()
-                    : stored.message().content();
-            String resolvedContent = TemplateEngine.resolveWithPrefixes(contentTemplate, callbackCtx);
-
-            String senderTemplate = stored.message().senderNameTemplate() != null
-                    ? stored.message().senderNameTemplate()
-                    : stored.message().senderName();
-            String resolvedSender = TemplateEngine.resolveWithPrefixes(senderTemplate, callbackCtx);
-
-            net.minecraft.network.chat.MutableComponent header = Component.literal("[SimChat] ")
-                    .withStyle(Style.EMPTY.withColor(0x88AAFF));
-            net.minecraft.network.chat.MutableComponent sender = Component.literal(resolvedSender + ": ")
-                    .withStyle(Style.EMPTY.withColor(0xFFFFFF));
-            net.minecraft.network.chat.MutableComponent body = Component.literal(resolvedContent)
-                    .withStyle(Style.EMPTY.withColor(0xCCCCCC));
-
-            net.minecraft.network.chat.MutableComponent linked = header.append(sender).append(body)
-                    .withStyle(Style.EMPTY
-                            .withClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND,
-                                    "/simchat openmessage " + packet.messageId))
-                            .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT,
-                                    Component.literal(resolvedContent))));
-
-            for (ServerPlayer member : manager.getOnlineTeamMembers(team)) {
-                member.sendSystemMessage(linked);
-            }
+            // Look the message up on the read pool; resolve templates and chat on the server thread
+            manager.getMessageByIdAsync(team, packet.messageId).whenCompleteAsync((stored, error) -> {
+                if (player.hasDisconnected()) return;
+                if (error != null) {
+                    // The failed read is already logged; let the sharer know nothing was posted
+                    player.sendSystemMessage(Component.translatable("simchat.share.failed")
+                            .withStyle(ChatFormatting.RED));
+                    return;
+                }
+                if (stored == null) return;
+
+                CallbackContext callbackCtx = CallbackContext.of(player, team, stored.entityId());
+                String contentTemplate = stored.message().contentTemplate() != null
+                        ? stored.message().contentTemplate()
+                        : stored.message().content();
+                String resolvedContent = TemplateEngine.resolveWithPrefixes(contentTemplate, callbackCtx);
+
+                String senderTemplate = stored.message().senderNameTemplate() != null
+                        ? stored.message().senderNameTemplate()
+                        : stored.message().senderName();
+                String resolvedSender = TemplateEngine.resolveWithPrefixes(senderTemplate, callbackCtx);
+
+                net.minecraft.network.chat.MutableComponent header = Component.literal("[SimChat] ")
+                        .withStyle(Style.EMPTY.withColor(0x88AAFF));
+                net.minecraft.network.chat.MutableComponent sender = Component.literal(resolvedSender + ": ")
+                        .withStyle(Style.EMPTY.withColor(0xFFFFFF));
+                net.minecraft.network.chat.MutableComponent body = Component.literal(resolvedContent)
+                        .withStyle(Style.EMPTY.withColor(0xCCCCCC));
+
+                net.minecraft.network.chat.MutableComponent linked = header.append(sender).append(body)
+                        .withStyle(Style.EMPTY
+                                .withClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND,
+                                        "/simchat openmessage " + packet.messageId))
+                                .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT,
+                                        Component.literal(resolvedContent))));
+
+                for (ServerPlayer member : manager.getOnlineTeamMembers(team)) {
+                    member.sendSystemMessage(linked);
+                }
+            }, player.server);
         });
         ctx.get().setPacketHandled(true);
     }
@@ -0,0 +1,411 @@
+package com.yardenzamir.simchat.network;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.EventPriority;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.network.NetworkDirection;
+import net.minecraftforge.network.PacketDistributor;
+import net.minecraftforge.server.ServerLifecycleHooks;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.yardenzamir.simchat.SimChatMod;
+import com.yardenzamir.simchat.data.ChatMessage;
+import com.yardenzamir.simchat.team.SimChatTeamManager;
+import com.yardenzamir.simchat.team.TeamData;
+
+/**
+ * Per-player queue of outgoing SimChat packets, flushed in order at the end of each server tick.
+ * Adjacent message ranges for one conversation merge into a single packet, a typing indicator
+ * switched on and off within the tick is never sent unless the client already shows it, and a
+ * full team snapshot drops the queued updates it replaces. Entries queued for several players are
+ * encoded once per flush, and one queued by a team's whole online membership is sent through the
+ * {@link NetworkHandler#TEAM} distributor. Runtime template values resolved for one recipient (see
+ * TemplatePreResolver) go ahead in their own packet.
+ */
+@Mod.EventBusSubscriber(modid = SimChatMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class SimChatOutbox {
+
+    // Only touched on the server thread
+    private static final Map<UUID, List<Outgoing>> queues = new LinkedHashMap<>();
+    // Estimated size at which message ranges stop merging, well under the 1 MiB clientbound packet
+    // limit since the estimate can run low for text of multi-byte characters
+    private static final long MAX_MERGED_RANGE_BYTES = 256 * 1024;
+
+    // Conversations each player's client was last told are typing
+    private static final Map<UUID, Set<String>> typingShown = new HashMap<>();
+
+    /**
+     * Queues a packet that doesn't interact with other entries (toasts, screen requests).
+     */
+    public static void send(ServerPlayer player, Object packet) {
+        queue(player).add(new Other(packet, false));
+    }
+
+    /**
+     * Queues a packet carrying team state (deltas, sync pages). Message ranges don't merge across it,
+     * and a later full snapshot drops it.
+     */
+    public static void sendTeamState(ServerPlayer player, Object packet) {
+        queue(player).add(new Other(packet, true));
+    }
+
+    /**
+     * Queues a full team snapshot, dropping queued team state, message ranges and typing updates.
+     */
+    public static void sendSnapshot(ServerPlayer player, SyncTeamMetadataPacket packet) {
+        List<Outgoing> queue = queue(player);
+        queue.removeIf(queued -> queued instanceof MessageRange || queued instanceof Typing
+                || queued instanceof Snapshot || (queued instanceof Other other && other.teamState()));
+        queue.add(new Snapshot(packet));
+    }
+
+    /**
+     * Queues messages for a conversation, merging them into a queued range they touch or overlap up to a size limit.
+     */
+    public static void sendMessages(ServerPlayer player, String entityId, List<ChatMessage> messages,
+                                    int totalCount, int startIndex) {
+        List<Outgoing> queue = queue(player);
+        for (int i = queue.size() - 1; i >= 0; i--) {
+            Outgoing queued = queue.get(i);
+            if (queued instanceof MessageRange range && range.entityId().equals(entityId)) {
+                MessageRange merged = range.merge(messages, totalCount, startIndex);
+                if (merged != null) {
+                    queue.remove(i);
+                    queue.add(merged);
+                    return;
+                }
+                break;
+            }
+            if (!isTransparent(queued)) {
+                break;
+            }
+        }
+        queue.add(new MessageRange(entityId, startIndex, totalCount, List.copyOf(messages)));
+    }
+
+    /**
+     * Queues a typing indicator change, replacing a queued one for the same conversation.
+     */
+    public static void sendTyping(ServerPlayer player, String entityId, boolean typing) {
+        List<Outgoing> queue = queue(player);
+        for (int i = queue.size() - 1; i >= 0; i--) {
+            Outgoing queued = queue.get(i);
+            if (queued instanceof Typing previous && previous.entityId().equals(entityId)) {
+                queue.remove(i);
+                if (previous.typing() && !typing && !isTypingShown(player.getUUID(), entityId)) {
+                    // Switched on and off within the tick; the client never needs to see either
+                    return;
+                }
+                break;
+            }
+            if (!isTransparent(queued)) {
+                break;
+            }
+        }
+        queue.add(new Typing(entityId, typing));
+    }
+
+    private static boolean isTypingShown(UUID playerId, String entityId) {
+        Set<String> shown = typingShown.get(playerId);
+        return shown != null && shown.contains(entityId);
+    }
+
+    // Tracks what the client shows as typing once an entry is sent
+    private static void recordSent(UUID playerId, Outgoing outgoing) {
+        if (outgoing instanceof Typing typing) {
+            if (typing.typing()) {
+                typingShown.computeIfAbsent(playerId, id -> new HashSet<>()).add(typing.entityId());
+            } else {
+                forgetTyping(playerId, typing.entityId());
+            }
+        } else if (outgoing instanceof Snapshot) {
+            // The client rebuilds its team without typing state
+            typingShown.remove(playerId);
+        } else if (outgoing instanceof Other other && other.packet() instanceof NewMessagePacket toast) {
+            // A new message clears the sender's typing state on the client
+            forgetTyping(playerId, toast.getMessage().entityId());
+        }
+    }
+
+    private static void forgetTyping(UUID playerId, String entityId) {
+        Set<String> shown = typingShown.get(playerId);
+        if (shown != null && shown.remove(entityId) && shown.isEmpty()) {
+            typingShown.remove(playerId);
+        }
+    }
+
+    private static List<Outgoing> queue(ServerPlayer player) {
+        return queues.computeIfAbsent(player.getUUID(), id -> new ArrayList<>());
+    }
+
+    // Entries that later message ranges and typing updates may be reordered past
+    private static boolean isTransparent(Outgoing queued) {
+        return queued instanceof MessageRange || queued instanceof Typing;
+    }
+
+    // After TeamSyncScheduler and other tick handlers have queued their packets
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || queues.isEmpty()) return;
+
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if (server == null) return;
+
+        List<Recipient> recipients = new ArrayList<>(queues.size());
+        for (Map.Entry<UUID, List<Outgoing>> entry : queues.entrySet()) {
+            ServerPlayer player = server.getPlayerList().getPlayer(entry.getKey());
+            if (player != null) {
+                recipients.add(new Recipient(player, entry.getValue()));
+            }
+        }
+        queues.clear();
+
+        Map<Outgoing, TeamBroadcast> broadcasts = findTeamBroadcasts(server, recipients);
+        Map<Outgoing, Packet<?>> encoded = new HashMap<>();
+        Deque<Recipient> ready = new ArrayDeque<>(recipients);
+        while (!ready.isEmpty()) {
+            while (!ready.isEmpty()) {
+                flushUntilBroadcast(ready.poll(), broadcasts, encoded, ready);
+            }
+            // Holders reached some broadcast in different orders; send what they wait on to each of them
+            for (TeamBroadcast broadcast : List.copyOf(broadcasts.values())) {
+                if (broadcast.waiting.isEmpty()) {
+                    continue;
+                }
+                broadcasts.remove(broadcast.entry);
+                for (Recipient waiting : broadcast.waiting) {
+                    send(waiting, broadcast.entry, encoded);
+                    ready.add(waiting);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a player's entries in order until one that goes to their whole team, which is sent
+     * through {@link NetworkHandler#TEAM} once every member's queue has reached it.
+     */
+    private static void flushUntilBroadcast(Recipient recipient, Map<Outgoing, TeamBroadcast> broadcasts,
+                                            Map<Outgoing, Packet<?>> encoded, Deque<Recipient> ready) {
+        while (recipient.next < recipient.queue.size()) {
+            Outgoing outgoing = recipient.queue.get(recipient.next);
+            List<ResolveTemplateResponsePacket.Entry> resolved =
+                    resolveTemplates(recipient.player, outgoing, recipient.syncedMessages);
+            if (!resolved.isEmpty()) {
+                // Applied before the messages become visible, so they render without a template request
+                NetworkHandler.CHANNEL.send(PacketDistributor.PLAYER.with(() -> recipient.player),
+                        new ResolveTemplateResponsePacket(resolved));
+            }
+
+            TeamBroadcast broadcast = broadcasts.get(outgoing);
+            if (broadcast == null) {
+                send(recipient, outgoing, encoded);
+                continue;
+            }
+            broadcast.waiting.add(recipient);
+            if (broadcast.waiting.size() < broadcast.holders) {
+                return;
+            }
+            broadcasts.remove(outgoing);
+            NetworkHandler.CHANNEL.send(NetworkHandler.TEAM.with(() -> broadcast.team), outgoing.toPacket());
+            for (Recipient member : broadcast.waiting) {
+                recordSent(member.player.getUUID(), outgoing);
+                member.next++;
+                if (member != recipient) {
+                    ready.add(member);
+                }
+            }
+        }
+    }
+
+    private static void send(Recipient recipient, Outgoing outgoing, Map<Outgoing, Packet<?>> encoded) {
+        recipient.player.connection.send(encoded.computeIfAbsent(outgoing, key ->
+                NetworkHandler.CHANNEL.toVanillaPacket(key.toPacket(), NetworkDirection.PLAY_TO_CLIENT)));
+        recordSent(recipient.player.getUUID(), outgoing);
+        recipient.next++;
+    }
+
+    /**
+     * Entries queued once by every online member of a team, and by no one else.
+     */
+    private static Map<Outgoing, TeamBroadcast> findTeamBroadcasts(MinecraftServer server, List<Recipient> recipients) {
+        Map<Outgoing, List<Recipient>> holders = new HashMap<>();
+        Set<Outgoing> repeated = new HashSet<>();
+        for (Recipient recipient : recipients) {
+            Set<Outgoing> seen = new HashSet<>();
+            for (Outgoing outgoing : recipient.queue) {
+                if (!seen.add(outgoing)) {
+                    repeated.add(outgoing);
+                }
+                holders.computeIfAbsent(outgoing, key -> new ArrayList<>()).add(recipient);
+            }
+        }
+
+        SimChatTeamManager manager = SimChatTeamManager.get(server);
+        Map<Outgoing, TeamBroadcast> broadcasts = new HashMap<>();
+        for (Map.Entry<Outgoing, List<Recipient>> entry : holders.entrySet()) {
+            List<Recipient> holding = entry.getValue();
+            if (holding.size() < 2 || repeated.contains(entry.getKey())) {
+                continue;
+            }
+            TeamData team = manager.getPlayerTeam(holding.get(0).player);
+            if (team == null) {
+                continue;
+            }
+            Set<UUID> members = new HashSet<>();
+            for (ServerPlayer member : manager.getOnlineTeamMembers(team)) {
+                members.add(member.getUUID());
+            }
+            boolean wholeTeam = members.size() == holding.size();
+            for (Recipient recipient : holding) {
+                wholeTeam &= members.contains(recipient.player.getUUID());
+            }
+            if (wholeTeam) {
+                broadcasts.put(entry.getKey(), new TeamBroadcast(entry.getKey(), team, holding.size()));
+            }
+        }
+        return broadcasts;
+    }
+
+    private static final class Recipient {
+        final ServerPlayer player;
+        final List<Outgoing> queue;
+        final Set<UUID> syncedMessages = new HashSet<>();
+        int next = 0; // Position of the first entry not yet sent
+
+        Recipient(ServerPlayer player, List<Outgoing> queue) {
+            this.player = player;
+            this.queue = queue;
+        }
+    }
+
+    private static final class TeamBroadcast {
+        final Outgoing entry;
+        final TeamData team;
+        final int holders;
+        final List<Recipient> waiting = new ArrayList<>(); // Members whose queue has reached it
+
+        TeamBroadcast(Outgoing entry, TeamData team, int holders) {
+            this.entry = entry;
+            this.team = team;
+            this.holders = holders;
+        }
+    }
+
+    /**
+     * Runtime template values of the messages in an entry, resolved for the recipient.
+     * These are per player, so they travel apart from the shared message packet.
+     */
+    private static List<ResolveTemplateResponsePacket.Entry> resolveTemplates(ServerPlayer player, Outgoing outgoing,
+                                                                              Set<UUID> syncedMessages) {
+        if (outgoing instanceof MessageRange range) {
+            List<ChatMessage> unsynced = new ArrayList<>(range.messages().size());
+            for (ChatMessage message : range.messages()) {
+                if (syncedMessages.add(message.messageId())) {
+                    unsynced.add(message);
+                }
+            }
+            return TemplatePreResolver.resolve(player, unsynced);
+        }
+        // A toast for a message synced earlier in this flush already has its values on the client
+        if (outgoing instanceof Other other && other.packet() instanceof NewMessagePacket toast
+                && syncedMessages.add(toast.getMessage().messageId())) {
+            return TemplatePreResolver.resolve(player, List.of(toast.getMessage()));
+        }
+        return List.of();
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLogout(PlayerEvent.PlayerLoggedOutEvent event) {
+        queues.remove(event.getEntity().getUUID());
+        typingShown.remove(event.getEntity().getUUID());
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        queues.clear();
+        typingShown.clear();
+    }
+
+    // Records compare by value, and packets and messages by identity, so an entry queued
+    // for several players (or merged the same way for each) is encoded once per flush
+    private sealed interface Outgoing permits MessageRange, Typing, Snapshot, Other {
+        Object toPacket();
+    }
+
+    private record MessageRange(String entityId, int startIndex, int totalCount,
+                                List<ChatMessage> messages) implements Outgoing {
+        /**
+         * Combines with a newer range; the newer messages win where they overlap. The total count
+         * never goes down, as an older page loaded in the background may be merged after a live append.
+         *
+         * @return null if the ranges leave a gap between them or the merged range would be too large
+         */
+        @Nullable MessageRange merge(List<ChatMessage> newer, int newTotalCount, int newStartIndex) {
+            int end = startIndex + messages.size();
+            int newEnd = newStartIndex + newer.size();
+            if (newStartIndex > end || newEnd < startIndex) {
+                return null;
+            }
+            int mergedStart = Math.min(startIndex, newStartIndex);
+            int mergedEnd = Math.max(end, newEnd);
+            List<ChatMessage> merged = new ArrayList<>(mergedEnd - mergedStart);
+            long mergedBytes = 0;
+            for (int index = mergedStart; index < mergedEnd; index++) {
+                ChatMessage message = index >= newStartIndex && index < newEnd
+                        ? newer.get(index - newStartIndex)
+                        : messages.get(index - startIndex);
+                mergedBytes += message.estimatedSizeBytes();
+                if (mergedBytes > MAX_MERGED_RANGE_BYTES) {
+                    return null;
+                }
+                merged.add(message);
+            }
+            return new MessageRange(entityId, mergedStart, Math.max(totalCount, newTotalCount), merged);
+        }
+
+        @Override
+        public Object toPacket() {
+            return new SyncMessagesPacket(entityId, messages, totalCount, startIndex);
+        }
+    }
+
+    private record Typing(String entityId, boolean typing) implements Outgoing {
+        @Override
+        public Object toPacket() {
+            return new TypingPacket(entityId, typing);
+        }
+    }
+
+    private record Snapshot(SyncTeamMetadataPacket packet) implements Outgoing {
+        @Override
+        public Object toPacket() {
+            return packet;
+        }
+    }
+
+    private record Other(Object packet, boolean teamState) implements Outgoing {
+        @Override
+        public Object toPacket() {
+            return packet;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.yardenzamir.simchat.network;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.network.NetworkEvent;
+
+import com.yardenzamir.simchat.SimChatMod;
+import com.yardenzamir.simchat.client.ClientTeamCache;
+import com.yardenzamir.simchat.data.ChatMessage;
+import com.yardenzamir.simchat.data.StringTable;
+
+/**
+ * Syncs the message windows of several conversations in one deflate-compressed payload.
+ * Used while streaming a team sync; build with {@link #split} so every packet stays under the payload limit.
+ */
+public class SyncConversationsPacket {
+
+    // Uncompressed bytes per packet; deflate never grows data by more than a few bytes per block,
+    // so this keeps the compressed payload well under the 1 MiB clientbound custom payload limit
+    private static final int MAX_RAW_CHUNK_BYTES = 512 * 1024;
+    // Upper bound on a record header besides the entity ID: three varints
+    private static final int RECORD_HEADER_BYTES = 15;
+    private static final int MAX_UTF_BYTES_PER_CHAR = 3;
+
+    /**
+     * One conversation's slice of messages, starting at startIndex of totalCount.
+     */
+    public record ConversationPage(String entityId, List<ChatMessage> messages, int totalCount, int startIndex) {}
+
+    private final int rawLength;
+    private final byte[] compressed;
+
+    private SyncConversationsPacket(int rawLength, byte[] compressed) {
+        this.rawLength = rawLength;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Packs pages into as few packets as the size limit allows, keeping their order.
+     * A page too large for one packet is split into consecutive slices.
+     *
+     * @param resolved runtime template fields resolved for the recipient, sent with the first packet
+     */
+    public static List<SyncConversationsPacket> split(List<ConversationPage> pages,
+                                                      List<ResolveTemplateResponsePacket.Entry> resolved) {
+        List<SyncConversationsPacket> packets = new ArrayList<>();
+        FriendlyByteBuf chunk = new FriendlyByteBuf(Unpooled.buffer());
+        try {
+            ResolveTemplateResponsePacket.writeEntries(chunk, StringTable.INLINE, resolved);
+            int chunkStart = chunk.writerIndex();
+            for (ConversationPage page : pages) {
+                List<byte[]> encoded = encodeMessages(page.messages());
+                int headerBytes = RECORD_HEADER_BYTES + page.entityId().length() * MAX_UTF_BYTES_PER_CHAR;
+                int from = 0;
+                do {
+                    int to = from;
+                    int size = headerBytes;
+                    while (to < encoded.size()
+                            && (chunk.writerIndex() + size + encoded.get(to).length <= MAX_RAW_CHUNK_BYTES
+                                || (to == from && chunk.writerIndex() == chunkStart))) {
+                        size += encoded.get(to).length;
+                        to++;
+                    }
+                    if (to == from && from < encoded.size()) {
+                        // Nothing more fits; start a new packet
+                        packets.add(compress(chunk));
+                        chunk.clear();
+                        ResolveTemplateResponsePacket.writeEntries(chunk, StringTable.INLINE, List.of());
+                        chunkStart = chunk.writerIndex();
+                        continue;
+                    }
+
+                    chunk.writeUtf(page.entityId());
+                    chunk.writeVarInt(page.totalCount());
+                    chunk.writeVarInt(page.startIndex() + from);
+                    chunk.writeVarInt(to - from);
+                    for (int i = from; i < to; i++) {
+                        chunk.writeBytes(encoded.get(i));
+                    }
+                    from = to;
+                } while (from < encoded.size());
+            }
+            if (chunk.writerIndex() > chunkStart) {
+                packets.add(compress(chunk));
+            }
+        } finally {
+            chunk.release();
+        }
+        return packets;
+    }
+
+    private static List<byte[]> encodeMessages(List<ChatMessage> messages) {
+        List<byte[]> encoded = new ArrayList<>(messages.size());
+        FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.buffer(256));
+        try {
+            for (ChatMessage message : messages) {
+                buf.clear();
+                message.writeBinary(buf);
+                byte[] bytes = new byte[buf.readableBytes()];
+                buf.readBytes(bytes);
+                encoded.add(bytes);
+            }
+        } finally {
+            buf.release();
+        }
+        return encoded;
+    }
+
+    private static SyncConversationsPacket compress(FriendlyByteBuf chunk) {
+        byte[] raw = new byte[chunk.readableBytes()];
+        chunk.getBytes(chunk.readerIndex(), raw);
+
+        // Favor speed: this runs on the server thread
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return new SyncConversationsPacket(raw.length, out.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static void encode(SyncConversationsPacket packet, FriendlyByteBuf buf) {
+        buf.writeVarInt(packet.rawLength);
+        buf.writeByteArray(packet.compressed);
+    }
+
+    public static SyncConversationsPacket decode(FriendlyByteBuf buf) {
+        int rawLength = buf.readVarInt();
+        if (rawLength < 0 || rawLength > MAX_RAW_CHUNK_BYTES * 2) {
+            throw new IllegalArgumentException("Conversation sync payload too large: " + rawLength);
+        }
+        return new SyncConversationsPacket(rawLength, buf.readByteArray());
+    }
+
+    public static void handle(SyncConversationsPacket packet, Supplier<NetworkEvent.Context> ctx) {
+        ctx.get().enqueueWork(() -> {
+            DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> handleClient(packet));
+        });
+        ctx.get().setPacketHandled(true);
+    }
+
+    private static byte[] inflate(SyncConversationsPacket packet) throws DataFormatException {
+        byte[] raw = new byte[packet.rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(packet.compressed);
+            int read = 0;
+            while (read < raw.length && !inflater.finished()) {
+                int length = inflater.inflate(raw, read, raw.length - read);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += length;
+            }
+            if (read != raw.length) {
+                throw new DataFormatException("Expected " + raw.length + " bytes, inflated " + read);
+            }
+        } finally {
+            inflater.end();
+        }
+        return raw;
+    }
+
+    private static List<ConversationPage> readPages(FriendlyByteBuf buf) {
+        List<ConversationPage> pages = new ArrayList<>();
+        while (buf.isReadable()) {
+            String entityId = buf.readUtf();
+            int totalCount = buf.readVarInt();
+            int startIndex = buf.readVarInt();
+            int count = buf.readVarInt();
+            List<ChatMessage> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                messages.add(ChatMessage.readBinary(buf));
+            }
+            pages.add(new ConversationPage(entityId, messages, totalCount, startIndex));
+        }
+        return pages;
+    }
+
+    private static void handleClient(SyncConversationsPacket packet) {
+        List<ResolveTemplateResponsePacket.Entry> resolved;
+        List<ConversationPage> pages;
+        try {
+            FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.wrappedBuffer(inflate(packet)));
+            resolved = ResolveTemplateResponsePacket.readEntries(buf, StringTable.INLINE);
+            pages = readPages(buf);
+        } catch (DataFormatException | RuntimeException e) {
+            SimChatMod.LOGGER.error("Failed to read conversation sync payload", e);
+            return;
+        }
+
+        // Before the messages become visible, so they render without a template request
+        ResolveTemplateResponsePacket.applyClient(resolved);
+
+        for (ConversationPage page : pages) {
+            ClientTeamCache.addMessages(page.entityId(), page.messages(), page.totalCount(),
+                                         page.startIndex(), page.startIndex() > 0);
+        }
+
+        // Notify chat screen if it's open
+        net.minecraft.client.Minecraft mc = net.minecraft.client.Minecraft.getInstance();
+        if (mc.screen instanceof com.yardenzamir.simchat.client.screen.ChatScreen chatScreen) {
+            chatScreen.refreshMessages();
+        }
+    }
+}
@@ -4,8 +4,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Supplier;
 
-import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.ListTag;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.fml.DistExecutor;
@@ -13,6 +11,7 @@ import net.minecraftforge.network.NetworkEvent;
 
 import com.yardenzamir.simchat.client.ClientTeamCache;
 import com.yardenzamir.simchat.data.ChatMessage;
+import com.yardenzamir.simchat.data.StringTable;
 
 /**
  * Syncs a batch of messages for a specific conversation.
@@ -21,49 +20,47 @@ import com.yardenzamir.simchat.data.ChatMessage;
 public class SyncMessagesPacket {
 
     private final String entityId;
-    private final ListTag messagesNbt;
+    private final List<ChatMessage> messages;
     private final int totalCount;
     private final int startIndex; // Index of first message in this batch
     private final boolean hasOlder; // Are there older messages before this batch?
 
     public SyncMessagesPacket(String entityId, List<ChatMessage> messages, int totalCount, int startIndex) {
-        this.entityId = entityId;
-        this.totalCount = totalCount;
-        this.startIndex = startIndex;
-        this.hasOlder = startIndex > 0; // Has older messages if batch doesn't start at 0
-
-        this.messagesNbt = new ListTag();
-        for (ChatMessage message : messages) {
-            this.messagesNbt.add(message.toNbt());
-        }
+        this(entityId, messages, totalCount, startIndex, startIndex > 0); // Has older messages if batch doesn't start at 0
     }
 
-    private SyncMessagesPacket(String entityId, ListTag messagesNbt, int totalCount, int startIndex, boolean hasOlder) {
+    private SyncMessagesPacket(String entityId, List<ChatMessage> messages, int totalCount, int startIndex, boolean hasOlder) {
         this.entityId = entityId;
-        this.messagesNbt = messagesNbt;
+        this.messages = messages;
         this.totalCount = totalCount;
         this.startIndex = startIndex;
         this.hasOlder = hasOlder;
     }
 
     public static void encode(SyncMessagesPacket packet, FriendlyByteBuf buf) {
-        buf.writeUtf(packet.entityId);
-        buf.writeNbt(new CompoundTag() {{
-            put("messages", packet.messagesNbt);
-        }});
-        buf.writeInt(packet.totalCount);
-        buf.writeInt(packet.startIndex);
+        StringTable strings = StringTable.create();
+        strings.write(buf, packet.entityId);
+        buf.writeVarInt(packet.messages.size());
+        for (ChatMessage message : packet.messages) {
+            message.writeBinary(buf, strings);
+        }
+        buf.writeVarInt(packet.totalCount);
+        buf.writeVarInt(packet.startIndex);
         buf.writeBoolean(packet.hasOlder);
     }
 
     public static SyncMessagesPacket decode(FriendlyByteBuf buf) {
-        String entityId = buf.readUtf();
-        CompoundTag tag = buf.readNbt();
-        ListTag messagesNbt = tag != null ? tag.getList("messages", 10) : new ListTag();
-        int totalCount = buf.readInt();
-        int startIndex = buf.readInt();
+        StringTable strings = StringTable.create();
+        String entityId = strings.read(buf);
+        int count = buf.readVarInt();
+        List<ChatMessage> messages = new ArrayList<>(Math.min(count, buf.readableBytes()));
+        for (int i = 0; i < count; i++) {
+            messages.add(ChatMessage.readBinary(buf, strings));
+        }
+        int totalCount = buf.readVarInt();
+        int startIndex = buf.readVarInt();
         boolean hasOlder = buf.readBoolean();
-        return new SyncMessagesPacket(entityId, messagesNbt, totalCount, startIndex, hasOlder);
+        return new SyncMessagesPacket(entityId, messages, totalCount, startIndex, hasOlder);
     }
 
     public static void handle(SyncMessagesPacket packet, Supplier<NetworkEvent.Context> ctx) {
@@ -74,13 +71,7 @@ public class SyncMessagesPacket {
     }
 
     private static void handleClient(SyncMessagesPacket packet) {
-        List<ChatMessage> messages = new ArrayList<>();
-        for (int i = 0; i < packet.messagesNbt.size(); i++) {
-            CompoundTag messageTag = packet.messagesNbt.getCompound(i);
-            messages.add(ChatMessage.fromNbt(messageTag));
-        }
-
-        ClientTeamCache.addMessages(packet.entityId, messages, packet.totalCount,
+        ClientTeamCache.addMessages(packet.entityId, packet.messages, packet.totalCount,
                                      packet.startIndex, packet.hasOlder);
 
         // Notify chat screen if it's open
@@ -0,0 +1,217 @@
+package com.yardenzamir.simchat.network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.network.NetworkEvent;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.yardenzamir.simchat.client.ClientTeamCache;
+import com.yardenzamir.simchat.data.StringTable;
+import com.yardenzamir.simchat.team.TeamData;
+
+/**
+ * Brings a client's team metadata from one revision to another without resending the full snapshot.
+ * Carries only changed title/color, data keys, membership, message counts and conversation order.
+ * A client that doesn't hold the base revision asks for a full sync instead.
+ */
+public class TeamMetadataDeltaPacket {
+
+    private static final byte DATA_BOOLEAN = 0;
+    private static final byte DATA_NUMBER = 1;
+    private static final byte DATA_STRING = 2;
+
+    private final String teamId;
+    private final int baseRevision;
+    private final int revision;
+    private final @Nullable String title; // Null if unchanged
+    private final int color; // -1 if unchanged
+    private final Map<String, Object> setData;
+    private final List<String> removedData;
+    private final List<UUID> addedMembers;
+    private final List<UUID> removedMembers;
+    private final List<String> removedEntities;
+    private final Map<String, Integer> changedCounts; // Client drops loaded pages of these conversations
+    private final List<String> movedToEnd; // Conversations to (re)append, oldest activity first
+
+    private TeamMetadataDeltaPacket(String teamId, int baseRevision, int revision,
+                                    @Nullable String title, int color,
+                                    Map<String, Object> setData, List<String> removedData,
+                                    List<UUID> addedMembers, List<UUID> removedMembers,
+                                    List<String> removedEntities, Map<String, Integer> changedCounts,
+                                    List<String> movedToEnd) {
+        this.teamId = teamId;
+        this.baseRevision = baseRevision;
+        this.revision = revision;
+        this.title = title;
+        this.color = color;
+        this.setData = setData;
+        this.removedData = removedData;
+        this.addedMembers = addedMembers;
+        this.removedMembers = removedMembers;
+        this.removedEntities = removedEntities;
+        this.changedCounts = changedCounts;
+        this.movedToEnd = movedToEnd;
+    }
+
+    /**
+     * Computes the delta from what a player was last sent to the team's current state.
+     *
+     * @param entityOrder current conversations from least to most recently active
+     * @param counts current message count per conversation
+     */
+    static TeamMetadataDeltaPacket between(TeamSyncScheduler.SyncedState previous, TeamData team,
+                                           List<String> entityOrder, Map<String, Integer> counts) {
+        String title = team.getTitle().equals(previous.title()) ? null : team.getTitle();
+        int color = team.getColor() == previous.color() ? -1 : team.getColor();
+
+        Map<String, Object> data = team.getAllData();
+        Map<String, Object> setData = new HashMap<>();
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            if (!Objects.equals(entry.getValue(), previous.data().get(entry.getKey()))) {
+                setData.put(entry.getKey(), entry.getValue());
+            }
+        }
+        List<String> removedData = new ArrayList<>();
+        for (String key : previous.data().keySet()) {
+            if (!data.containsKey(key)) {
+                removedData.add(key);
+            }
+        }
+
+        Set<UUID> members = team.getMembers();
+        List<UUID> addedMembers = new ArrayList<>();
+        for (UUID member : members) {
+            if (!previous.members().contains(member)) {
+                addedMembers.add(member);
+            }
+        }
+        List<UUID> removedMembers = new ArrayList<>();
+        for (UUID member : previous.members()) {
+            if (!members.contains(member)) {
+                removedMembers.add(member);
+            }
+        }
+
+        List<String> removedEntities = new ArrayList<>();
+        for (String entityId : previous.entityOrder()) {
+            if (!counts.containsKey(entityId)) {
+                removedEntities.add(entityId);
+            }
+        }
+
+        Map<String, Integer> changedCounts = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (!entry.getValue().equals(previous.counts().get(entry.getKey()))) {
+                changedCounts.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        // Activity only moves conversations to the end, so the old order (minus removals) and the
+        // new one share a prefix once moved conversations are taken out; everything after it is moved.
+        int matched = 0;
+        for (String entityId : previous.entityOrder()) {
+            if (matched < entityOrder.size() && entityOrder.get(matched).equals(entityId)) {
+                matched++;
+            }
+        }
+        List<String> movedToEnd = new ArrayList<>(entityOrder.subList(matched, entityOrder.size()));
+
+        return new TeamMetadataDeltaPacket(team.getId(), previous.revision(), team.getRevision(),
+                title, color, setData, removedData, addedMembers, removedMembers,
+                removedEntities, changedCounts, movedToEnd);
+    }
+
+    public boolean isEmpty() {
+        return title == null && color < 0 && setData.isEmpty() && removedData.isEmpty()
+                && addedMembers.isEmpty() && removedMembers.isEmpty() && removedEntities.isEmpty()
+                && changedCounts.isEmpty() && movedToEnd.isEmpty();
+    }
+
+    public Set<String> getChangedEntities() {
+        return new HashSet<>(changedCounts.keySet());
+    }
+
+    public static void encode(TeamMetadataDeltaPacket packet, FriendlyByteBuf buf) {
+        StringTable strings = StringTable.create();
+        buf.writeUtf(packet.teamId);
+        buf.writeVarInt(packet.baseRevision);
+        buf.writeVarInt(packet.revision);
+        buf.writeNullable(packet.title, FriendlyByteBuf::writeUtf);
+        buf.writeInt(packet.color);
+        buf.writeMap(packet.setData, FriendlyByteBuf::writeUtf, TeamMetadataDeltaPacket::writeDataValue);
+        buf.writeCollection(packet.removedData, FriendlyByteBuf::writeUtf);
+        buf.writeCollection(packet.addedMembers, FriendlyByteBuf::writeUUID);
+        buf.writeCollection(packet.removedMembers, FriendlyByteBuf::writeUUID);
+        buf.writeCollection(packet.removedEntities, strings::write);
+        buf.writeMap(packet.changedCounts, strings::write, FriendlyByteBuf::writeVarInt);
+        buf.writeCollection(packet.movedToEnd, strings::write);
+    }
+
+    public static TeamMetadataDeltaPacket decode(FriendlyByteBuf buf) {
+        StringTable strings = StringTable.create();
+        return new TeamMetadataDeltaPacket(
+            buf.readUtf(),
+            buf.readVarInt(),
+            buf.readVarInt(),
+            buf.readNullable(FriendlyByteBuf::readUtf),
+            buf.readInt(),
+            buf.readMap(FriendlyByteBuf::readUtf, TeamMetadataDeltaPacket::readDataValue),
+            buf.readList(FriendlyByteBuf::readUtf),
+            buf.readList(FriendlyByteBuf::readUUID),
+            buf.readList(FriendlyByteBuf::readUUID),
+            buf.readList(strings::read),
+            buf.readMap(strings::read, FriendlyByteBuf::readVarInt),
+            buf.readList(strings::read)
+        );
+    }
+
+    static void writeDataValue(FriendlyByteBuf buf, Object value) {
+        if (value instanceof Boolean bool) {
+            buf.writeByte(DATA_BOOLEAN);
+            buf.writeBoolean(bool);
+        } else if (value instanceof Number number) {
+            buf.writeByte(DATA_NUMBER);
+            buf.writeDouble(number.doubleValue());
+        } else {
+            buf.writeByte(DATA_STRING);
+            buf.writeUtf(String.valueOf(value));
+        }
+    }
+
+    static Object readDataValue(FriendlyByteBuf buf) {
+        return switch (buf.readByte()) {
+            case DATA_BOOLEAN -> buf.readBoolean();
+            case DATA_NUMBER -> buf.readDouble();
+            default -> buf.readUtf();
+        };
+    }
+
+    public static void handle(TeamMetadataDeltaPacket packet, Supplier<NetworkEvent.Context> ctx) {
+        ctx.get().enqueueWork(() -> {
+            DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> handleClient(packet));
+        });
+        ctx.get().setPacketHandled(true);
+    }
+
+    private static void handleClient(TeamMetadataDeltaPacket packet) {
+        boolean applied = ClientTeamCache.applyTeamDelta(packet.teamId, packet.baseRevision, packet.revision,
+                packet.title, packet.color, packet.setData, packet.removedData,
+                packet.addedMembers, packet.removedMembers,
+                packet.removedEntities, packet.changedCounts, packet.movedToEnd);
+        if (!applied && ClientTeamCache.beginFullSyncRequest()) {
+            NetworkHandler.requestTeamSync();
+        }
+    }
+}
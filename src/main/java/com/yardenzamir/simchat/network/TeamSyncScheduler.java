@@ -0,0 +1,219 @@
+package com.yardenzamir.simchat.network;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.server.ServerLifecycleHooks;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.yardenzamir.simchat.SimChatMod;
+import com.yardenzamir.simchat.config.ServerConfig;
+import com.yardenzamir.simchat.data.ChatMessage;
+import com.yardenzamir.simchat.team.SimChatTeamManager;
+import com.yardenzamir.simchat.team.TeamData;
+
+/**
+ * Streams the recent-history stage of a team sync after its metadata has been sent,
+ * and remembers what each player was last synced with so resyncs can be skipped or reduced to a delta.
+ * Conversations are loaded on the storage read pool, most recently active first, and sent
+ * in that order from the server tick. A few conversations are loaded per player at a time,
+ * and those ready each tick go out bundled in one SyncConversationsPacket.
+ */
+@Mod.EventBusSubscriber(modid = SimChatMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class TeamSyncScheduler {
+
+    // Only touched on the server thread
+    private static final Map<UUID, SyncJob> jobs = new HashMap<>();
+    private static final Map<UUID, SyncedState> synced = new HashMap<>();
+
+    /**
+     * Queues initial message pages for a player.
+     *
+     * @param entityIds conversations to page in, in priority order, most recently active first
+     * @param totalCounts message counts as sent in the metadata
+     * @param replace whether to drop a sync still in progress for the player rather than extend it
+     */
+    public static void schedule(ServerPlayer player, TeamData team, List<String> entityIds,
+                                Map<String, Integer> totalCounts, boolean replace) {
+        SyncJob existing = jobs.get(player.getUUID());
+        SyncJob job = !replace && existing != null && existing.team == team
+                ? existing
+                : new SyncJob(player.getUUID(), team);
+
+        int initialCount = ServerConfig.INITIAL_SYNC_MESSAGE_COUNT.get();
+        if (initialCount > 0) {
+            for (String entityId : entityIds) {
+                int totalCount = totalCounts.getOrDefault(entityId, 0);
+                if (totalCount > 0) {
+                    int startIndex = Math.max(0, totalCount - initialCount);
+                    job.queued.add(new PageRequest(entityId, startIndex, totalCount - startIndex));
+                }
+            }
+        }
+
+        if (job.queued.isEmpty() && job.inFlight.isEmpty()) {
+            jobs.remove(player.getUUID());
+        } else {
+            jobs.put(player.getUUID(), job);
+        }
+    }
+
+    public static void cancel(UUID playerId) {
+        jobs.remove(playerId);
+    }
+
+    /**
+     * Remembers the metadata a player was just sent, as the base for later deltas.
+     */
+    static void recordSynced(ServerPlayer player, SyncedState state) {
+        synced.put(player.getUUID(), state);
+    }
+
+    /**
+     * Whether the player was last synced with this team at its current revision.
+     */
+    public static boolean isUpToDate(ServerPlayer player, TeamData team) {
+        SyncedState state = synced.get(player.getUUID());
+        return state != null && state.teamId().equals(team.getId()) && state.revision() == team.getRevision();
+    }
+
+    /**
+     * The metadata the player's client currently holds for this team, or null if it was never synced with it.
+     */
+    static @Nullable SyncedState getSyncedState(ServerPlayer player, TeamData team) {
+        SyncedState state = synced.get(player.getUUID());
+        return state != null && state.teamId().equals(team.getId()) ? state : null;
+    }
+
+    /**
+     * Tracks the total count the client was sent with a message page.
+     */
+    public static void recordSentCount(ServerPlayer player, String entityId, int totalCount) {
+        SyncedState state = synced.get(player.getUUID());
+        if (state != null) {
+            state.counts().put(entityId, totalCount);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || jobs.isEmpty()) return;
+
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if (server == null) return;
+
+        SimChatTeamManager manager = SimChatTeamManager.get(server);
+        int perTick = ServerConfig.SYNC_CONVERSATIONS_PER_TICK.get();
+
+        Iterator<SyncJob> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            SyncJob job = it.next();
+            ServerPlayer player = server.getPlayerList().getPlayer(job.playerId);
+            if (player == null || manager.getPlayerTeam(player) != job.team) {
+                it.remove();
+                continue;
+            }
+            if (job.advance(player, manager, perTick)) {
+                it.remove();
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLogout(PlayerEvent.PlayerLoggedOutEvent event) {
+        cancel(event.getEntity().getUUID());
+        synced.remove(event.getEntity().getUUID());
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        jobs.clear();
+        synced.clear();
+    }
+
+    /**
+     * Team metadata as last sent to one player. Counts are kept current as message pages are sent.
+     *
+     * @param entityOrder conversations from least to most recently active, as the client orders them
+     */
+    record SyncedState(String teamId, int revision, String title, int color, Set<UUID> members,
+                       List<String> entityOrder, Map<String, Integer> counts, Map<String, Object> data) {
+        static SyncedState of(TeamData team, List<String> entityOrder, Map<String, Integer> counts) {
+            return new SyncedState(team.getId(), team.getRevision(), team.getTitle(), team.getColor(),
+                    new HashSet<>(team.getMembers()), new ArrayList<>(entityOrder), new HashMap<>(counts),
+                    new HashMap<>(team.getAllData()));
+        }
+    }
+
+    private record PageRequest(String entityId, int startIndex, int count) {}
+
+    private record PageLoad(PageRequest request, CompletableFuture<List<ChatMessage>> messages) {}
+
+    private static class SyncJob {
+        final UUID playerId;
+        final TeamData team;
+        final Deque<PageRequest> queued = new ArrayDeque<>();
+        final Deque<PageLoad> inFlight = new ArrayDeque<>();
+
+        SyncJob(UUID playerId, TeamData team) {
+            this.playerId = playerId;
+            this.team = team;
+        }
+
+        /**
+         * Sends completed pages in priority order, then starts loads up to the in-flight limit.
+         *
+         * @return true once every page has been sent
+         */
+        boolean advance(ServerPlayer player, SimChatTeamManager manager, int perTick) {
+            List<SyncConversationsPacket.ConversationPage> pages = new ArrayList<>();
+            while (pages.size() < perTick && !inFlight.isEmpty() && inFlight.peekFirst().messages().isDone()) {
+                SyncConversationsPacket.ConversationPage page = toPage(manager, inFlight.pollFirst());
+                if (page != null) {
+                    pages.add(page);
+                }
+            }
+            if (!pages.isEmpty()) {
+                NetworkHandler.sendConversations(player, pages);
+            }
+
+            while (inFlight.size() < perTick && !queued.isEmpty()) {
+                PageRequest request = queued.pollFirst();
+                inFlight.addLast(new PageLoad(request,
+                        manager.loadMessagesAsync(team, request.entityId(), request.startIndex(), request.count())));
+            }
+            return queued.isEmpty() && inFlight.isEmpty();
+        }
+
+        private @Nullable SyncConversationsPacket.ConversationPage toPage(SimChatTeamManager manager, PageLoad load) {
+            if (load.messages().isCompletedExceptionally()) {
+                return null;
+            }
+            List<ChatMessage> messages = load.messages().join();
+            // Newer messages may have arrived while loading; a cleared conversation makes the page stale
+            PageRequest request = load.request();
+            int totalCount = manager.getMessageCount(team, request.entityId());
+            if (totalCount < request.startIndex() + messages.size()) {
+                return null;
+            }
+            return new SyncConversationsPacket.ConversationPage(request.entityId(), messages, totalCount, request.startIndex());
+        }
+    }
+}
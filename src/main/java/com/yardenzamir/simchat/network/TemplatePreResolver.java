@@ -0,0 +1,112 @@
+package com.yardenzamir.simchat.network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.yardenzamir.simchat.SimChatMod;
+import com.yardenzamir.simchat.condition.CallbackContext;
+import com.yardenzamir.simchat.condition.TemplateEngine;
+import com.yardenzamir.simchat.config.ServerConfig;
+import com.yardenzamir.simchat.data.ChatAction;
+import com.yardenzamir.simchat.data.ChatMessage;
+import com.yardenzamir.simchat.team.SimChatTeamManager;
+import com.yardenzamir.simchat.team.TeamData;
+
+/**
+ * Resolves server-only template placeholders of outgoing messages for their recipient, so the
+ * client can render them on the first frame instead of asking with a ResolveTemplateRequestPacket.
+ * Limited to a number of fields per tick; fields past the budget are requested by the client as before.
+ */
+@Mod.EventBusSubscriber(modid = SimChatMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class TemplatePreResolver {
+
+    // Only touched on the server thread
+    private static int remainingThisTick;
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.START) {
+            remainingThisTick = ServerConfig.PRE_RESOLVE_FIELDS_PER_TICK.get();
+        }
+    }
+
+    /**
+     * Resolves the fields of messages the client can't resolve itself, newest message first.
+     * Field keys match the ones RuntimeTemplateResolver caches under.
+     */
+    public static List<ResolveTemplateResponsePacket.Entry> resolve(ServerPlayer player, List<ChatMessage> messages) {
+        if (messages.isEmpty() || remainingThisTick <= 0 || !ServerConfig.PRE_RESOLVE_TEMPLATES.get()) {
+            return List.of();
+        }
+
+        TeamData team = null;
+        Map<String, CallbackContext> contexts = new HashMap<>();
+        Map<String, Map<String, String>> resolvedByEntity = new HashMap<>();
+        List<ResolveTemplateResponsePacket.Entry> entries = new ArrayList<>();
+        for (int i = messages.size() - 1; i >= 0 && remainingThisTick > 0; i--) {
+            ChatMessage message = messages.get(i);
+            List<Field> fields = serverFields(message);
+            if (fields.isEmpty()) {
+                continue;
+            }
+            if (team == null) {
+                team = SimChatTeamManager.get(player.server).getPlayerTeam(player);
+            }
+            TeamData finalTeam = team;
+            Map<String, String> resolved = resolvedByEntity.computeIfAbsent(message.entityId(), id -> new HashMap<>());
+            for (Field field : fields) {
+                if (remainingThisTick <= 0) {
+                    break;
+                }
+                String value = resolved.get(field.template());
+                if (value == null) {
+                    CallbackContext ctx = contexts.computeIfAbsent(message.entityId(),
+                            id -> new CallbackContext(player, finalTeam, id));
+                    value = resolveField(field.template(), ctx);
+                    resolved.put(field.template(), value);
+                    remainingThisTick--;
+                }
+                entries.add(new ResolveTemplateResponsePacket.Entry(message.messageId(), field.key(), value));
+            }
+        }
+        return entries;
+    }
+
+    private record Field(String key, String template) {}
+
+    private static List<Field> serverFields(ChatMessage message) {
+        List<Field> fields = new ArrayList<>();
+        addIfServerOnly(fields, "content", message.contentTemplate());
+        addIfServerOnly(fields, "senderName", message.senderNameTemplate());
+        addIfServerOnly(fields, "senderSubtitle", message.senderSubtitleTemplate());
+        List<ChatAction> actions = message.actions();
+        for (int i = 0; i < actions.size(); i++) {
+            addIfServerOnly(fields, "actionLabel:" + i, actions.get(i).labelTemplate());
+        }
+        return fields;
+    }
+
+    private static void addIfServerOnly(List<Field> fields, String fieldKey, @Nullable String template) {
+        if (TemplateEngine.needsServerResolution(template)) {
+            fields.add(new Field(fieldKey, template));
+        }
+    }
+
+    private static String resolveField(String template, CallbackContext ctx) {
+        try {
+            return TemplateEngine.resolveWithPrefixes(template, ctx);
+        } catch (Exception e) {
+            SimChatMod.LOGGER.error("Failed to pre-resolve template: {}", template, e);
+            return template;
+        }
+    }
+}
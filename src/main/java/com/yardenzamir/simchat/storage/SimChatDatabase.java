@@ -1,6 +1,7 @@
 package com.yardenzamir.simchat.storage;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
@@ -9,36 +10,81 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
+import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.world.level.storage.LevelResource;
 
-import com.google.gson.Gson;
+import io.netty.buffer.Unpooled;
+
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import com.google.gson.JsonSyntaxException;
 
 import org.jetbrains.annotations.Nullable;
 
 import com.yardenzamir.simchat.SimChatMod;
 import com.yardenzamir.simchat.data.ChatMessage;
+import com.yardenzamir.simchat.data.StringTable;
 import com.yardenzamir.simchat.team.TeamData;
 
 public class SimChatDatabase {
 
-    private static final Gson GSON = new Gson();
+    private static final String DATA_TYPE_BOOLEAN = "boolean";
+    private static final String DATA_TYPE_NUMBER = "number";
+    private static final String DATA_TYPE_STRING = "string";
+
+    /**
+     * Leading byte of binary message payloads. Legacy JSON payloads always start with '{',
+     * so the first byte tells the two formats apart.
+     */
+    private static final byte PAYLOAD_FORMAT_BINARY_V1 = 1;
+
+    // Payload columns are BLOB: they hold binary payloads, and legacy JSON text until it is migrated
+    private static final String CONVERSATIONS_COLUMNS = "(" +
+            "team_id TEXT NOT NULL, " +
+            "entity_id TEXT NOT NULL, " +
+            "message_count INTEGER NOT NULL, " +
+            "last_message_index INTEGER, " +
+            "last_message_id TEXT, " +
+            "last_message BLOB, " +
+            "last_entity_message_id TEXT, " +
+            "last_entity_message BLOB, " +
+            "PRIMARY KEY (team_id, entity_id)" +
+            ")";
+    private static final String MESSAGES_COLUMNS = "(" +
+            "team_id TEXT NOT NULL, " +
+            "entity_id TEXT NOT NULL, " +
+            "message_index INTEGER NOT NULL, " +
+            "message_id TEXT NOT NULL, " +
+            "world_day INTEGER NOT NULL, " +
+            "payload BLOB NOT NULL, " +
+            "PRIMARY KEY (team_id, entity_id, message_index)" +
+            ")";
 
     private final Path databasePath;
+    private final boolean cacheStatements;
     private @Nullable Connection connection;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
 
     public SimChatDatabase(MinecraftServer server) {
-        this.databasePath = server.getWorldPath(LevelResource.ROOT).resolve("data/simchat/simchat.db");
+        this(server.getWorldPath(LevelResource.ROOT).resolve("data/simchat/simchat.db"), true);
+    }
+
+    /**
+     * @param cacheStatements false to prepare every statement on each use, as before the statement
+     *                        cache; only benchmarks turn it off
+     */
+    SimChatDatabase(Path databasePath, boolean cacheStatements) {
+        this.databasePath = databasePath;
+        this.cacheStatements = cacheStatements;
     }
 
     public void open() {
@@ -49,17 +95,43 @@ public class SimChatDatabase {
                 statement.execute("PRAGMA foreign_keys = ON");
                 statement.execute("PRAGMA journal_mode = WAL");
                 statement.execute("PRAGMA synchronous = NORMAL");
+                statement.execute("PRAGMA busy_timeout = 5000");
             }
             createTables();
+            migrateTeamDataJson();
         } catch (SQLException | IOException e) {
             SimChatMod.LOGGER.error("Failed to open SQLite database", e);
         }
     }
 
+    /**
+     * Opens a query-only connection. The database must already have been created by {@link #open()};
+     * WAL mode is persistent, so reads here never block on the writer.
+     */
+    public void openReadOnly() {
+        try {
+            connection = DriverManager.getConnection("jdbc:sqlite:" + databasePath);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA busy_timeout = 5000");
+                statement.execute("PRAGMA query_only = ON");
+            }
+        } catch (SQLException e) {
+            SimChatMod.LOGGER.error("Failed to open read-only SQLite connection", e);
+        }
+    }
+
     public void close() {
         if (connection == null) {
             return;
         }
+        for (PreparedStatement stmt : statements.values()) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                SimChatMod.LOGGER.error("Failed to close prepared statement", e);
+            }
+        }
+        statements.clear();
         try {
             connection.close();
         } catch (SQLException e) {
@@ -78,12 +150,14 @@ public class SimChatDatabase {
         if (connection == null) {
             return mappings;
         }
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT player_id, team_id FROM player_team"
-        )) {
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                mappings.put(UUID.fromString(rs.getString("player_id")), rs.getString("team_id"));
+        try {
+            PreparedStatement stmt = prepare(
+                    "SELECT player_id, team_id FROM player_team"
+            );
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    mappings.put(UUID.fromString(rs.getString("player_id")), rs.getString("team_id"));
+                }
             }
         } catch (SQLException e) {
             SimChatMod.LOGGER.error("Failed to load player-team mappings", e);
@@ -91,79 +165,93 @@ public class SimChatDatabase {
         return mappings;
     }
 
-    public void setPlayerTeam(UUID playerId, String teamId) {
-        if (connection == null) {
-            return;
+    // === Writes ===
+    // Write methods run inside the caller's transaction and propagate failures,
+    // so SimChatStorageWriter can group-commit them and roll back a failed batch.
+
+    /**
+     * Runs the given writes in a single transaction.
+     */
+    public void runInTransaction(SqlWork work) throws SQLException {
+        Connection conn = requireConnection();
+        conn.setAutoCommit(false);
+        try {
+            work.run(this);
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            rollback();
+            throw e;
+        } finally {
+            resetAutoCommit();
         }
-        try (PreparedStatement stmt = connection.prepareStatement(
+    }
+
+    public void setPlayerTeam(UUID playerId, String teamId) throws SQLException {
+        PreparedStatement stmt = prepare(
                 "INSERT INTO player_team (player_id, team_id) VALUES (?, ?) " +
                         "ON CONFLICT(player_id) DO UPDATE SET team_id = excluded.team_id"
-        )) {
-            stmt.setString(1, playerId.toString());
-            stmt.setString(2, teamId);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            SimChatMod.LOGGER.error("Failed to update player-team mapping", e);
-        }
+        );
+        stmt.setString(1, playerId.toString());
+        stmt.setString(2, teamId);
+        stmt.executeUpdate();
     }
 
-    public void removePlayerTeam(UUID playerId) {
-        if (connection == null) {
-            return;
-        }
-        try (PreparedStatement stmt = connection.prepareStatement(
+    public void removePlayerTeam(UUID playerId) throws SQLException {
+        PreparedStatement stmt = prepare(
                 "DELETE FROM player_team WHERE player_id = ?"
-        )) {
-            stmt.setString(1, playerId.toString());
+        );
+        stmt.setString(1, playerId.toString());
+        stmt.executeUpdate();
+    }
+
+    /**
+     * Writes the changed parts of a team: the teams row, changed data keys and member additions/removals.
+     */
+    public void saveTeamChanges(TeamChanges changes) throws SQLException {
+        if (changes.metadataChanged()) {
+            PreparedStatement stmt = prepare(
+                    "INSERT INTO teams (team_id, title, color) VALUES (?, ?, ?) " +
+                            "ON CONFLICT(team_id) DO UPDATE SET title = excluded.title, color = excluded.color"
+            );
+            stmt.setString(1, changes.teamId());
+            stmt.setString(2, changes.title());
+            stmt.setInt(3, changes.color());
             stmt.executeUpdate();
-        } catch (SQLException e) {
-            SimChatMod.LOGGER.error("Failed to remove player-team mapping", e);
         }
-    }
 
-    public void upsertTeam(TeamData team) {
-        if (connection == null) {
-            return;
+        if (!changes.data().isEmpty()) {
+            updateTeamData(changes.teamId(), changes.data());
         }
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "INSERT INTO teams (team_id, title, color, data_json) VALUES (?, ?, ?, ?) " +
-                        "ON CONFLICT(team_id) DO UPDATE SET title = excluded.title, color = excluded.color, data_json = excluded.data_json"
-        )) {
-            stmt.setString(1, team.getId());
-            stmt.setString(2, team.getTitle());
-            stmt.setInt(3, team.getColor());
-            stmt.setString(4, encodeTeamData(team.getAllData()));
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            SimChatMod.LOGGER.error("Failed to upsert team {}", team.getId(), e);
+        if (!changes.addedMembers().isEmpty() || !changes.removedMembers().isEmpty()) {
+            updateTeamMembers(changes);
         }
-
-        updateTeamMembers(team);
     }
 
     public @Nullable TeamData loadTeam(String teamId) {
         if (connection == null) {
             return null;
         }
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT title, color, data_json FROM teams WHERE team_id = ?"
-        )) {
+        try {
+            PreparedStatement stmt = prepare(
+                    "SELECT title, color FROM teams WHERE team_id = ?"
+            );
             stmt.setString(1, teamId);
-            ResultSet rs = stmt.executeQuery();
-            if (!rs.next()) {
-                return null;
-            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
 
-            String title = rs.getString("title");
-            int color = rs.getInt("color");
-            String dataJson = rs.getString("data_json");
+                String title = rs.getString("title");
+                int color = rs.getInt("color");
 
-            TeamData team = new TeamData(teamId, title);
-            team.setColor(color);
-            decodeTeamData(dataJson, team);
-            loadTeamMembers(team);
-            loadConversationMetadata(team);
-            return team;
+                TeamData team = new TeamData(teamId, title);
+                team.setColor(color);
+                loadTeamData(team);
+                loadTeamMembers(team);
+                loadConversationMetadata(team);
+                team.markPersisted();
+                return team;
+            }
         } catch (SQLException e) {
             SimChatMod.LOGGER.error("Failed to load team {}", teamId, e);
             return null;
@@ -175,12 +263,14 @@ public class SimChatDatabase {
         if (connection == null) {
             return ids;
         }
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT team_id FROM teams"
-        )) {
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                ids.add(rs.getString("team_id"));
+        try {
+            PreparedStatement stmt = prepare(
+                    "SELECT team_id FROM teams"
+            );
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getString("team_id"));
+                }
             }
         } catch (SQLException e) {
             SimChatMod.LOGGER.error("Failed to load team ids", e);
@@ -192,72 +282,97 @@ public class SimChatDatabase {
         if (connection == null) {
             return false;
         }
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT team_id FROM teams WHERE team_id = ?"
-        )) {
+        try {
+            PreparedStatement stmt = prepare(
+                    "SELECT team_id FROM teams WHERE team_id = ?"
+            );
             stmt.setString(1, teamId);
-            ResultSet rs = stmt.executeQuery();
-            return rs.next();
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
         } catch (SQLException e) {
             SimChatMod.LOGGER.error("Failed to check team existence for {}", teamId, e);
             return false;
         }
     }
 
-    public int insertMessage(String teamId, ChatMessage message) {
-        if (connection == null) {
-            return -1;
+    /**
+     * Inserts a message at an index already reserved by the caller and advances the conversation row.
+     */
+    public void insertMessage(String teamId, int messageIndex, ChatMessage message) throws SQLException {
+        insertMessages(teamId, List.of(new StoredMessage(message.entityId(), messageIndex, message)));
+    }
+
+    /**
+     * Inserts messages at indices already reserved by the caller, in order.
+     * Each conversation row is created if needed and advanced once, to its newest message.
+     */
+    public void insertMessages(String teamId, List<StoredMessage> messages) throws SQLException {
+        if (messages.isEmpty()) {
+            return;
         }
-        int messageIndex = -1;
-        try {
-            connection.setAutoCommit(false);
-            messageIndex = getNextMessageIndex(teamId, message.entityId());
-
-            try (PreparedStatement stmt = connection.prepareStatement(
-                    "INSERT INTO messages (team_id, entity_id, message_index, message_id, world_day, payload) " +
-                            "VALUES (?, ?, ?, ?, ?, ?)"
-            )) {
-                stmt.setString(1, teamId);
-                stmt.setString(2, message.entityId());
-                stmt.setInt(3, messageIndex);
-                stmt.setString(4, message.messageId().toString());
-                stmt.setLong(5, message.worldDay());
-                stmt.setString(6, encodeMessage(message));
-                stmt.executeUpdate();
+
+        Map<String, StoredMessage> lastByEntity = new LinkedHashMap<>();
+        Map<String, ChatMessage> lastEntityMessageByEntity = new HashMap<>();
+        for (StoredMessage stored : messages) {
+            lastByEntity.put(stored.entityId(), stored);
+            if (!stored.message().isPlayerMessage()) {
+                lastEntityMessageByEntity.put(stored.entityId(), stored.message());
             }
+        }
 
-            boolean isPlayerMessage = message.isPlayerMessage();
-            String updateSql = isPlayerMessage
+        PreparedStatement ensureConversation = prepare(
+                "INSERT OR IGNORE INTO conversations (team_id, entity_id, message_count, last_message_index) VALUES (?, ?, 0, NULL)"
+        );
+        for (String entityId : lastByEntity.keySet()) {
+            ensureConversation.setString(1, teamId);
+            ensureConversation.setString(2, entityId);
+            ensureConversation.addBatch();
+        }
+        ensureConversation.executeBatch();
+
+        Map<UUID, byte[]> payloads = new HashMap<>();
+        PreparedStatement insertStmt = prepare(
+                "INSERT INTO messages (team_id, entity_id, message_index, message_id, world_day, payload) " +
+                        "VALUES (?, ?, ?, ?, ?, ?)"
+        );
+        for (StoredMessage stored : messages) {
+            ChatMessage message = stored.message();
+            byte[] payload = encodeMessage(message);
+            payloads.put(message.messageId(), payload);
+            insertStmt.setString(1, teamId);
+            insertStmt.setString(2, stored.entityId());
+            insertStmt.setInt(3, stored.messageIndex());
+            insertStmt.setString(4, message.messageId().toString());
+            insertStmt.setLong(5, message.worldDay());
+            insertStmt.setBytes(6, payload);
+            insertStmt.addBatch();
+        }
+        insertStmt.executeBatch();
+
+        for (StoredMessage last : lastByEntity.values()) {
+            ChatMessage lastEntityMessage = lastEntityMessageByEntity.get(last.entityId());
+            String updateSql = lastEntityMessage == null
                     ? "UPDATE conversations SET message_count = ?, last_message_index = ?, last_message_id = ?, last_message = ? " +
                     "WHERE team_id = ? AND entity_id = ?"
                     : "UPDATE conversations SET message_count = ?, last_message_index = ?, last_message_id = ?, last_message = ?, " +
                     "last_entity_message_id = ?, last_entity_message = ? WHERE team_id = ? AND entity_id = ?";
-            try (PreparedStatement stmt = connection.prepareStatement(updateSql)) {
-                stmt.setInt(1, messageIndex + 1);
-                stmt.setInt(2, messageIndex);
-                stmt.setString(3, message.messageId().toString());
-                stmt.setString(4, encodeMessage(message));
-                if (isPlayerMessage) {
-                    stmt.setString(5, teamId);
-                    stmt.setString(6, message.entityId());
-                } else {
-                    stmt.setString(5, message.messageId().toString());
-                    stmt.setString(6, encodeMessage(message));
-                    stmt.setString(7, teamId);
-                    stmt.setString(8, message.entityId());
-                }
-                stmt.executeUpdate();
+            PreparedStatement updateStmt = prepare(updateSql);
+            updateStmt.setInt(1, last.messageIndex() + 1);
+            updateStmt.setInt(2, last.messageIndex());
+            updateStmt.setString(3, last.message().messageId().toString());
+            updateStmt.setBytes(4, payloads.get(last.message().messageId()));
+            if (lastEntityMessage == null) {
+                updateStmt.setString(5, teamId);
+                updateStmt.setString(6, last.entityId());
+            } else {
+                updateStmt.setString(5, lastEntityMessage.messageId().toString());
+                updateStmt.setBytes(6, payloads.get(lastEntityMessage.messageId()));
+                updateStmt.setString(7, teamId);
+                updateStmt.setString(8, last.entityId());
             }
-
-            connection.commit();
-        } catch (SQLException e) {
-            SimChatMod.LOGGER.error("Failed to insert message for team {}", teamId, e);
-            messageIndex = -1;
-            rollback();
-        } finally {
-            resetAutoCommit();
+            updateStmt.executeUpdate();
         }
-        return messageIndex;
     }
 
     public List<ChatMessage> loadMessages(String teamId, String entityId, int startIndex, int count) {
@@ -265,19 +380,21 @@ public class SimChatDatabase {
         if (connection == null || count <= 0) {
             return messages;
         }
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT payload FROM messages WHERE team_id = ? AND entity_id = ? AND message_index >= ? " +
-                        "ORDER BY message_index ASC LIMIT ?"
-        )) {
+        try {
+            PreparedStatement stmt = prepare(
+                    "SELECT payload FROM messages WHERE team_id = ? AND entity_id = ? AND message_index >= ? " +
+                            "ORDER BY message_index ASC LIMIT ?"
+            );
             stmt.setString(1, teamId);
             stmt.setString(2, entityId);
             stmt.setInt(3, startIndex);
             stmt.setInt(4, count);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                ChatMessage message = decodeMessage(rs.getString("payload"));
-                if (message != null) {
-                    messages.add(message);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ChatMessage message = decodeMessage(rs.getBytes("payload"));
+                    if (message != null) {
+                        messages.add(message);
+                    }
                 }
             }
         } catch (SQLException e) {
@@ -286,45 +403,20 @@ public class SimChatDatabase {
         return messages;
     }
 
-    public List<ChatMessage> loadOlderMessages(String teamId, String entityId, int beforeIndex, int count) {
-        List<ChatMessage> messages = new ArrayList<>();
-        if (connection == null || count <= 0) {
-            return messages;
-        }
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT payload FROM messages WHERE team_id = ? AND entity_id = ? AND message_index < ? " +
-                        "ORDER BY message_index DESC LIMIT ?"
-        )) {
-            stmt.setString(1, teamId);
-            stmt.setString(2, entityId);
-            stmt.setInt(3, beforeIndex);
-            stmt.setInt(4, count);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                ChatMessage message = decodeMessage(rs.getString("payload"));
-                if (message != null) {
-                    messages.add(message);
-                }
-            }
-        } catch (SQLException e) {
-            SimChatMod.LOGGER.error("Failed to load older messages for team {}", teamId, e);
-        }
-        java.util.Collections.reverse(messages);
-        return messages;
-    }
-
     public int getMessageCount(String teamId, String entityId) {
         if (connection == null) {
             return 0;
         }
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT message_count FROM conversations WHERE team_id = ? AND entity_id = ?"
-        )) {
+        try {
+            PreparedStatement stmt = prepare(
+                    "SELECT message_count FROM conversations WHERE team_id = ? AND entity_id = ?"
+            );
             stmt.setString(1, teamId);
             stmt.setString(2, entityId);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt("message_count");
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt("message_count");
+                }
             }
         } catch (SQLException e) {
             SimChatMod.LOGGER.error("Failed to get message count for team {}", teamId, e);
@@ -336,155 +428,256 @@ public class SimChatDatabase {
         if (connection == null) {
             return null;
         }
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT entity_id, message_index, payload FROM messages WHERE team_id = ? AND message_id = ?"
-        )) {
+        try {
+            PreparedStatement stmt = prepare(
+                    "SELECT entity_id, message_index, payload FROM messages WHERE team_id = ? AND message_id = ?"
+            );
             stmt.setString(1, teamId);
             stmt.setString(2, messageId.toString());
-            ResultSet rs = stmt.executeQuery();
-            if (!rs.next()) {
-                return null;
-            }
-            String entityId = rs.getString("entity_id");
-            int messageIndex = rs.getInt("message_index");
-            ChatMessage message = decodeMessage(rs.getString("payload"));
-            if (message == null) {
-                return null;
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                String entityId = rs.getString("entity_id");
+                int messageIndex = rs.getInt("message_index");
+                ChatMessage message = decodeMessage(rs.getBytes("payload"));
+                if (message == null) {
+                    return null;
+                }
+                return new StoredMessage(entityId, messageIndex, message);
             }
-            return new StoredMessage(entityId, messageIndex, message);
         } catch (SQLException e) {
             SimChatMod.LOGGER.error("Failed to load message {}", messageId, e);
             return null;
         }
     }
 
-    public boolean updateMessagePayload(String teamId, String entityId, int messageIndex, ChatMessage message) {
-        if (connection == null) {
-            return false;
-        }
-        try (PreparedStatement stmt = connection.prepareStatement(
+    public boolean updateMessagePayload(String teamId, String entityId, int messageIndex, ChatMessage message) throws SQLException {
+        PreparedStatement stmt = prepare(
                 "UPDATE messages SET payload = ? WHERE team_id = ? AND entity_id = ? AND message_index = ?"
-        )) {
-            stmt.setString(1, encodeMessage(message));
-            stmt.setString(2, teamId);
-            stmt.setString(3, entityId);
-            stmt.setInt(4, messageIndex);
-            return stmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            SimChatMod.LOGGER.error("Failed to update message payload for team {}", teamId, e);
-            return false;
-        }
+        );
+        stmt.setBytes(1, encodeMessage(message));
+        stmt.setString(2, teamId);
+        stmt.setString(3, entityId);
+        stmt.setInt(4, messageIndex);
+        return stmt.executeUpdate() > 0;
     }
 
-    public void clearConversation(String teamId, String entityId) {
-        if (connection == null) {
-            return;
-        }
-        try (PreparedStatement deleteMessages = connection.prepareStatement(
+    public void clearConversation(String teamId, String entityId) throws SQLException {
+        PreparedStatement deleteMessages = prepare(
                 "DELETE FROM messages WHERE team_id = ? AND entity_id = ?"
-        ); PreparedStatement deleteConversation = connection.prepareStatement(
+        );
+        PreparedStatement deleteConversation = prepare(
                 "DELETE FROM conversations WHERE team_id = ? AND entity_id = ?"
-        )) {
-            deleteMessages.setString(1, teamId);
-            deleteMessages.setString(2, entityId);
-            deleteMessages.executeUpdate();
-
-            deleteConversation.setString(1, teamId);
-            deleteConversation.setString(2, entityId);
-            deleteConversation.executeUpdate();
-        } catch (SQLException e) {
-            SimChatMod.LOGGER.error("Failed to clear conversation for team {}", teamId, e);
-        }
+        );
+        deleteMessages.setString(1, teamId);
+        deleteMessages.setString(2, entityId);
+        deleteMessages.executeUpdate();
+
+        deleteConversation.setString(1, teamId);
+        deleteConversation.setString(2, entityId);
+        deleteConversation.executeUpdate();
     }
 
-    public void clearAllConversations(String teamId) {
-        if (connection == null) {
-            return;
-        }
-        try (PreparedStatement deleteMessages = connection.prepareStatement(
+    public void clearAllConversations(String teamId) throws SQLException {
+        PreparedStatement deleteMessages = prepare(
                 "DELETE FROM messages WHERE team_id = ?"
-        ); PreparedStatement deleteConversations = connection.prepareStatement(
+        );
+        PreparedStatement deleteConversations = prepare(
                 "DELETE FROM conversations WHERE team_id = ?"
-        )) {
-            deleteMessages.setString(1, teamId);
-            deleteMessages.executeUpdate();
+        );
+        deleteMessages.setString(1, teamId);
+        deleteMessages.executeUpdate();
 
-            deleteConversations.setString(1, teamId);
-            deleteConversations.executeUpdate();
-        } catch (SQLException e) {
-            SimChatMod.LOGGER.error("Failed to clear conversations for team {}", teamId, e);
-        }
+        deleteConversations.setString(1, teamId);
+        deleteConversations.executeUpdate();
     }
 
-    public void updateConversationLastMessage(String teamId, String entityId, int messageIndex, ChatMessage message) {
-        if (connection == null) {
-            return;
-        }
+    public void updateConversationLastMessage(String teamId, String entityId, int messageIndex, ChatMessage message) throws SQLException {
         String updateSql = message.isPlayerMessage()
                 ? "UPDATE conversations SET last_message_index = ?, last_message_id = ?, last_message = ? " +
                 "WHERE team_id = ? AND entity_id = ?"
                 : "UPDATE conversations SET last_message_index = ?, last_message_id = ?, last_message = ?, " +
                 "last_entity_message_id = ?, last_entity_message = ? WHERE team_id = ? AND entity_id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(updateSql)) {
-            stmt.setInt(1, messageIndex);
-            stmt.setString(2, message.messageId().toString());
-            stmt.setString(3, encodeMessage(message));
-            if (message.isPlayerMessage()) {
-                stmt.setString(4, teamId);
-                stmt.setString(5, entityId);
+        PreparedStatement stmt = prepare(updateSql);
+        stmt.setInt(1, messageIndex);
+        stmt.setString(2, message.messageId().toString());
+        stmt.setBytes(3, encodeMessage(message));
+        if (message.isPlayerMessage()) {
+            stmt.setString(4, teamId);
+            stmt.setString(5, entityId);
+        } else {
+            stmt.setString(4, message.messageId().toString());
+            stmt.setBytes(5, encodeMessage(message));
+            stmt.setString(6, teamId);
+            stmt.setString(7, entityId);
+        }
+        stmt.executeUpdate();
+    }
+
+    public void updateLastEntityMessageIfMatch(String teamId, String entityId, ChatMessage message) throws SQLException {
+        PreparedStatement stmt = prepare(
+                "UPDATE conversations SET last_entity_message = ? WHERE team_id = ? AND entity_id = ? AND last_entity_message_id = ?"
+        );
+        stmt.setBytes(1, encodeMessage(message));
+        stmt.setString(2, teamId);
+        stmt.setString(3, entityId);
+        stmt.setString(4, message.messageId().toString());
+        stmt.executeUpdate();
+    }
+
+    // === Legacy Payload Migration ===
+
+    /**
+     * Rewrites up to batchSize legacy JSON message payloads after the given rowid in the binary format.
+     *
+     * @return the last rowid examined, or -1 once no legacy rows remain past the cursor
+     */
+    public long migrateLegacyMessages(long afterRowId, int batchSize) throws SQLException {
+        long lastRowId = -1;
+        PreparedStatement select = prepare(
+                "SELECT rowid, payload FROM messages WHERE rowid > ? AND typeof(payload) = 'text' ORDER BY rowid LIMIT ?"
+        );
+        PreparedStatement update = prepare(
+                "UPDATE messages SET payload = ? WHERE rowid = ?"
+        );
+        select.setLong(1, afterRowId);
+        select.setInt(2, batchSize);
+        try (ResultSet rs = select.executeQuery()) {
+            while (rs.next()) {
+                lastRowId = rs.getLong(1);
+                ChatMessage message = decodeMessage(rs.getBytes(2));
+                if (message == null) {
+                    continue;
+                }
+                update.setBytes(1, encodeMessage(message));
+                update.setLong(2, lastRowId);
+                update.addBatch();
+            }
+            update.executeBatch();
+        }
+        return lastRowId;
+    }
+
+    /**
+     * Rewrites legacy JSON last-message snapshots in the conversations table.
+     *
+     * @return number of conversations rewritten
+     */
+    public int migrateLegacyConversations() throws SQLException {
+        int migrated = 0;
+        PreparedStatement select = prepare(
+                "SELECT team_id, entity_id, last_message, last_entity_message FROM conversations " +
+                        "WHERE typeof(last_message) = 'text' OR typeof(last_entity_message) = 'text'"
+        );
+        PreparedStatement update = prepare(
+                "UPDATE conversations SET last_message = ?, last_entity_message = ? WHERE team_id = ? AND entity_id = ?"
+        );
+        try (ResultSet rs = select.executeQuery()) {
+            while (rs.next()) {
+                ChatMessage lastMessage = decodeMessage(rs.getBytes("last_message"));
+                ChatMessage lastEntityMessage = decodeMessage(rs.getBytes("last_entity_message"));
+                update.setBytes(1, lastMessage != null ? encodeMessage(lastMessage) : null);
+                update.setBytes(2, lastEntityMessage != null ? encodeMessage(lastEntityMessage) : null);
+                update.setString(3, rs.getString("team_id"));
+                update.setString(4, rs.getString("entity_id"));
+                update.addBatch();
+                migrated++;
+            }
+            update.executeBatch();
+        }
+        return migrated;
+    }
+
+    private void updateTeamData(String teamId, Map<String, Object> data) throws SQLException {
+        PreparedStatement upsertStmt = prepare(
+                "INSERT INTO team_data (team_id, key, type, num_value, str_value) VALUES (?, ?, ?, ?, ?) " +
+                        "ON CONFLICT(team_id, key) DO UPDATE SET type = excluded.type, " +
+                        "num_value = excluded.num_value, str_value = excluded.str_value"
+        );
+        PreparedStatement deleteStmt = prepare(
+                "DELETE FROM team_data WHERE team_id = ? AND key = ?"
+        );
+        boolean upserts = false;
+        boolean deletes = false;
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) {
+                deleteStmt.setString(1, teamId);
+                deleteStmt.setString(2, entry.getKey());
+                deleteStmt.addBatch();
+                deletes = true;
+                continue;
+            }
+            upsertStmt.setString(1, teamId);
+            upsertStmt.setString(2, entry.getKey());
+            if (value instanceof Boolean bool) {
+                upsertStmt.setString(3, DATA_TYPE_BOOLEAN);
+                upsertStmt.setDouble(4, bool ? 1 : 0);
+                upsertStmt.setNull(5, Types.VARCHAR);
+            } else if (value instanceof Number number) {
+                upsertStmt.setString(3, DATA_TYPE_NUMBER);
+                upsertStmt.setDouble(4, number.doubleValue());
+                upsertStmt.setNull(5, Types.VARCHAR);
             } else {
-                stmt.setString(4, message.messageId().toString());
-                stmt.setString(5, encodeMessage(message));
-                stmt.setString(6, teamId);
-                stmt.setString(7, entityId);
+                upsertStmt.setString(3, DATA_TYPE_STRING);
+                upsertStmt.setNull(4, Types.DOUBLE);
+                upsertStmt.setString(5, value.toString());
             }
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            SimChatMod.LOGGER.error("Failed to update conversation last message for team {}", teamId, e);
+            upsertStmt.addBatch();
+            upserts = true;
+        }
+        if (upserts) {
+            upsertStmt.executeBatch();
+        }
+        if (deletes) {
+            deleteStmt.executeBatch();
         }
     }
 
-    public void updateLastEntityMessageIfMatch(String teamId, String entityId, ChatMessage message) {
-        if (connection == null) {
-            return;
+    private void updateTeamMembers(TeamChanges changes) throws SQLException {
+        PreparedStatement deleteStmt = prepare(
+                "DELETE FROM team_members WHERE team_id = ? AND member_id = ?"
+        );
+        for (UUID member : changes.removedMembers()) {
+            deleteStmt.setString(1, changes.teamId());
+            deleteStmt.setString(2, member.toString());
+            deleteStmt.addBatch();
         }
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "UPDATE conversations SET last_entity_message = ? WHERE team_id = ? AND entity_id = ? AND last_entity_message_id = ?"
-        )) {
-            stmt.setString(1, encodeMessage(message));
-            stmt.setString(2, teamId);
-            stmt.setString(3, entityId);
-            stmt.setString(4, message.messageId().toString());
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            SimChatMod.LOGGER.error("Failed to update last entity message for team {}", teamId, e);
+        deleteStmt.executeBatch();
+
+        PreparedStatement insertStmt = prepare(
+                "INSERT OR IGNORE INTO team_members (team_id, member_id) VALUES (?, ?)"
+        );
+        for (UUID member : changes.addedMembers()) {
+            insertStmt.setString(1, changes.teamId());
+            insertStmt.setString(2, member.toString());
+            insertStmt.addBatch();
         }
+        insertStmt.executeBatch();
     }
 
-    private void updateTeamMembers(TeamData team) {
+    private void loadTeamData(TeamData team) {
         if (connection == null) {
             return;
         }
-        try (PreparedStatement deleteStmt = connection.prepareStatement(
-                "DELETE FROM team_members WHERE team_id = ?"
-        )) {
-            deleteStmt.setString(1, team.getId());
-            deleteStmt.executeUpdate();
-        } catch (SQLException e) {
-            SimChatMod.LOGGER.error("Failed to clear team members for {}", team.getId(), e);
-        }
-
-        try (PreparedStatement insertStmt = connection.prepareStatement(
-                "INSERT INTO team_members (team_id, member_id) VALUES (?, ?)"
-        )) {
-            for (UUID member : team.getMembers()) {
-                insertStmt.setString(1, team.getId());
-                insertStmt.setString(2, member.toString());
-                insertStmt.addBatch();
+        try {
+            PreparedStatement stmt = prepare(
+                    "SELECT key, type, num_value, str_value FROM team_data WHERE team_id = ?"
+            );
+            stmt.setString(1, team.getId());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String key = rs.getString("key");
+                    switch (rs.getString("type")) {
+                        case DATA_TYPE_BOOLEAN -> team.setData(key, rs.getDouble("num_value") != 0);
+                        case DATA_TYPE_NUMBER -> team.setData(key, rs.getDouble("num_value"));
+                        default -> team.setData(key, rs.getString("str_value"));
+                    }
+                }
             }
-            insertStmt.executeBatch();
         } catch (SQLException e) {
-            SimChatMod.LOGGER.error("Failed to insert team members for {}", team.getId(), e);
+            SimChatMod.LOGGER.error("Failed to load team data for {}", team.getId(), e);
         }
     }
 
@@ -492,13 +685,15 @@ public class SimChatDatabase {
         if (connection == null) {
             return;
         }
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT member_id FROM team_members WHERE team_id = ?"
-        )) {
+        try {
+            PreparedStatement stmt = prepare(
+                    "SELECT member_id FROM team_members WHERE team_id = ?"
+            );
             stmt.setString(1, team.getId());
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                team.addMember(UUID.fromString(rs.getString("member_id")));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    team.addMember(UUID.fromString(rs.getString("member_id")));
+                }
             }
         } catch (SQLException e) {
             SimChatMod.LOGGER.error("Failed to load team members for {}", team.getId(), e);
@@ -509,93 +704,81 @@ public class SimChatDatabase {
         if (connection == null) {
             return;
         }
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT entity_id, message_count, last_message, last_entity_message FROM conversations WHERE team_id = ? " +
-                        "ORDER BY (last_message_index IS NULL), last_message_index ASC"
-        )) {
+        try {
+            PreparedStatement stmt = prepare(
+                    "SELECT entity_id, message_count, last_message, last_entity_message FROM conversations WHERE team_id = ? " +
+                            "ORDER BY (last_message_index IS NULL), last_message_index ASC"
+            );
             stmt.setString(1, team.getId());
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                String entityId = rs.getString("entity_id");
-                int messageCount = rs.getInt("message_count");
-                ChatMessage lastMessage = decodeMessage(rs.getString("last_message"));
-                ChatMessage lastEntityMessage = decodeMessage(rs.getString("last_entity_message"));
-                team.setConversationMeta(entityId, messageCount, lastMessage, lastEntityMessage);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String entityId = rs.getString("entity_id");
+                    int messageCount = rs.getInt("message_count");
+                    ChatMessage lastMessage = decodeMessage(rs.getBytes("last_message"));
+                    ChatMessage lastEntityMessage = decodeMessage(rs.getBytes("last_entity_message"));
+                    team.setConversationMeta(entityId, messageCount, lastMessage, lastEntityMessage);
+                }
             }
         } catch (SQLException e) {
             SimChatMod.LOGGER.error("Failed to load conversation metadata for {}", team.getId(), e);
         }
     }
 
-    private int getNextMessageIndex(String teamId, String entityId) throws SQLException {
-        int messageCount = 0;
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT message_count FROM conversations WHERE team_id = ? AND entity_id = ?"
-        )) {
-            stmt.setString(1, teamId);
-            stmt.setString(2, entityId);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                messageCount = rs.getInt("message_count");
-            } else {
-                try (PreparedStatement insert = connection.prepareStatement(
-                        "INSERT INTO conversations (team_id, entity_id, message_count, last_message_index) VALUES (?, ?, 0, NULL)"
-                )) {
-                    insert.setString(1, teamId);
-                    insert.setString(2, entityId);
-                    insert.executeUpdate();
-                }
-            }
-        }
-        return messageCount;
-    }
-
-    private static String encodeTeamData(Map<String, Object> data) {
-        JsonObject json = new JsonObject();
-        for (Map.Entry<String, Object> entry : data.entrySet()) {
-            Object value = entry.getValue();
-            if (value instanceof Number number) {
-                json.addProperty(entry.getKey(), number);
-            } else if (value instanceof Boolean bool) {
-                json.addProperty(entry.getKey(), bool);
-            } else if (value != null) {
-                json.addProperty(entry.getKey(), value.toString());
-            }
-        }
-        return GSON.toJson(json);
-    }
-
-    private static void decodeTeamData(@Nullable String json, TeamData team) {
+    private static Map<String, Object> decodeTeamData(@Nullable String json) {
+        Map<String, Object> data = new HashMap<>();
         if (json == null || json.isBlank()) {
-            return;
+            return data;
         }
         JsonObject obj = JsonParser.parseString(json).getAsJsonObject();
         for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
             JsonElement val = entry.getValue();
             if (val.isJsonPrimitive()) {
                 if (val.getAsJsonPrimitive().isBoolean()) {
-                    team.setData(entry.getKey(), val.getAsBoolean());
+                    data.put(entry.getKey(), val.getAsBoolean());
                 } else if (val.getAsJsonPrimitive().isNumber()) {
-                    team.setData(entry.getKey(), val.getAsDouble());
+                    data.put(entry.getKey(), val.getAsDouble());
                 } else {
-                    team.setData(entry.getKey(), val.getAsString());
+                    data.put(entry.getKey(), val.getAsString());
                 }
             }
         }
+        return data;
     }
 
-    private static String encodeMessage(ChatMessage message) {
-        return GSON.toJson(message.toJson());
+    private static byte[] encodeMessage(ChatMessage message) {
+        FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.buffer(256));
+        try {
+            buf.writeByte(PAYLOAD_FORMAT_BINARY_V1);
+            // Stored text has no length limit, unlike packets
+            message.writeBinary(buf, StringTable.STORAGE);
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.readBytes(bytes);
+            return bytes;
+        } finally {
+            buf.release();
+        }
     }
 
-    private static @Nullable ChatMessage decodeMessage(@Nullable String json) {
-        if (json == null || json.isBlank()) {
+    /**
+     * Decodes a binary payload, or a legacy JSON payload written before the binary format.
+     */
+    private static @Nullable ChatMessage decodeMessage(@Nullable byte[] payload) {
+        if (payload == null || payload.length == 0) {
             return null;
         }
         try {
+            if (payload[0] == PAYLOAD_FORMAT_BINARY_V1) {
+                FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.wrappedBuffer(payload));
+                buf.skipBytes(1);
+                return ChatMessage.readBinary(buf, StringTable.STORAGE);
+            }
+            String json = new String(payload, StandardCharsets.UTF_8);
+            if (json.isBlank()) {
+                return null;
+            }
             JsonObject obj = JsonParser.parseString(json).getAsJsonObject();
             return ChatMessage.fromJson(obj);
-        } catch (JsonSyntaxException e) {
+        } catch (RuntimeException e) {
             SimChatMod.LOGGER.error("Failed to deserialize message: {}", e.getMessage());
             return null;
         }
@@ -613,6 +796,15 @@ public class SimChatDatabase {
                     "data_json TEXT NOT NULL DEFAULT '{}'" +
                     ")");
 
+            stmt.execute("CREATE TABLE IF NOT EXISTS team_data (" +
+                    "team_id TEXT NOT NULL, " +
+                    "key TEXT NOT NULL, " +
+                    "type TEXT NOT NULL, " +
+                    "num_value REAL, " +
+                    "str_value TEXT, " +
+                    "PRIMARY KEY (team_id, key)" +
+                    ")");
+
             stmt.execute("CREATE TABLE IF NOT EXISTS team_members (" +
                     "team_id TEXT NOT NULL, " +
                     "member_id TEXT NOT NULL, " +
@@ -624,33 +816,122 @@ public class SimChatDatabase {
                     "team_id TEXT NOT NULL" +
                     ")");
 
-            stmt.execute("CREATE TABLE IF NOT EXISTS conversations (" +
-                    "team_id TEXT NOT NULL, " +
-                    "entity_id TEXT NOT NULL, " +
-                    "message_count INTEGER NOT NULL, " +
-                    "last_message_index INTEGER, " +
-                    "last_message_id TEXT, " +
-                    "last_message TEXT, " +
-                    "last_entity_message_id TEXT, " +
-                    "last_entity_message TEXT, " +
-                    "PRIMARY KEY (team_id, entity_id)" +
-                    ")");
-
-            stmt.execute("CREATE TABLE IF NOT EXISTS messages (" +
-                    "team_id TEXT NOT NULL, " +
-                    "entity_id TEXT NOT NULL, " +
-                    "message_index INTEGER NOT NULL, " +
-                    "message_id TEXT NOT NULL, " +
-                    "world_day INTEGER NOT NULL, " +
-                    "payload TEXT NOT NULL, " +
-                    "PRIMARY KEY (team_id, entity_id, message_index)" +
-                    ")");
+            stmt.execute("CREATE TABLE IF NOT EXISTS conversations " + CONVERSATIONS_COLUMNS);
+            stmt.execute("CREATE TABLE IF NOT EXISTS messages " + MESSAGES_COLUMNS);
+        }
+        rebuildAsBlob("conversations", "last_message", CONVERSATIONS_COLUMNS);
+        rebuildAsBlob("messages", "payload", MESSAGES_COLUMNS);
 
+        try (Statement stmt = connection.createStatement()) {
             stmt.execute("CREATE INDEX IF NOT EXISTS idx_messages_message_id ON messages(message_id)");
             stmt.execute("CREATE INDEX IF NOT EXISTS idx_messages_team_entity ON messages(team_id, entity_id, message_index)");
         }
     }
 
+    /**
+     * Rebuilds a table whose payload columns were created as TEXT before they held binary payloads.
+     * SQLite can't change a column's type in place. BLOB columns never convert values, so the copy
+     * keeps legacy JSON rows as text for the online payload migration to find.
+     */
+    private void rebuildAsBlob(String table, String payloadColumn, String columns) throws SQLException {
+        Connection conn = requireConnection();
+        List<String> names = new ArrayList<>();
+        boolean textPayload = false;
+        try (PreparedStatement infoStmt = conn.prepareStatement("SELECT name, type FROM pragma_table_info(?)")) {
+            infoStmt.setString(1, table);
+            try (ResultSet rs = infoStmt.executeQuery()) {
+                while (rs.next()) {
+                    names.add(rs.getString("name"));
+                    if (payloadColumn.equals(rs.getString("name"))) {
+                        textPayload = "TEXT".equalsIgnoreCase(rs.getString("type"));
+                    }
+                }
+            }
+        }
+        if (!textPayload) {
+            return;
+        }
+
+        SimChatMod.LOGGER.info("Converting SimChat {} payload columns to BLOB", table);
+        // Copied by name, since columns of older tables may be in a different order
+        String copied = String.join(", ", names);
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE " + table + "_rebuild " + columns);
+            stmt.execute("INSERT INTO " + table + "_rebuild (" + copied + ") SELECT " + copied + " FROM " + table);
+            stmt.execute("DROP TABLE " + table);
+            stmt.execute("ALTER TABLE " + table + "_rebuild RENAME TO " + table);
+            conn.commit();
+        } catch (SQLException e) {
+            rollback();
+            throw e;
+        } finally {
+            resetAutoCommit();
+        }
+    }
+
+    /**
+     * Returns this connection's statement for the given SQL, preparing it on first use.
+     * Cached statements are closed by {@link #close()}, so callers must not close them.
+     */
+    private PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt != null && !cacheStatements) {
+            stmt.close();
+            stmt = null;
+        }
+        if (stmt == null) {
+            stmt = requireConnection().prepareStatement(sql);
+            statements.put(sql, stmt);
+        } else {
+            // A failed batch can leave rows queued on the statement
+            stmt.clearParameters();
+            stmt.clearBatch();
+        }
+        return stmt;
+    }
+
+    /**
+     * Moves team data still stored in the legacy teams.data_json column into team_data rows.
+     */
+    private void migrateTeamDataJson() throws SQLException {
+        Connection conn = requireConnection();
+        Map<String, Map<String, Object>> legacy = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT team_id, data_json FROM teams WHERE data_json <> '{}'")) {
+            while (rs.next()) {
+                try {
+                    legacy.put(rs.getString("team_id"), decodeTeamData(rs.getString("data_json")));
+                } catch (RuntimeException e) {
+                    SimChatMod.LOGGER.error("Failed to parse legacy data for team {}, dropping it", rs.getString("team_id"), e);
+                    legacy.put(rs.getString("team_id"), Map.of());
+                }
+            }
+        }
+        if (legacy.isEmpty()) {
+            return;
+        }
+
+        runInTransaction(db -> {
+            PreparedStatement clearJson = prepare("UPDATE teams SET data_json = '{}' WHERE team_id = ?");
+            for (Map.Entry<String, Map<String, Object>> entry : legacy.entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    updateTeamData(entry.getKey(), entry.getValue());
+                }
+                clearJson.setString(1, entry.getKey());
+                clearJson.executeUpdate();
+            }
+        });
+        SimChatMod.LOGGER.info("Migrated data of {} teams to the team_data table", legacy.size());
+    }
+
+    private Connection requireConnection() throws SQLException {
+        if (connection == null) {
+            throw new SQLException("SimChat database is not open");
+        }
+        return connection;
+    }
+
     private void rollback() {
         if (connection == null) {
             return;
@@ -674,4 +955,41 @@ public class SimChatDatabase {
     }
 
     public record StoredMessage(String entityId, int messageIndex, ChatMessage message) {}
+
+    /**
+     * Immutable copy of a team's unsaved changes, safe to hand to the writer thread.
+     * A null value in data marks a removed key.
+     */
+    public record TeamChanges(String teamId, boolean metadataChanged, String title, int color,
+                              Map<String, Object> data, List<UUID> addedMembers, List<UUID> removedMembers) {
+        /**
+         * Captures the team's pending changes and marks it persisted; see {@link #restoreTo} if the write fails.
+         */
+        public static TeamChanges drain(TeamData team) {
+            Map<String, Object> data = new HashMap<>();
+            for (String key : team.getDirtyDataKeys()) {
+                data.put(key, team.getData(key));
+            }
+            TeamChanges changes = new TeamChanges(team.getId(), team.isMetadataDirty(), team.getTitle(), team.getColor(),
+                    data, new ArrayList<>(team.getAddedMembers()), new ArrayList<>(team.getRemovedMembers()));
+            team.markPersisted();
+            return changes;
+        }
+
+        public boolean isEmpty() {
+            return !metadataChanged && data.isEmpty() && addedMembers.isEmpty() && removedMembers.isEmpty();
+        }
+
+        /**
+         * Marks these changes unsaved on the team again, so its next save retries them. Server thread only.
+         */
+        public void restoreTo(TeamData team) {
+            team.markUnpersisted(metadataChanged, data.keySet(), addedMembers, removedMembers);
+        }
+    }
+
+    @FunctionalInterface
+    public interface SqlWork {
+        void run(SimChatDatabase database) throws SQLException;
+    }
 }
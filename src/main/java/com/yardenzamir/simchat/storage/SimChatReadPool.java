@@ -0,0 +1,84 @@
+package com.yardenzamir.simchat.storage;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import net.minecraft.server.MinecraftServer;
+
+import com.yardenzamir.simchat.SimChatMod;
+
+/**
+ * Fixed pool of reader threads, each owning a query-only SimChatDatabase connection.
+ * Packet handlers run their SQLite reads here and hop back to the server thread with the result.
+ */
+public class SimChatReadPool {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private final Supplier<SimChatDatabase> newConnection;
+    private final ExecutorService executor;
+    private final List<SimChatDatabase> connections = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<SimChatDatabase> threadConnection = ThreadLocal.withInitial(this::openConnection);
+
+    public SimChatReadPool(MinecraftServer server, int threads) {
+        this(() -> new SimChatDatabase(server), threads);
+    }
+
+    /**
+     * @param newConnection Creates an unopened database for each reader thread
+     */
+    SimChatReadPool(Supplier<SimChatDatabase> newConnection, int threads) {
+        this.newConnection = newConnection;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "SimChat Storage Reader #" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs a read on a pool thread. The future completes on that thread, so callers
+     * must hop back to the server thread before touching game state.
+     */
+    public <T> CompletableFuture<T> submit(String description, Function<SimChatDatabase, T> read) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return read.apply(threadConnection.get());
+            } catch (RuntimeException e) {
+                SimChatMod.LOGGER.error("Failed to {}", description, e);
+                throw e;
+            }
+        }, executor);
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        for (SimChatDatabase connection : connections) {
+            connection.close();
+        }
+        connections.clear();
+    }
+
+    private SimChatDatabase openConnection() {
+        SimChatDatabase database = newConnection.get();
+        database.openReadOnly();
+        connections.add(database);
+        return database;
+    }
+}
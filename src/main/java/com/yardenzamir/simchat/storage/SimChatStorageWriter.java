@@ -0,0 +1,498 @@
+package com.yardenzamir.simchat.storage;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.yardenzamir.simchat.SimChatMod;
+import com.yardenzamir.simchat.data.ChatMessage;
+import com.yardenzamir.simchat.team.TeamData;
+
+/**
+ * Write-behind pipeline for SimChatDatabase.
+ * A single daemon thread drains a bounded queue and commits each drained batch in one transaction,
+ * so the server thread never waits on SQLite fsyncs. Writes that are queued but not yet committed
+ * stay visible through {@link #getPendingMessage} and {@link #mergePending} for read-after-write.
+ */
+public class SimChatStorageWriter {
+
+    private static final long POLL_INTERVAL_MS = 100;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+    private static final int MIGRATION_BATCH_SIZE = 500;
+    private static final int OVERFLOW_WARNING_INTERVAL = 1024;
+
+    private final SimChatDatabase database;
+    private final BlockingQueue<WriteOp> queue;
+    // Writes queued while the queue was full, in order; guarded by itself
+    private final Deque<WriteOp> overflow = new ArrayDeque<>();
+    private final int overflowCapacity;
+    private long rejectedWrites = 0; // guarded by overflow
+    private final int maxBatchSize;
+    private final Map<UUID, PendingMessage> pendingMessages = new ConcurrentHashMap<>();
+    private final Executor mainThread;
+    private final Thread thread;
+    private volatile boolean running;
+
+    // Legacy JSON payload migration state, only touched by the writer thread
+    private boolean migrating = true;
+    private boolean conversationsMigrated = false;
+    private long migrationCursor = 0;
+    private boolean migratedMessages = false;
+
+    /**
+     * @param mainThread runs follow-up work that touches game state, e.g. the server
+     * @param overflowCapacity writes held once the queue is full; further writes fail
+     */
+    public SimChatStorageWriter(SimChatDatabase database, Executor mainThread, int queueCapacity,
+                                int overflowCapacity, int maxBatchSize) {
+        this.database = database;
+        this.mainThread = mainThread;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.overflowCapacity = overflowCapacity;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.thread = new Thread(this::run, "SimChat Storage Writer");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        database.open();
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stops accepting writes, commits everything still queued and closes the writer connection.
+     */
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            SimChatMod.LOGGER.error("SimChat storage writer did not finish within {}s, {} writes lost",
+                    SHUTDOWN_TIMEOUT_SECONDS, getQueuedWriteCount());
+        }
+        database.close();
+    }
+
+    // === Write Operations ===
+
+    /**
+     * Queues a message insert at an index reserved by the caller.
+     * The future completes with the index once committed, or -1 if the write failed.
+     */
+    public CompletableFuture<Integer> insertMessage(String teamId, int messageIndex, ChatMessage message) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        enqueue(insertMessagesOp(teamId,
+                List.of(new SimChatDatabase.StoredMessage(message.entityId(), messageIndex, message)),
+                success -> future.complete(success ? messageIndex : -1)));
+        return future;
+    }
+
+    /**
+     * Queues a rewrite of a stored message, optionally refreshing the conversation's last message.
+     */
+    public void updateMessage(String teamId, SimChatDatabase.StoredMessage stored, boolean updateLastMessage) {
+        enqueue(updateMessageOp(teamId, stored, updateLastMessage));
+    }
+
+    /**
+     * Queues the team's unsaved changes. They are captured on the calling thread, and nothing
+     * is queued when the team has no changes. Changes are deltas, so they are never coalesced.
+     * If the write fails they are marked unsaved again, so the next save retries them.
+     */
+    public void saveTeam(TeamData team) {
+        SimChatDatabase.TeamChanges changes = SimChatDatabase.TeamChanges.drain(team);
+        if (!changes.isEmpty()) {
+            enqueue(saveTeamOp(team, changes));
+        }
+    }
+
+    /**
+     * Starts a group of writes that is queued as one operation and committed in one transaction.
+     */
+    public Unit beginUnit(String description) {
+        return new Unit(description);
+    }
+
+    public void setPlayerTeam(UUID playerId, String teamId) {
+        enqueue(new WriteOp("set player team " + playerId, "player:" + playerId,
+                db -> db.setPlayerTeam(playerId, teamId), null));
+    }
+
+    public void clearConversation(String teamId, String entityId) {
+        pendingMessages.values().removeIf(pending -> pending.teamId().equals(teamId)
+                && pending.stored().entityId().equals(entityId));
+        enqueue(new WriteOp("clear conversation " + teamId + "/" + entityId, null,
+                db -> db.clearConversation(teamId, entityId), null));
+    }
+
+    public void clearAllConversations(String teamId) {
+        pendingMessages.values().removeIf(pending -> pending.teamId().equals(teamId));
+        enqueue(new WriteOp("clear conversations " + teamId, null,
+                db -> db.clearAllConversations(teamId), null));
+    }
+
+    private WriteOp insertMessagesOp(String teamId, List<SimChatDatabase.StoredMessage> messages,
+                                     @Nullable Completion completion) {
+        List<PendingMessage> pending = new ArrayList<>(messages.size());
+        for (SimChatDatabase.StoredMessage stored : messages) {
+            PendingMessage entry = new PendingMessage(teamId, stored);
+            pendingMessages.put(stored.message().messageId(), entry);
+            pending.add(entry);
+        }
+        String description = messages.size() == 1
+                ? "insert message " + messages.get(0).message().messageId()
+                : "insert " + messages.size() + " messages for team " + teamId;
+        return new WriteOp(description, null,
+                db -> db.insertMessages(teamId, messages),
+                success -> {
+                    for (PendingMessage entry : pending) {
+                        pendingMessages.remove(entry.stored().message().messageId(), entry);
+                    }
+                    if (completion != null) {
+                        completion.onComplete(success);
+                    }
+                });
+    }
+
+    private WriteOp updateMessageOp(String teamId, SimChatDatabase.StoredMessage stored, boolean updateLastMessage) {
+        PendingMessage pending = new PendingMessage(teamId, stored);
+        ChatMessage message = stored.message();
+        pendingMessages.put(message.messageId(), pending);
+        return new WriteOp("update message " + message.messageId(), null,
+                db -> {
+                    db.updateMessagePayload(teamId, stored.entityId(), stored.messageIndex(), message);
+                    if (updateLastMessage) {
+                        db.updateConversationLastMessage(teamId, stored.entityId(), stored.messageIndex(), message);
+                    }
+                    if (!message.isPlayerMessage()) {
+                        db.updateLastEntityMessageIfMatch(teamId, stored.entityId(), message);
+                    }
+                },
+                success -> pendingMessages.remove(message.messageId(), pending));
+    }
+
+    private WriteOp saveTeamOp(TeamData team, SimChatDatabase.TeamChanges changes) {
+        return new WriteOp("save team " + changes.teamId(), null,
+                db -> db.saveTeamChanges(changes),
+                success -> {
+                    if (!success) {
+                        mainThread.execute(() -> changes.restoreTo(team));
+                    }
+                });
+    }
+
+    // === Read-after-write ===
+
+    public @Nullable SimChatDatabase.StoredMessage getPendingMessage(String teamId, UUID messageId) {
+        PendingMessage pending = pendingMessages.get(messageId);
+        return pending != null && pending.teamId().equals(teamId) ? pending.stored() : null;
+    }
+
+    /**
+     * Snapshot of queued messages in [startIndex, startIndex + count). Readers take this before
+     * querying, so a write committed mid-read is seen in either the snapshot or the query.
+     */
+    public List<SimChatDatabase.StoredMessage> getPendingMessages(String teamId, String entityId, int startIndex, int count) {
+        if (pendingMessages.isEmpty()) {
+            return List.of();
+        }
+        List<SimChatDatabase.StoredMessage> result = new ArrayList<>();
+        int endIndex = startIndex + count;
+        for (PendingMessage pending : pendingMessages.values()) {
+            SimChatDatabase.StoredMessage stored = pending.stored();
+            if (pending.teamId().equals(teamId) && stored.entityId().equals(entityId)
+                    && stored.messageIndex() >= startIndex && stored.messageIndex() < endIndex) {
+                result.add(stored);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Overlays a snapshot from {@link #getPendingMessages} onto a committed page that starts at startIndex.
+     */
+    public static List<ChatMessage> mergePending(int startIndex, List<ChatMessage> committed,
+                                                 List<SimChatDatabase.StoredMessage> pending) {
+        if (pending.isEmpty()) {
+            return committed;
+        }
+        TreeMap<Integer, ChatMessage> merged = new TreeMap<>();
+        for (int i = 0; i < committed.size(); i++) {
+            merged.put(startIndex + i, committed.get(i));
+        }
+        for (SimChatDatabase.StoredMessage stored : pending) {
+            merged.put(stored.messageIndex(), stored.message());
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    public int getQueuedWriteCount() {
+        synchronized (overflow) {
+            return queue.size() + overflow.size();
+        }
+    }
+
+    // === Writer Thread ===
+
+    private void enqueue(WriteOp op) {
+        if (!running) {
+            SimChatMod.LOGGER.warn("SimChat storage writer is stopped, dropping write: {}", op.description());
+            op.complete(false);
+            return;
+        }
+        // Never blocks the server thread; once the queue is full, writes wait in order in the overflow list,
+        // and once that is full too they fail so callers roll back (message counts, dirty team state)
+        synchronized (overflow) {
+            if (overflow.isEmpty() && queue.offer(op)) {
+                return;
+            }
+            if (overflow.size() < overflowCapacity) {
+                overflow.addLast(op);
+                if (overflow.size() == 1 || overflow.size() % OVERFLOW_WARNING_INTERVAL == 0) {
+                    SimChatMod.LOGGER.warn("SimChat storage queue is full ({} writes), {} more waiting in overflow",
+                            queue.size(), overflow.size());
+                }
+                return;
+            }
+            rejectedWrites++;
+            if (rejectedWrites == 1 || rejectedWrites % OVERFLOW_WARNING_INTERVAL == 0) {
+                SimChatMod.LOGGER.error("SimChat storage writer is {} writes behind, rejected {} writes so far, latest: {}",
+                        queue.size() + overflow.size(), rejectedWrites, op.description());
+            }
+        }
+        op.complete(false);
+    }
+
+    /**
+     * Moves overflowed writes into the queue as it frees up. Writer thread only.
+     */
+    private void refillFromOverflow() {
+        synchronized (overflow) {
+            while (!overflow.isEmpty() && queue.offer(overflow.peekFirst())) {
+                overflow.removeFirst();
+            }
+        }
+    }
+
+    private boolean hasQueuedWrites() {
+        synchronized (overflow) {
+            return !queue.isEmpty() || !overflow.isEmpty();
+        }
+    }
+
+    private void run() {
+        List<WriteOp> batch = new ArrayList<>(maxBatchSize);
+        while (running || hasQueuedWrites()) {
+            refillFromOverflow();
+            WriteOp first;
+            try {
+                first = migrating ? queue.poll() : queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (first == null) {
+                if (migrating && running) {
+                    migrateLegacyBatch();
+                }
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, maxBatchSize - 1);
+            commitBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void commitBatch(List<WriteOp> batch) {
+        List<WriteOp> ops = coalesce(batch);
+        try {
+            database.runInTransaction(db -> {
+                for (WriteOp op : ops) {
+                    op.work().run(db);
+                }
+            });
+            for (WriteOp op : ops) {
+                op.complete(true);
+            }
+            return;
+        } catch (SQLException | RuntimeException e) {
+            if (ops.size() == 1) {
+                SimChatMod.LOGGER.error("Failed to {}", ops.get(0).description(), e);
+                ops.get(0).complete(false);
+                return;
+            }
+            SimChatMod.LOGGER.warn("Group commit of {} writes failed, retrying individually", ops.size(), e);
+        }
+
+        // Isolate the failing write so the rest of the batch still lands
+        for (WriteOp op : ops) {
+            try {
+                database.runInTransaction(op.work());
+                op.complete(true);
+            } catch (SQLException | RuntimeException e) {
+                SimChatMod.LOGGER.error("Failed to {}", op.description(), e);
+                op.complete(false);
+            }
+        }
+    }
+
+    /**
+     * Rewrites one batch of legacy JSON payloads in the binary format.
+     * Only runs while the queue is empty, so live writes always go first.
+     */
+    private void migrateLegacyBatch() {
+        try {
+            database.runInTransaction(db -> {
+                if (!conversationsMigrated) {
+                    int conversations = db.migrateLegacyConversations();
+                    if (conversations > 0) {
+                        SimChatMod.LOGGER.info("Migrated {} legacy conversation snapshots to binary format", conversations);
+                    }
+                    conversationsMigrated = true;
+                }
+                long lastRowId = db.migrateLegacyMessages(migrationCursor, MIGRATION_BATCH_SIZE);
+                if (lastRowId < 0) {
+                    migrating = false;
+                } else {
+                    migratedMessages = true;
+                    migrationCursor = lastRowId;
+                }
+            });
+        } catch (SQLException | RuntimeException e) {
+            SimChatMod.LOGGER.error("Legacy payload migration failed, legacy rows will keep being read as JSON", e);
+            migrating = false;
+        }
+        if (!migrating && migratedMessages) {
+            SimChatMod.LOGGER.info("Finished migrating legacy message payloads to binary format");
+        }
+    }
+
+    /**
+     * Drops writes superseded by a later write with the same coalesce key in the same batch.
+     */
+    private static List<WriteOp> coalesce(List<WriteOp> batch) {
+        Set<String> seenKeys = null;
+        List<WriteOp> result = new ArrayList<>(batch.size());
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            WriteOp op = batch.get(i);
+            if (op.coalesceKey() != null) {
+                if (seenKeys == null) {
+                    seenKeys = new HashSet<>();
+                }
+                if (!seenKeys.add(op.coalesceKey())) {
+                    op.complete(true);
+                    continue;
+                }
+            }
+            result.add(op);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Writes collected on the server thread and queued together by {@link #submit()}.
+     * Read-after-write overlays apply as soon as each write is added.
+     */
+    public final class Unit {
+        private final String description;
+        private final List<WriteOp> ops = new ArrayList<>();
+        private boolean submitted;
+
+        private Unit(String description) {
+            this.description = description;
+        }
+
+        /**
+         * Adds message inserts at reserved indices. The future completes once the unit is committed.
+         */
+        public CompletableFuture<Boolean> insertMessages(String teamId, List<SimChatDatabase.StoredMessage> messages) {
+            CompletableFuture<Boolean> future = new CompletableFuture<>();
+            if (messages.isEmpty()) {
+                future.complete(true);
+                return future;
+            }
+            ops.add(insertMessagesOp(teamId, messages, future::complete));
+            return future;
+        }
+
+        public void updateMessage(String teamId, SimChatDatabase.StoredMessage stored, boolean updateLastMessage) {
+            ops.add(updateMessageOp(teamId, stored, updateLastMessage));
+        }
+
+        public void saveTeam(TeamData team) {
+            SimChatDatabase.TeamChanges changes = SimChatDatabase.TeamChanges.drain(team);
+            if (!changes.isEmpty()) {
+                ops.add(saveTeamOp(team, changes));
+            }
+        }
+
+        /**
+         * Queues every collected write as a single operation. A unit can only be submitted once.
+         */
+        public void submit() {
+            if (submitted) {
+                throw new IllegalStateException("Storage unit already submitted: " + description);
+            }
+            submitted = true;
+            if (ops.isEmpty()) {
+                return;
+            }
+            if (ops.size() == 1) {
+                enqueue(ops.get(0));
+                return;
+            }
+            List<WriteOp> unitOps = List.copyOf(ops);
+            enqueue(new WriteOp(description, null,
+                    db -> {
+                        for (WriteOp op : unitOps) {
+                            op.work().run(db);
+                        }
+                    },
+                    success -> {
+                        for (WriteOp op : unitOps) {
+                            op.complete(success);
+                        }
+                    }));
+        }
+    }
+
+    private record PendingMessage(String teamId, SimChatDatabase.StoredMessage stored) {}
+
+    private record WriteOp(String description, @Nullable String coalesceKey, SimChatDatabase.SqlWork work,
+                           @Nullable Completion completion) {
+        void complete(boolean success) {
+            if (completion != null) {
+                completion.onComplete(success);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Completion {
+        void onComplete(boolean success);
+    }
+}
@@ -0,0 +1,174 @@
+package com.yardenzamir.simchat.team;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.yardenzamir.simchat.data.ChatMessage;
+
+/**
+ * Bounded LRU cache of the most recent decoded messages per (team, entity).
+ * Each entry is a contiguous window that always ends at the conversation's latest message,
+ * so any load starting inside the window is served without touching SQLite.
+ * Memory is accounted with {@link ChatMessage#estimatedSizeBytes()}.
+ */
+public class MessageTailCache {
+
+    private final int maxMessagesPerConversation;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Tail> tails = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public MessageTailCache(int maxMessagesPerConversation, long maxBytes) {
+        this.maxMessagesPerConversation = maxMessagesPerConversation;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns up to count messages starting at startIndex, or null if the window does not cover startIndex.
+     */
+    public synchronized @Nullable List<ChatMessage> get(String teamId, String entityId, int startIndex, int count) {
+        Tail tail = tails.get(new Key(teamId, entityId));
+        if (tail == null || startIndex < tail.startIndex()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        int from = Math.min(startIndex - tail.startIndex(), tail.messages.size());
+        int to = Math.min(from + Math.max(0, count), tail.messages.size());
+        return new ArrayList<>(tail.messages.subList(from, to));
+    }
+
+    /**
+     * Seeds the window from a loaded page, if that page reaches the end of the conversation.
+     */
+    public synchronized void fill(String teamId, String entityId, int startIndex, List<ChatMessage> messages, int totalCount) {
+        if (maxMessagesPerConversation <= 0 || messages.isEmpty() || startIndex + messages.size() != totalCount) {
+            return;
+        }
+        Key key = new Key(teamId, entityId);
+        Tail existing = tails.get(key);
+        if (existing != null && existing.startIndex() <= startIndex && existing.endIndex == totalCount) {
+            return;
+        }
+
+        removeTail(key);
+        int from = Math.max(0, messages.size() - maxMessagesPerConversation);
+        Tail tail = new Tail(totalCount);
+        for (int i = from; i < messages.size(); i++) {
+            tail.add(messages.get(i));
+        }
+        putTail(key, tail);
+    }
+
+    /**
+     * Extends the window with a newly appended message. A message that does not directly follow
+     * the cached window replaces it, since the window must stay contiguous.
+     */
+    public synchronized void append(String teamId, String entityId, int messageIndex, ChatMessage message) {
+        if (maxMessagesPerConversation <= 0) {
+            return;
+        }
+        Key key = new Key(teamId, entityId);
+        Tail tail = tails.get(key);
+        if (tail == null || tail.endIndex != messageIndex) {
+            removeTail(key);
+            tail = new Tail(messageIndex);
+            tails.put(key, tail);
+        }
+
+        long before = tail.bytes;
+        tail.add(message);
+        tail.endIndex = messageIndex + 1;
+        while (tail.messages.size() > maxMessagesPerConversation) {
+            tail.removeOldest();
+        }
+        totalBytes += tail.bytes - before;
+        evictOverBudget();
+    }
+
+    public synchronized void invalidate(String teamId, String entityId) {
+        removeTail(new Key(teamId, entityId));
+    }
+
+    public synchronized void invalidateTeam(String teamId) {
+        Iterator<Map.Entry<Key, Tail>> it = tails.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Tail> entry = it.next();
+            if (entry.getKey().teamId().equals(teamId)) {
+                totalBytes -= entry.getValue().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits.get(), misses.get(), tails.size(), totalBytes, maxBytes);
+    }
+
+    public void resetStats() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    private void putTail(Key key, Tail tail) {
+        tails.put(key, tail);
+        totalBytes += tail.bytes;
+        evictOverBudget();
+    }
+
+    private void removeTail(Key key) {
+        Tail removed = tails.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.bytes;
+        }
+    }
+
+    private void evictOverBudget() {
+        Iterator<Tail> it = tails.values().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            totalBytes -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    public record Stats(long hits, long misses, int conversations, long bytes, long maxBytes) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+
+    private record Key(String teamId, String entityId) {}
+
+    private static final class Tail {
+        final List<ChatMessage> messages = new ArrayList<>();
+        int endIndex;
+        long bytes = 0;
+
+        Tail(int endIndex) {
+            this.endIndex = endIndex;
+        }
+
+        int startIndex() {
+            return endIndex - messages.size();
+        }
+
+        void add(ChatMessage message) {
+            messages.add(message);
+            bytes += message.estimatedSizeBytes();
+        }
+
+        void removeOldest() {
+            bytes -= messages.remove(0).estimatedSizeBytes();
+        }
+    }
+}
@@ -2,10 +2,14 @@ package com.yardenzamir.simchat.team;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -22,9 +26,13 @@ import com.yardenzamir.simchat.config.ServerConfig;
 import com.yardenzamir.simchat.data.ChatMessage;
 import com.yardenzamir.simchat.network.NetworkHandler;
 import com.yardenzamir.simchat.storage.SimChatDatabase;
+import com.yardenzamir.simchat.storage.SimChatReadPool;
+import com.yardenzamir.simchat.storage.SimChatStorageWriter;
 
 /**
  * World-level manager for all teams. Persists team data and messages in SQLite.
+ * Reads go through the database directly, or through a SimChatReadPool for packet handlers;
+ * writes are queued on a SimChatStorageWriter.
  */
 public class SimChatTeamManager {
 
@@ -32,14 +40,31 @@ public class SimChatTeamManager {
 
     private final MinecraftServer server;
     private final SimChatDatabase database;
+    private final SimChatStorageWriter writer;
+    private final SimChatReadPool readPool;
+    private final MessageTailCache tailCache;
     private final Map<String, TeamData> teamCache = new ConcurrentHashMap<>();
     private final Map<UUID, String> playerToTeam = new ConcurrentHashMap<>();
 
+    // Reserved indices whose insert failed, per conversation, until the count can be rolled back past them.
+    // Server thread only; clearing conversations starts a new generation so older failures are ignored.
+    private final Map<ConversationKey, NavigableSet<Integer>> failedIndices = new HashMap<>();
+    private int clearGeneration = 0;
+
+    private record ConversationKey(String teamId, String entityId) {}
+
     private SimChatTeamManager(MinecraftServer server) {
         this.server = server;
         this.database = new SimChatDatabase(server);
         this.database.open();
         this.playerToTeam.putAll(database.loadPlayerTeams());
+        this.writer = new SimChatStorageWriter(new SimChatDatabase(server), server,
+                ServerConfig.WRITE_QUEUE_CAPACITY.get(), ServerConfig.WRITE_OVERFLOW_CAPACITY.get(),
+                ServerConfig.WRITE_BATCH_SIZE.get());
+        this.writer.start();
+        this.readPool = new SimChatReadPool(server, ServerConfig.READ_THREADS.get());
+        this.tailCache = new MessageTailCache(ServerConfig.TAIL_CACHE_MESSAGES.get(),
+                ServerConfig.TAIL_CACHE_MAX_MB.get() * 1024L * 1024L);
     }
 
     public static SimChatTeamManager get(MinecraftServer server) {
@@ -49,6 +74,8 @@ public class SimChatTeamManager {
     }
 
     public void shutdown() {
+        readPool.shutdown();
+        writer.shutdown();
         database.close();
         synchronized (INSTANCES) {
             INSTANCES.remove(server);
@@ -70,7 +97,7 @@ public class SimChatTeamManager {
         team.addMember(creator.getUUID());
 
         String oldTeamId = playerToTeam.put(creator.getUUID(), id);
-        database.setPlayerTeam(creator.getUUID(), id);
+        writer.setPlayerTeam(creator.getUUID(), id);
         teamCache.put(id, team);
 
         if (oldTeamId != null) {
@@ -153,7 +180,7 @@ public class SimChatTeamManager {
 
         newTeam.addMember(playerId);
         playerToTeam.put(playerId, newTeamId);
-        database.setPlayerTeam(playerId, newTeamId);
+        writer.setPlayerTeam(playerId, newTeamId);
         saveTeam(newTeam);
 
         addPlayerToVanillaTeam(player, newTeam);
@@ -269,7 +296,7 @@ public class SimChatTeamManager {
     // === Persistence ===
 
     public void saveTeam(TeamData team) {
-        database.upsertTeam(team);
+        writer.saveTeam(team);
     }
 
     public void saveAllTeams() {
@@ -280,36 +307,161 @@ public class SimChatTeamManager {
 
     // === Message Operations ===
 
+    /**
+     * Appends a message and returns its index. The index is reserved from the in-memory
+     * conversation metadata, so it is valid immediately; the insert itself is written behind.
+     */
     public int appendMessage(TeamData team, ChatMessage message) {
-        int messageIndex = database.insertMessage(team.getId(), message);
-        if (messageIndex >= 0) {
-            team.recordMessageAdded(message.entityId(), message, messageIndex + 1);
+        int messageIndex = reserveMessageIndex(team, message);
+        watchInsert(team, message.entityId(), List.of(messageIndex),
+                writer.insertMessage(team.getId(), messageIndex, message).thenApply(index -> index >= 0));
+        return messageIndex;
+    }
+
+    /**
+     * Appends a message and returns a future that completes with its index once committed,
+     * or -1 if the write failed.
+     */
+    public CompletableFuture<Integer> appendMessageAsync(TeamData team, ChatMessage message) {
+        int messageIndex = reserveMessageIndex(team, message);
+        CompletableFuture<Integer> future = writer.insertMessage(team.getId(), messageIndex, message);
+        watchInsert(team, message.entityId(), List.of(messageIndex), future.thenApply(index -> index >= 0));
+        return future;
+    }
+
+    /**
+     * Appends messages in order with contiguous indices per conversation and commits them in one transaction.
+     *
+     * @return the index assigned to each message
+     */
+    public int[] appendMessages(TeamData team, List<ChatMessage> messages) {
+        UnitOfWork work = beginWork(team);
+        int[] indices = new int[messages.size()];
+        for (int i = 0; i < messages.size(); i++) {
+            indices[i] = work.appendMessage(messages.get(i));
         }
+        work.commit();
+        return indices;
+    }
+
+    /**
+     * Starts a unit of work for a team. Everything done through it is committed in one transaction.
+     */
+    public UnitOfWork beginWork(TeamData team) {
+        return new UnitOfWork(team);
+    }
+
+    private int reserveMessageIndex(TeamData team, ChatMessage message) {
+        int messageIndex = team.getMessageCount(message.entityId());
+        team.recordMessageAdded(message.entityId(), message, messageIndex + 1);
+        tailCache.append(team.getId(), message.entityId(), messageIndex, message);
         return messageIndex;
     }
 
+    /**
+     * Releases reserved indices if their insert fails, so a failed write at the end of a
+     * conversation doesn't leave a hole that later pages come up short on.
+     */
+    private void watchInsert(TeamData team, String entityId, List<Integer> indices, CompletableFuture<Boolean> inserted) {
+        int generation = clearGeneration;
+        inserted.thenAccept(success -> {
+            if (!success) {
+                server.execute(() -> releaseFailedIndices(team, entityId, indices, generation));
+            }
+        });
+    }
+
+    private void releaseFailedIndices(TeamData team, String entityId, List<Integer> indices, int generation) {
+        if (generation != clearGeneration) {
+            return;
+        }
+        ConversationKey key = new ConversationKey(team.getId(), entityId);
+        NavigableSet<Integer> failed = failedIndices.computeIfAbsent(key, k -> new TreeSet<>());
+        failed.addAll(indices);
+        int count = team.getMessageCount(entityId);
+        int rolledBack = count;
+        while (failed.remove(rolledBack - 1)) {
+            rolledBack--;
+        }
+        if (failed.isEmpty()) {
+            failedIndices.remove(key);
+        }
+        if (rolledBack < count) {
+            team.rollBackMessageCount(entityId, rolledBack);
+            tailCache.invalidate(team.getId(), entityId);
+            SimChatMod.LOGGER.warn("Rolled back message count of {}/{} from {} to {} after failed inserts",
+                    team.getId(), entityId, count, rolledBack);
+        }
+        if (!failed.isEmpty()) {
+            // Stays a gap unless the messages after it fail too
+            SimChatMod.LOGGER.error("Failed inserts leave a gap at indices {} of {}/{}", failed, team.getId(), entityId);
+        }
+    }
+
     public List<ChatMessage> loadMessages(TeamData team, String entityId, int startIndex, int count) {
-        return database.loadMessages(team.getId(), entityId, startIndex, count);
+        List<ChatMessage> cached = tailCache.get(team.getId(), entityId, startIndex, count);
+        if (cached != null) {
+            return cached;
+        }
+        // Pending writes first, so one committed in between is seen in either the snapshot or the query
+        List<SimChatDatabase.StoredMessage> pending = writer.getPendingMessages(team.getId(), entityId, startIndex, count);
+        List<ChatMessage> committed = database.loadMessages(team.getId(), entityId, startIndex, count);
+        List<ChatMessage> messages = SimChatStorageWriter.mergePending(startIndex, committed, pending);
+        tailCache.fill(team.getId(), entityId, startIndex, messages, team.getMessageCount(entityId));
+        return messages;
+    }
+
+    /**
+     * Loads a page on the read pool. The future completes off the server thread.
+     * Pages served by the tail cache complete immediately.
+     */
+    public CompletableFuture<List<ChatMessage>> loadMessagesAsync(TeamData team, String entityId, int startIndex, int count) {
+        List<ChatMessage> cached = tailCache.get(team.getId(), entityId, startIndex, count);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        String teamId = team.getId();
+        List<SimChatDatabase.StoredMessage> pending = writer.getPendingMessages(teamId, entityId, startIndex, count);
+        return readPool.submit("load messages for team " + teamId, db -> SimChatStorageWriter.mergePending(
+                startIndex, db.loadMessages(teamId, entityId, startIndex, count), pending));
     }
 
     public List<ChatMessage> loadOlderMessages(TeamData team, String entityId, int beforeIndex, int count) {
-        return database.loadOlderMessages(team.getId(), entityId, beforeIndex, count);
+        int startIndex = Math.max(0, beforeIndex - count);
+        return loadMessages(team, entityId, startIndex, beforeIndex - startIndex);
     }
 
+    /**
+     * Loaded teams carry every conversation's count and reserved inserts advance it before they are
+     * written, so this never reads SQLite.
+     */
     public int getMessageCount(TeamData team, String entityId) {
-        int count = team.getMessageCount(entityId);
-        if (count == 0) {
-            return database.getMessageCount(team.getId(), entityId);
-        }
-        return count;
+        return team.getMessageCount(entityId);
     }
 
     public @Nullable SimChatDatabase.StoredMessage getMessageById(TeamData team, UUID messageId) {
-        return database.loadMessageById(team.getId(), messageId);
+        SimChatDatabase.StoredMessage pending = writer.getPendingMessage(team.getId(), messageId);
+        return pending != null ? pending : database.loadMessageById(team.getId(), messageId);
+    }
+
+    /**
+     * Looks up a message on the read pool. The future completes off the server thread.
+     */
+    public CompletableFuture<SimChatDatabase.StoredMessage> getMessageByIdAsync(TeamData team, UUID messageId) {
+        SimChatDatabase.StoredMessage pending = writer.getPendingMessage(team.getId(), messageId);
+        if (pending != null) {
+            return CompletableFuture.completedFuture(pending);
+        }
+        String teamId = team.getId();
+        return readPool.submit("load message " + messageId, db -> db.loadMessageById(teamId, messageId));
     }
 
     public boolean consumeActions(TeamData team, UUID messageId) {
-        SimChatDatabase.StoredMessage stored = database.loadMessageById(team.getId(), messageId);
+        return consumeActions(team, messageId, null);
+    }
+
+    private boolean consumeActions(TeamData team, UUID messageId, @Nullable SimChatStorageWriter.Unit unit) {
+        SimChatDatabase.StoredMessage stored = getMessageById(team, messageId);
         if (stored == null) {
             return false;
         }
@@ -320,7 +472,7 @@ public class SimChatTeamManager {
         }
 
         ChatMessage updated = message.withoutActions();
-        database.updateMessagePayload(team.getId(), stored.entityId(), stored.messageIndex(), updated);
+        tailCache.invalidate(team.getId(), stored.entityId());
 
         TeamData.ConversationMeta meta = team.getConversationMeta(stored.entityId());
         if (meta != null) {
@@ -337,26 +489,47 @@ public class SimChatTeamManager {
         }
 
         int lastIndex = team.getMessageCount(stored.entityId()) - 1;
-        if (stored.messageIndex() == lastIndex) {
-            database.updateConversationLastMessage(team.getId(), stored.entityId(), stored.messageIndex(), updated);
-        }
-        if (!message.isPlayerMessage()) {
-            database.updateLastEntityMessageIfMatch(team.getId(), stored.entityId(), updated);
+        SimChatDatabase.StoredMessage updatedStored =
+                new SimChatDatabase.StoredMessage(stored.entityId(), stored.messageIndex(), updated);
+        if (unit != null) {
+            unit.updateMessage(team.getId(), updatedStored, stored.messageIndex() == lastIndex);
+        } else {
+            writer.updateMessage(team.getId(), updatedStored, stored.messageIndex() == lastIndex);
         }
 
         return true;
     }
 
     public void clearConversation(TeamData team, String entityId) {
-        database.clearConversation(team.getId(), entityId);
+        clearGeneration++;
+        failedIndices.remove(new ConversationKey(team.getId(), entityId));
+        tailCache.invalidate(team.getId(), entityId);
+        writer.clearConversation(team.getId(), entityId);
         team.clearConversation(entityId);
     }
 
     public void clearAllConversations(TeamData team) {
-        database.clearAllConversations(team.getId());
+        clearGeneration++;
+        failedIndices.keySet().removeIf(key -> key.teamId().equals(team.getId()));
+        tailCache.invalidateTeam(team.getId());
+        writer.clearAllConversations(team.getId());
         team.clearAll();
     }
 
+    // === Diagnostics ===
+
+    public MessageTailCache.Stats getTailCacheStats() {
+        return tailCache.getStats();
+    }
+
+    public void resetTailCacheStats() {
+        tailCache.resetStats();
+    }
+
+    public int getQueuedWriteCount() {
+        return writer.getQueuedWriteCount();
+    }
+
     // === Vanilla Team Sync ===
 
     private static final String VANILLA_TEAM_PREFIX = "simchat_";
@@ -431,4 +604,56 @@ public class SimChatTeamManager {
     public void updateVanillaTeamColor(TeamData team) {
         getOrCreateVanillaTeam(team);
     }
+
+    /**
+     * Groups the writes of one server-side operation, such as an action click, into one transaction.
+     * In-memory state and read-after-write overlays update immediately; {@link #commit()} queues the writes.
+     */
+    public final class UnitOfWork {
+        private final TeamData team;
+        private final SimChatStorageWriter.Unit unit;
+        private final List<SimChatDatabase.StoredMessage> appended = new ArrayList<>();
+        private boolean saveTeam;
+
+        private UnitOfWork(TeamData team) {
+            this.team = team;
+            this.unit = writer.beginUnit("unit of work for team " + team.getId());
+        }
+
+        public boolean consumeActions(UUID messageId) {
+            return SimChatTeamManager.this.consumeActions(team, messageId, unit);
+        }
+
+        /**
+         * Appends a message and returns its reserved index.
+         */
+        public int appendMessage(ChatMessage message) {
+            int messageIndex = reserveMessageIndex(team, message);
+            appended.add(new SimChatDatabase.StoredMessage(message.entityId(), messageIndex, message));
+            return messageIndex;
+        }
+
+        private void watchInserts(CompletableFuture<Boolean> inserted) {
+            Map<String, List<Integer>> indicesByEntity = new HashMap<>();
+            for (SimChatDatabase.StoredMessage stored : appended) {
+                indicesByEntity.computeIfAbsent(stored.entityId(), id -> new ArrayList<>()).add(stored.messageIndex());
+            }
+            indicesByEntity.forEach((entityId, indices) -> watchInsert(team, entityId, indices, inserted));
+        }
+
+        /**
+         * Saves the team as part of this unit. The snapshot is taken at commit time.
+         */
+        public void saveTeam() {
+            saveTeam = true;
+        }
+
+        public void commit() {
+            watchInserts(unit.insertMessages(team.getId(), appended));
+            if (saveTeam) {
+                unit.saveTeam(team);
+            }
+            unit.submit();
+        }
+    }
 }
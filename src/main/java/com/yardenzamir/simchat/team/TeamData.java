@@ -1,6 +1,7 @@
 package com.yardenzamir.simchat.team;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -33,6 +34,12 @@ public class TeamData {
     private final transient Set<String> typingEntities = new HashSet<>();
     private int revision = 0;
 
+    // Changes not yet handed to storage, see markPersisted()
+    private transient boolean metadataDirty = true;
+    private final transient Set<String> dirtyDataKeys = new HashSet<>();
+    private final transient Set<UUID> addedMembers = new HashSet<>();
+    private final transient Set<UUID> removedMembers = new HashSet<>();
+
     public static final String[] COLOR_NAMES = {
             "black", "dark_blue", "dark_green", "dark_aqua",
             "dark_red", "dark_purple", "gold", "gray",
@@ -188,11 +195,13 @@ public class TeamData {
     public void setTitle(String title) {
         this.title = title;
         this.color = generateColorFromTitle(title);
+        metadataDirty = true;
         revision++;
     }
 
     public void setColor(int color) {
         this.color = Math.max(0, Math.min(15, color));
+        metadataDirty = true;
         revision++;
     }
 
@@ -200,12 +209,18 @@ public class TeamData {
 
     public void addMember(UUID playerId) {
         if (members.add(playerId)) {
+            if (!removedMembers.remove(playerId)) {
+                addedMembers.add(playerId);
+            }
             revision++;
         }
     }
 
     public void removeMember(UUID playerId) {
         if (members.remove(playerId)) {
+            if (!addedMembers.remove(playerId)) {
+                removedMembers.add(playerId);
+            }
             revision++;
         }
     }
@@ -242,7 +257,15 @@ public class TeamData {
     }
 
     public void setConversation(String entityId, List<ChatMessage> messages) {
-        conversations.put(entityId, new ArrayList<>(messages));
+        setConversationSnapshot(entityId, new ArrayList<>(messages));
+    }
+
+    /**
+     * Like setConversation, but keeps the list instead of copying it.
+     * Only for lists that never change afterwards, such as the client's loaded-message snapshots.
+     */
+    public void setConversationSnapshot(String entityId, List<ChatMessage> messages) {
+        conversations.put(entityId, messages);
         ChatMessage lastMessage = messages.isEmpty() ? null : messages.get(messages.size() - 1);
         ChatMessage lastEntityMessage = findLastEntityMessage(messages);
         int messageCount = Math.max(messages.size(), getMessageCount(entityId));
@@ -266,6 +289,17 @@ public class TeamData {
         revision++;
     }
 
+    /**
+     * Lowers a conversation's message count after the inserts of its newest messages failed.
+     */
+    public void rollBackMessageCount(String entityId, int messageCount) {
+        ConversationMeta meta = conversationMeta.get(entityId);
+        if (meta != null && messageCount < meta.getMessageCount()) {
+            meta.setMessageCount(messageCount);
+            revision++;
+        }
+    }
+
     private void setConversationMetaInternal(String entityId, int messageCount, @Nullable ChatMessage lastMessage,
                                             @Nullable ChatMessage lastEntityMessage, boolean reorder) {
         ConversationMeta meta = conversationMeta.get(entityId);
@@ -443,6 +477,7 @@ public class TeamData {
      */
     public void setData(String key, Object value) {
         data.put(key, value);
+        dirtyDataKeys.add(key);
         revision++;
     }
 
@@ -487,6 +522,7 @@ public class TeamData {
     public void addData(String key, double amount) {
         double current = getDataNumber(key, 0);
         data.put(key, current + amount);
+        dirtyDataKeys.add(key);
         revision++;
     }
 
@@ -507,6 +543,7 @@ public class TeamData {
      */
     public void removeData(String key) {
         if (data.remove(key) != null) {
+            dirtyDataKeys.add(key);
             revision++;
         }
     }
@@ -516,6 +553,7 @@ public class TeamData {
      */
     public void clearData() {
         if (!data.isEmpty()) {
+            dirtyDataKeys.addAll(data.keySet());
             data.clear();
             revision++;
         }
@@ -535,4 +573,58 @@ public class TeamData {
         return Collections.unmodifiableMap(data);
     }
 
+    // === Persistence Tracking ===
+
+    /**
+     * Whether the title or color changed since the last save. New teams start dirty.
+     */
+    public boolean isMetadataDirty() {
+        return metadataDirty;
+    }
+
+    /**
+     * Data keys set or removed since the last save. Keys no longer in the data map were removed.
+     */
+    public Set<String> getDirtyDataKeys() {
+        return Collections.unmodifiableSet(dirtyDataKeys);
+    }
+
+    public Set<UUID> getAddedMembers() {
+        return Collections.unmodifiableSet(addedMembers);
+    }
+
+    public Set<UUID> getRemovedMembers() {
+        return Collections.unmodifiableSet(removedMembers);
+    }
+
+    /**
+     * Clears change tracking once the current state has been loaded from or handed to storage.
+     */
+    public void markPersisted() {
+        metadataDirty = false;
+        dirtyDataKeys.clear();
+        addedMembers.clear();
+        removedMembers.clear();
+    }
+
+    /**
+     * Marks changes handed to storage as unsaved again after their write failed,
+     * on top of any changes made since.
+     */
+    public void markUnpersisted(boolean metadata, Collection<String> dataKeys,
+                                Collection<UUID> added, Collection<UUID> removed) {
+        metadataDirty |= metadata;
+        dirtyDataKeys.addAll(dataKeys);
+        for (UUID playerId : added) {
+            if (!removedMembers.remove(playerId)) {
+                addedMembers.add(playerId);
+            }
+        }
+        for (UUID playerId : removed) {
+            if (!addedMembers.remove(playerId)) {
+                removedMembers.add(playerId);
+            }
+        }
+    }
+
 }
@@ -52,11 +52,11 @@ public class TeamEventHandler {
             return;
         }
 
-        // Re-sync team data after respawn
+        // Re-sync team data after respawn (no-op if the client is already current)
         SimChatTeamManager manager = SimChatTeamManager.get(player.server);
         TeamData team = manager.getPlayerTeam(player);
         if (team != null) {
-            NetworkHandler.syncTeamWithLazyLoad(player, team);
+            NetworkHandler.resyncTeam(player, team);
         }
     }
 
@@ -66,11 +66,11 @@ public class TeamEventHandler {
             return;
         }
 
-        // Re-sync team data after dimension change
+        // Re-sync team data after dimension change (no-op if the client is already current)
         SimChatTeamManager manager = SimChatTeamManager.get(player.server);
         TeamData team = manager.getPlayerTeam(player);
         if (team != null) {
-            NetworkHandler.syncTeamWithLazyLoad(player, team);
+            NetworkHandler.resyncTeam(player, team);
         }
     }
 